@@ -1,87 +1,341 @@
 package com.filemaker.demo.controller;
 
+import com.filemaker.demo.dto.BatchCreateResult;
+import com.filemaker.demo.dto.BulkDeleteResult;
 import com.filemaker.demo.dto.ContactDTO;
+import com.filemaker.demo.dto.FacetCount;
+import com.filemaker.demo.dto.Suggestion;
 import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.repository.ContactColumns;
 import com.filemaker.demo.repository.ContactRepository;
+import com.filemaker.demo.repository.ContactVersion;
+import com.filemaker.demo.service.ContactBatchService;
+import com.filemaker.demo.service.ContactCache;
+import com.filemaker.demo.service.ContactCompanyFacets;
+import com.filemaker.demo.service.ContactCountCache;
+import com.filemaker.demo.service.ContactExportService;
+import com.filemaker.demo.service.ContactSearchIndex;
+import com.filemaker.demo.service.ContactSearchService;
+import com.filemaker.demo.service.ContactSuggestIndex;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.lang.NonNull;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.LongSupplier;
 
 @RestController
 @RequestMapping("/api/contacts")
 @Tag(name = "Contacts", description = "CRUD operations for FileMaker Contacts")
 public class ContactController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    // Upper bound for multi-get requests, so one response stays a reasonable size
+    private static final int MAX_IDS = 1000;
+
     private final ContactRepository contactRepository;
+    private final ContactExportService contactExportService;
+    private final ContactBatchService contactBatchService;
+    private final ContactCache contactCache;
+    private final ContactCountCache contactCountCache;
+    private final ContactSearchIndex contactSearchIndex;
+    private final ContactSearchService contactSearchService;
+    private final ContactSuggestIndex contactSuggestIndex;
+    private final ContactCompanyFacets contactCompanyFacets;
 
-    public ContactController(ContactRepository contactRepository) {
+    public ContactController(ContactRepository contactRepository,
+                             ContactExportService contactExportService,
+                             ContactBatchService contactBatchService,
+                             ContactCache contactCache,
+                             ContactCountCache contactCountCache,
+                             ContactSearchIndex contactSearchIndex,
+                             ContactSearchService contactSearchService,
+                             ContactSuggestIndex contactSuggestIndex,
+                             ContactCompanyFacets contactCompanyFacets) {
         this.contactRepository = contactRepository;
+        this.contactExportService = contactExportService;
+        this.contactBatchService = contactBatchService;
+        this.contactCache = contactCache;
+        this.contactCountCache = contactCountCache;
+        this.contactSearchIndex = contactSearchIndex;
+        this.contactSearchService = contactSearchService;
+        this.contactSuggestIndex = contactSuggestIndex;
+        this.contactCompanyFacets = contactCompanyFacets;
     }
 
     // ==================== READ ====================
 
     @GetMapping
-    @Operation(summary = "Get all contacts", description = "Returns all contacts with pagination support")
+    @Operation(summary = "Get all contacts", description = "Returns all contacts with pagination support. "
+            + "Use mode=cursor (or pass a cursor) for keyset pagination, whose cost does not grow with page depth. "
+            + "Use mode=slice, or total=cached, to skip the COUNT(*) of every page")
     @ApiResponses({
-        @ApiResponse(responseCode = "200", description = "Successfully retrieved contacts")
+        @ApiResponse(responseCode = "200", description = "Successfully retrieved contacts"),
+        @ApiResponse(responseCode = "304", description = "Page not modified"),
+        @ApiResponse(responseCode = "400", description = "Invalid sort field or cursor")
     })
-    public ResponseEntity<Page<Contact>> getAllContacts(
+    public ResponseEntity<?> getAllContacts(
             @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
             @Parameter(description = "Sort field") @RequestParam(defaultValue = "id") String sortBy,
-            @Parameter(description = "Sort direction (asc/desc)") @RequestParam(defaultValue = "asc") String direction
+            @Parameter(description = "Sort direction (asc/desc)") @RequestParam(defaultValue = "asc") String direction,
+            @Parameter(description = "Pagination mode (page/slice/cursor)") @RequestParam(defaultValue = "page") String mode,
+            @Parameter(description = "Cursor from the previous page's 'next' (implies mode=cursor)")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Total element count in page mode (exact/cached)")
+            @RequestParam(defaultValue = "exact") String total,
+            @Parameter(description = "Comma-separated properties to select (page and slice modes); id is always included")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Predefined projection (full/summary), if fields is not given")
+            @RequestParam(required = false) String view,
+            WebRequest webRequest
     ) {
-        Sort sort = direction.equalsIgnoreCase("desc") 
-            ? Sort.by(sortBy).descending() 
-            : Sort.by(sortBy).ascending();
-        Pageable pageable = PageRequest.of(page, size, sort);
-        // Use standard Spring Data pagination - dialect handles FileMaker-specific SQL
-        return ResponseEntity.ok(contactRepository.findAll(pageable));
+        if (cursor != null || mode.equalsIgnoreCase("cursor")) {
+            try {
+                return ResponseEntity.ok(contactRepository.findAllWithKeyset(
+                        sortBy, direction.equalsIgnoreCase("desc"), cursor, size));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        }
+
+        Pageable pageable = PageRequest.of(page, size, sort(sortBy, direction));
+        boolean cachedTotal = total.equalsIgnoreCase("cached");
+
+        List<String> projection;
+        try {
+            projection = projection(fields, view);
+            if (projection != null) {
+                // Only the selected columns are read - no entities, no version query
+                return ResponseEntity.ok(projectedPage(projection, null, pageable, mode.equalsIgnoreCase("slice"),
+                        () -> cachedTotal ? contactCountCache.total() : contactRepository.countAll()));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        if (mode.equalsIgnoreCase("slice")) {
+            // No total at all: size + 1 rows tell whether there is a next page ('last' is false)
+            return ResponseEntity.ok(contactRepository.findAllBy(pageable));
+        }
+
+        if (!ContactColumns.SORTABLE.containsKey(sortBy)) {
+            // No version query for this sort - no validators
+            // Use standard Spring Data pagination - dialect handles FileMaker-specific SQL
+            if (cachedTotal) {
+                List<Contact> content = contactRepository.findAllBy(pageable).getContent();
+                return ResponseEntity.ok(new PageImpl<>(content, pageable, contactCountCache.total()));
+            }
+            return ResponseEntity.ok(contactRepository.findAll(pageable));
+        }
+
+        // Cheap freshness check first: ids and ROWMODIDs of the page, plus the total
+        List<ContactVersion> versions = contactRepository.findPageVersions(pageable);
+        long count = cachedTotal ? contactCountCache.total() : contactRepository.countAll();
+        if (webRequest.checkNotModified(pageETag(versions, count), pageLastModified(versions))) {
+            return null;
+        }
+        List<Long> ids = versions.stream().map(ContactVersion::getId).toList();
+        return ResponseEntity.ok(new PageImpl<>(hydrate(ids), pageable, count));
+    }
+
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get contacts by IDs",
+            description = "Returns many contacts in one call, in request order; IDs that do not exist are left out. "
+                    + "Use POST /api/contacts/by-ids for lists too long for a URL")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Contacts found"),
+        @ApiResponse(responseCode = "400", description = "No IDs, or more than " + MAX_IDS)
+    })
+    public ResponseEntity<List<Contact>> getContactsByIds(
+            @Parameter(description = "Comma-separated contact IDs") @RequestParam List<Long> ids
+    ) {
+        return multiGet(ids);
+    }
+
+    @PostMapping("/by-ids")
+    @Operation(summary = "Get contacts by IDs (POST)",
+            description = "Same as GET /api/contacts?ids=..., with the IDs as a JSON array in the body")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Contacts found"),
+        @ApiResponse(responseCode = "400", description = "No IDs, or more than " + MAX_IDS)
+    })
+    public ResponseEntity<List<Contact>> postContactsByIds(@RequestBody @NonNull List<Long> ids) {
+        return multiGet(ids);
     }
 
     @GetMapping("/{id}")
-    @Operation(summary = "Get contact by ID", description = "Returns a single contact by its ID")
+    @Operation(summary = "Get contact by ID", description = "Returns a single contact by its ID. "
+            + "Supports conditional requests (ETag / If-None-Match, Last-Modified / If-Modified-Since)")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Contact found"),
+        @ApiResponse(responseCode = "304", description = "Contact not modified"),
         @ApiResponse(responseCode = "404", description = "Contact not found")
     })
     public ResponseEntity<Contact> getContactById(
-            @Parameter(description = "Contact ID") @PathVariable @NonNull Long id
+            @Parameter(description = "Contact ID") @PathVariable @NonNull Long id,
+            WebRequest webRequest
     ) {
-        return contactRepository.findById(id)
+        // Answer If-None-Match / If-Modified-Since from the version query, without loading the record.
+        // Not shared with concurrent requests: one that started before the client's own write would
+        // hand it the old ETag
+        Optional<ContactVersion> version = contactRepository.findVersionById(id);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (webRequest.checkNotModified(version.get().getETag(), version.get().getLastModified())) {
+            return null;
+        }
+        return contactCache.findById(id, version.get().getModificationCount())
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/search")
-    @Operation(summary = "Search contacts", description = "Search contacts by name, email, or company")
-    public ResponseEntity<Page<Contact>> searchContacts(
+    @Operation(summary = "Search contacts", description = "Search contacts by name, email, or company. "
+            + "By default matches come from an in-memory trigram index (case-insensitive); FileMaker only loads the page of results. "
+            + "strategy=fanout runs one query per column in parallel, strategy=jpql a single OR query")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Search results"),
+        @ApiResponse(responseCode = "400", description = "Unknown field, view or strategy")
+    })
+    public ResponseEntity<?> searchContacts(
             @Parameter(description = "Search query") @RequestParam String q,
             @Parameter(description = "Page number") @RequestParam(defaultValue = "0") int page,
-            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Comma-separated properties to select; id is always included")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Predefined projection (full/summary), if fields is not given")
+            @RequestParam(required = false) String view,
+            @Parameter(description = "How to find matches (index/fanout/jpql); defaults to contacts.search.strategy")
+            @RequestParam(required = false) String strategy
     ) {
         Pageable pageable = PageRequest.of(page, size);
+        try {
+            List<String> projection = projection(fields, view);
+            ContactSearchService.Strategy chosen = strategy != null
+                    ? ContactSearchService.Strategy.parse(strategy)
+                    : contactSearchService.getDefaultStrategy();
+            Optional<ContactSearchIndex.Hits> hits = contactSearchService.search(q, pageable.getOffset(), size, chosen);
+            if (hits.isPresent()) {
+                List<Long> ids = hits.get().getIds();
+                List<?> content = projection != null
+                        ? contactRepository.findProjectedByIds(projection, ids)
+                        : hydrate(ids);
+                return ResponseEntity.ok(new PageImpl<>(content, pageable, hits.get().getTotal()));
+            }
+
+            // JPQL chosen, or the strategy could not answer - one OR-of-LIKEs query in FileMaker
+            if (projection != null) {
+                return ResponseEntity.ok(projectedPage(projection, q, pageable, false,
+                        () -> contactRepository.countSearch(q)));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         return ResponseEntity.ok(contactRepository.search(q, pageable));
     }
 
+    @GetMapping("/suggest")
+    @Operation(summary = "Autocomplete", description = "Suggests names, companies and email local parts starting "
+            + "with the prefix (case-insensitive), most frequent first. Answered from memory, without querying FileMaker")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Suggestions"),
+        @ApiResponse(responseCode = "400", description = "Empty prefix"),
+        @ApiResponse(responseCode = "503", description = "Suggestion index not loaded yet")
+    })
+    public ResponseEntity<List<Suggestion>> suggestContacts(
+            @Parameter(description = "Typed prefix") @RequestParam String prefix,
+            @Parameter(description = "Maximum suggestions (1-" + ContactSuggestIndex.MAX_SUGGESTIONS + ")")
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        if (prefix.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!contactSuggestIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").build();
+        }
+        return ResponseEntity.ok(contactSuggestIndex.suggest(prefix.stripLeading(), limit));
+    }
+
     @GetMapping("/by-company/{company}")
-    @Operation(summary = "Get contacts by company", description = "Returns all contacts for a specific company")
-    public ResponseEntity<List<Contact>> getContactsByCompany(
+    @Operation(summary = "Get contacts by company", description = "Returns one page of a company's contacts. "
+            + "Use /by-company/{company}/export to stream all of them")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Page of the company's contacts"),
+        @ApiResponse(responseCode = "400", description = "Invalid sort field")
+    })
+    public ResponseEntity<?> getContactsByCompany(
+            @Parameter(description = "Company name") @PathVariable String company,
+            @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Sort field") @RequestParam(defaultValue = "id") String sortBy,
+            @Parameter(description = "Sort direction (asc/desc)") @RequestParam(defaultValue = "asc") String direction
+    ) {
+        if (!ContactColumns.SORTABLE.containsKey(sortBy)) {
+            return ResponseEntity.badRequest().body("Unsupported sort property: " + sortBy);
+        }
+        Pageable pageable = PageRequest.of(page, size, sort(sortBy, direction));
+        return ResponseEntity.ok(contactRepository.findByCompany(company, pageable));
+    }
+
+    @GetMapping(value = "/by-company/{company}/export", produces = "application/x-ndjson")
+    @Operation(summary = "Export a company's contacts",
+            description = "Streams every contact of the company as newline-delimited JSON, ordered by id")
+    public ResponseEntity<StreamingResponseBody> exportContactsByCompany(
             @Parameter(description = "Company name") @PathVariable String company
     ) {
-        return ResponseEntity.ok(contactRepository.findByCompany(company));
+        StreamingResponseBody body = out -> contactExportService.exportByCompany(company, out);
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/facets/company")
+    @Operation(summary = "Contact count per company",
+            description = "Companies by number of contacts, largest first. Served from memory; contacts without a company are not counted")
+    public ResponseEntity<List<FacetCount>> getCompanyFacets(
+            @Parameter(description = "Maximum number of companies") @RequestParam(defaultValue = "100") int limit
+    ) {
+        return ResponseEntity.ok(contactCompanyFacets.top(Math.max(limit, 0)));
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Export all contacts",
+            description = "Streams every contact as newline-delimited JSON (one object per line), ordered by id")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Export stream started")
+    })
+    public ResponseEntity<StreamingResponseBody> exportContacts() {
+        StreamingResponseBody body = contactExportService::exportAll;
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(body);
     }
 
     // ==================== CREATE ====================
@@ -96,57 +350,74 @@ public class ContactController {
         Contact contact = new Contact();
         mapDtoToEntity(dto, contact);
         Contact saved = contactRepository.save(contact);
+        contactCountCache.invalidate();
+        contactSearchIndex.put(saved);
+        contactSuggestIndex.add(saved);
+        contactCompanyFacets.increment(saved.getCompany());
         return ResponseEntity.status(HttpStatus.CREATED).body(saved);
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Create contacts in batch",
+            description = "Creates many contacts in one call using chunked JDBC batch inserts. "
+                    + "Returns one result per submitted contact, in request order")
+    @ApiResponses({
+        @ApiResponse(responseCode = "201", description = "All contacts created"),
+        @ApiResponse(responseCode = "207", description = "Some contacts could not be created"),
+        @ApiResponse(responseCode = "400", description = "Empty request")
+    })
+    public ResponseEntity<BatchCreateResult> createContacts(@RequestBody @NonNull List<ContactDTO> dtos) {
+        if (dtos.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        BatchCreateResult result = contactBatchService.createAll(dtos);
+        if (result.getCreated() > 0) {
+            contactCountCache.invalidate();
+            // FileMaker does not return the new IDs - reindex in the background
+            contactSearchIndex.refreshAsync();
+            contactSuggestIndex.refreshAsync();
+            for (BatchCreateResult.Item item : result.getItems()) {
+                if (BatchCreateResult.Item.CREATED.equals(item.getStatus())) {
+                    contactCompanyFacets.increment(dtos.get(item.getIndex()).getCompany());
+                }
+            }
+        }
+        HttpStatus status = result.getFailed() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(result);
+    }
+
     // ==================== UPDATE ====================
 
     @PutMapping("/{id}")
-    @Operation(summary = "Update contact", description = "Updates an existing contact")
+    @Operation(summary = "Update contact", description = "Updates an existing contact. "
+            + "Send the contact's ETag in If-Match to update only if nobody changed it in the meantime")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Contact updated successfully"),
-        @ApiResponse(responseCode = "404", description = "Contact not found")
+        @ApiResponse(responseCode = "404", description = "Contact not found"),
+        @ApiResponse(responseCode = "412", description = "Contact was modified since the If-Match version")
     })
-    @SuppressWarnings("null")
     public ResponseEntity<Contact> updateContact(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id,
+            @Parameter(description = "ETag of the version being replaced") @RequestHeader(value = "If-Match", required = false) String ifMatch,
             @RequestBody @NonNull ContactDTO dto
     ) {
-        return contactRepository.findById(id)
-                .map(existing -> {
-                    mapDtoToEntity(dto, existing);
-                    return ResponseEntity.ok(contactRepository.save(existing));
-                })
-                .orElse(ResponseEntity.notFound().build());
+        return applyUpdate(id, mapDtoToFields(dto), ifMatch);
     }
 
     @PatchMapping("/{id}")
-    @Operation(summary = "Partial update contact", description = "Updates specific fields of a contact")
+    @Operation(summary = "Partial update contact", description = "Updates specific fields of a contact. "
+            + "Send the contact's ETag in If-Match to update only if nobody changed it in the meantime")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Contact updated successfully"),
-        @ApiResponse(responseCode = "404", description = "Contact not found")
+        @ApiResponse(responseCode = "404", description = "Contact not found"),
+        @ApiResponse(responseCode = "412", description = "Contact was modified since the If-Match version")
     })
-    @SuppressWarnings("null")
     public ResponseEntity<Contact> patchContact(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id,
+            @Parameter(description = "ETag of the version being changed") @RequestHeader(value = "If-Match", required = false) String ifMatch,
             @RequestBody @NonNull ContactDTO dto
     ) {
-        return contactRepository.findById(id)
-                .map(existing -> {
-                    // Only update non-null fields
-                    if (dto.getEmail() != null) existing.setEmail(dto.getEmail());
-                    if (dto.getLogin() != null) existing.setLogin(dto.getLogin());
-                    if (dto.getPassword() != null) existing.setPassword(dto.getPassword());
-                    if (dto.getFirstName() != null) existing.setFirstName(dto.getFirstName());
-                    if (dto.getLastName() != null) existing.setLastName(dto.getLastName());
-                    if (dto.getTitle() != null) existing.setTitle(dto.getTitle());
-                    if (dto.getJobTitle() != null) existing.setJobTitle(dto.getJobTitle());
-                    if (dto.getCompany() != null) existing.setCompany(dto.getCompany());
-                    if (dto.getWebsite() != null) existing.setWebsite(dto.getWebsite());
-                    if (dto.getNotes() != null) existing.setNotes(dto.getNotes());
-                    return ResponseEntity.ok(contactRepository.save(existing));
-                })
-                .orElse(ResponseEntity.notFound().build());
+        return applyUpdate(id, mapDtoToChanges(dto), ifMatch);
     }
 
     // ==================== DELETE ====================
@@ -160,15 +431,211 @@ public class ContactController {
     public ResponseEntity<Void> deleteContact(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id
     ) {
-        if (contactRepository.existsById(id)) {
-            contactRepository.deleteById(id);
+        // The company to uncount, if the contact is cached; otherwise the facets are reloaded
+        Optional<Contact> before = contactCache.peek(id);
+        // One DELETE statement - the affected-row count tells whether the contact existed
+        if (contactRepository.deleteContactById(id) > 0) {
+            contactCache.evict(id);
+            contactCountCache.invalidate();
+            contactSearchIndex.remove(id);
+            if (before.isPresent()) {
+                contactCompanyFacets.decrement(before.get().getCompany());
+            } else {
+                contactCompanyFacets.refreshAsync();
+            }
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
     }
 
+    @DeleteMapping(params = "ids")
+    @Operation(summary = "Delete contacts by IDs",
+            description = "Deletes many contacts with chunked DELETE ... WHERE id IN (...) statements")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Contacts deleted; IDs that did not exist are not counted"),
+        @ApiResponse(responseCode = "400", description = "No IDs given")
+    })
+    public ResponseEntity<BulkDeleteResult> deleteContacts(
+            @Parameter(description = "Comma-separated contact IDs") @RequestParam List<Long> ids
+    ) {
+        if (ids.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        int requested = new LinkedHashSet<>(ids).size();
+        int deleted = contactRepository.deleteAllByIds(ids);
+        contactCache.evictAll(ids);
+        if (deleted > 0) {
+            contactCountCache.invalidate();
+            contactSearchIndex.removeAll(ids);
+            contactCompanyFacets.refreshAsync();
+        }
+        return ResponseEntity.ok(new BulkDeleteResult(requested, deleted));
+    }
+
     // ==================== HELPER ====================
 
+    /**
+     * Contacts by ID through the cache: hits are served from memory and all misses are loaded
+     * together with chunked {@code IN (...)} queries, instead of one round trip per ID.
+     */
+    private ResponseEntity<List<Contact>> multiGet(List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_IDS || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(contactCache.findAllById(ids));
+    }
+
+    /**
+     * Sort by the property, breaking ties by id so the page content is deterministic
+     * (and matches its version query).
+     */
+    private Sort sort(String sortBy, String direction) {
+        Sort sort = direction.equalsIgnoreCase("desc") 
+            ? Sort.by(sortBy).descending() 
+            : Sort.by(sortBy).ascending();
+        if (!sortBy.equals("id")) {
+            sort = sort.and(sort.getOrderFor(sortBy).isDescending()
+                    ? Sort.by("id").descending() : Sort.by("id").ascending());
+        }
+        return sort;
+    }
+
+    /**
+     * Resolve the {@code fields} / {@code view} parameters to the properties to select,
+     * or null to return full contacts.
+     *
+     * @throws IllegalArgumentException if a field or the view is unknown
+     */
+    private List<String> projection(String fields, String view) {
+        if (fields != null && !fields.isBlank()) {
+            return ContactColumns.projection(fields);
+        }
+        if (view == null || view.equalsIgnoreCase("full")) {
+            return null;
+        }
+        if (view.equalsIgnoreCase("summary")) {
+            return ContactColumns.SUMMARY;
+        }
+        throw new IllegalArgumentException("Unknown view: " + view);
+    }
+
+    /**
+     * Read a page (with a total) or a slice (size + 1 rows, no total) of projected contacts.
+     */
+    private Slice<Map<String, Object>> projectedPage(List<String> projection, String query, Pageable pageable,
+                                                     boolean slice, LongSupplier total) {
+        int size = pageable.getPageSize();
+        List<Map<String, Object>> rows = contactRepository.findProjected(
+                projection, query, pageable.getSort(), pageable.getOffset(), slice ? size + 1 : size);
+        if (slice) {
+            boolean hasNext = rows.size() > size;
+            return new SliceImpl<>(hasNext ? new ArrayList<>(rows.subList(0, size)) : rows, pageable, hasNext);
+        }
+        return new PageImpl<>(rows, pageable, total.getAsLong());
+    }
+
+    /**
+     * Write the changes with one UPDATE and no read before the write; the affected-row count
+     * tells whether the contact exists. With {@code If-Match}, the version check is part of the
+     * same statement ({@code AND ROWMODID = ?}), so concurrent editors cannot overwrite each other.
+     */
+    @SuppressWarnings("null")
+    private ResponseEntity<Contact> applyUpdate(Long id, Map<String, Object> changes, String ifMatch) {
+        // The company the contact moves away from, if it is cached; otherwise the facets are reloaded
+        Optional<Contact> before = changes.containsKey("company") ? contactCache.peek(id) : Optional.empty();
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            OptionalLong expected = ContactVersion.parseETag(id, ifMatch);
+            boolean applied = expected.isPresent() && (changes.isEmpty()
+                    ? contactRepository.findVersionById(id)
+                            .map(v -> v.getModificationCount() == expected.getAsLong()).orElse(false)
+                    : contactRepository.updateFieldsIfVersion(id, expected.getAsLong(), changes) > 0);
+            if (!applied) {
+                // Only on failure: tell a missing contact apart from a stale version
+                return contactRepository.findVersionById(id).isPresent()
+                        ? ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build()
+                        : ResponseEntity.notFound().build();
+            }
+        } else if (!changes.isEmpty() && contactRepository.updateFields(id, changes) == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        contactCache.evict(id);
+
+        // Return the new version so the client can chain further conditional updates
+        Optional<ContactVersion> version = contactRepository.findVersionById(id);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Optional<Contact> updated = contactCache.findById(id, version.get().getModificationCount());
+        updated.ifPresent(contact -> {
+            contactSearchIndex.put(contact);
+            contactSuggestIndex.add(contact);
+        });
+        if (changes.containsKey("company")) {
+            if (before.isPresent() && updated.isPresent()) {
+                // No-op when a PUT resends the same company
+                contactCompanyFacets.move(before.get().getCompany(), updated.get().getCompany());
+            } else {
+                contactCompanyFacets.refreshAsync();
+            }
+        }
+        return updated
+                .map(contact -> ResponseEntity.ok()
+                        .eTag(version.get().getETag())
+                        .lastModified(version.get().getLastModified())
+                        .body(contact))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Load the contacts of a page with {@code IN (...)} queries, in page order.
+     */
+    private List<Contact> hydrate(List<Long> ids) {
+        return contactRepository.findAllByIds(ids);
+    }
+
+    /**
+     * Strong entity tag of a page: changes when a row on the page is modified,
+     * when rows move on or off the page, or when the total changes.
+     */
+    private String pageETag(List<ContactVersion> versions, long total) {
+        StringBuilder state = new StringBuilder().append(total);
+        for (ContactVersion version : versions) {
+            state.append(';').append(version.getId()).append('-').append(version.getModificationCount());
+        }
+        return "\"p" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private long pageLastModified(List<ContactVersion> versions) {
+        return versions.stream().mapToLong(ContactVersion::getLastModified).max().orElse(-1);
+    }
+
+    /**
+     * Collect all DTO fields, nulls included, as property values for a full update.
+     */
+    private Map<String, Object> mapDtoToFields(@NonNull ContactDTO dto) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("email", dto.getEmail());
+        fields.put("login", dto.getLogin());
+        fields.put("password", dto.getPassword());
+        fields.put("firstName", dto.getFirstName());
+        fields.put("lastName", dto.getLastName());
+        fields.put("title", dto.getTitle());
+        fields.put("jobTitle", dto.getJobTitle());
+        fields.put("company", dto.getCompany());
+        fields.put("website", dto.getWebsite());
+        fields.put("notes", dto.getNotes());
+        return fields;
+    }
+
+    /**
+     * Collect the non-null DTO fields as property changes for a partial update.
+     */
+    private Map<String, Object> mapDtoToChanges(@NonNull ContactDTO dto) {
+        Map<String, Object> changes = mapDtoToFields(dto);
+        changes.values().removeIf(Objects::isNull);
+        return changes;
+    }
+
     private void mapDtoToEntity(@NonNull ContactDTO dto, @NonNull Contact entity) {
         entity.setEmail(dto.getEmail());
         entity.setLogin(dto.getLogin());
@@ -0,0 +1,58 @@
+package com.filemaker.demo.controller;
+
+import com.filemaker.demo.dto.BackfillProgress;
+import com.filemaker.demo.service.PhotoContentTypeBackfill;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Control of the background job that records the content type of photos stored from FileMaker.
+ */
+@RestController
+@RequestMapping("/api/photo-backfill")
+@Tag(name = "Photo Backfill", description = "Fill in missing photo content types in the background")
+public class PhotoBackfillController {
+
+    private final PhotoContentTypeBackfill backfill;
+
+    public PhotoBackfillController(PhotoContentTypeBackfill backfill) {
+        this.backfill = backfill;
+    }
+
+    @GetMapping
+    @Operation(summary = "Backfill progress", description = "State, next contact ID, counts and throughput of the backfill job")
+    public ResponseEntity<BackfillProgress> getProgress() {
+        return ResponseEntity.ok(backfill.progress());
+    }
+
+    @PostMapping("/start")
+    @Operation(summary = "Start or resume the backfill", description = "Resumes a paused or failed run where it stopped, otherwise starts a new run")
+    @ApiResponses({
+        @ApiResponse(responseCode = "202", description = "Running"),
+        @ApiResponse(responseCode = "409", description = "Already running, or the contact table could not be read")
+    })
+    public ResponseEntity<BackfillProgress> start(
+            @Parameter(description = "First contact ID to examine, e.g. the nextId reported before a restart")
+            @RequestParam(required = false) Long fromId
+    ) {
+        boolean started = backfill.start(fromId);
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).body(backfill.progress());
+    }
+
+    @PostMapping("/pause")
+    @Operation(summary = "Pause the backfill", description = "Stops after the ID ranges in progress")
+    public ResponseEntity<BackfillProgress> pause() {
+        backfill.pause();
+        return ResponseEntity.ok(backfill.progress());
+    }
+}
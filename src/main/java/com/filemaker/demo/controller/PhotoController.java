@@ -1,20 +1,40 @@
 package com.filemaker.demo.controller;
 
-import com.filemaker.demo.repository.ContactRepository;
+import com.filemaker.demo.service.ContactCache;
 import com.filemaker.demo.service.ContainerFieldService;
+import com.filemaker.demo.service.ContainerFormat;
+import com.filemaker.demo.service.ContainerFormatResolver;
+import com.filemaker.demo.service.ContainerStream;
+import com.filemaker.demo.service.ContainerWriteBudget;
+import com.filemaker.demo.service.PhotoDiskCache;
+import com.filemaker.demo.service.PhotoThumbnailService;
+import com.filemaker.demo.service.SingleFlight;
+import com.filemaker.demo.service.SingleFlightRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.lang.NonNull;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Controller for handling contact photo uploads and downloads.
  * <p>
@@ -28,14 +48,42 @@ public class PhotoController {
 
     private static final String TABLE_NAME = "contact";
     private static final String FIELD_NAME = "photo_content";
+    private static final String CONTENT_TYPE_COLUMN = "photo_content_type";
+
+    // Tomcat's sendfile request attributes: the connector writes the file to the socket itself
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
 
     private final ContainerFieldService containerFieldService;
-    private final ContactRepository contactRepository;
+    private final ContactCache contactCache;
+    private final PhotoDiskCache photoDiskCache;
+    private final ContainerFormatResolver formatResolver;
+    private final PhotoThumbnailService thumbnailService;
+    private final SingleFlight<FillKey, Filled> fills;
+
+    // A photo as requested: contact, type code (null for the stored one) and the version it was missed at
+    private record FillKey(Long contactId, String format, long version) {}
+
+    // Outcome of a shared cache fill: the cached file, or none (not cacheable, or no photo at all)
+    private record Filled(PhotoDiskCache.CachedPhoto cached, boolean notFound) {}
+
+    // A container opened for a download, with its content type and version
+    private record OpenedPhoto(ContainerStream stream, String contentType, long version, boolean cacheable) {}
 
     public PhotoController(ContainerFieldService containerFieldService, 
-                          ContactRepository contactRepository) {
+                          ContactCache contactCache,
+                          PhotoDiskCache photoDiskCache,
+                          ContainerFormatResolver formatResolver,
+                          PhotoThumbnailService thumbnailService,
+                          SingleFlightRegistry singleFlightRegistry) {
         this.containerFieldService = containerFieldService;
-        this.contactRepository = contactRepository;
+        this.contactCache = contactCache;
+        this.photoDiskCache = photoDiskCache;
+        this.formatResolver = formatResolver;
+        this.thumbnailService = thumbnailService;
+        this.fills = singleFlightRegistry.create("photo-fill");
     }
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -43,158 +91,89 @@ public class PhotoController {
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Photo uploaded successfully"),
         @ApiResponse(responseCode = "404", description = "Contact not found"),
-        @ApiResponse(responseCode = "400", description = "Invalid file or upload failed")
+        @ApiResponse(responseCode = "400", description = "Invalid file or upload failed"),
+        @ApiResponse(responseCode = "413", description = "File larger than the upload memory budget"),
+        @ApiResponse(responseCode = "503", description = "Upload memory budget in use; retry later")
     })
     public ResponseEntity<String> uploadPhoto(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id,
             @Parameter(description = "Photo file") @RequestParam("file") @NonNull MultipartFile file
     ) {
-        // Verify contact exists
-        if (!contactRepository.existsById(id)) {
-            return ResponseEntity.notFound().build();
-        }
-
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body("File is empty");
         }
 
-        boolean success = containerFieldService.uploadToContainer(TABLE_NAME, FIELD_NAME, id, file);
+        // Container and content type in one statement; a missing contact updates no row
+        ContainerFieldService.WriteResult result;
+        try {
+            result = containerFieldService.uploadWithContentType(TABLE_NAME, FIELD_NAME, CONTENT_TYPE_COLUMN, id,
+                    file, file.getContentType());
+        } catch (ContainerWriteBudget.BudgetExceededException e) {
+            if (!e.isRetryable()) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").body(e.getMessage());
+        }
 
-        if (success) {
-            // Also update the content type field
-            contactRepository.findById(id).ifPresent(contact -> {
-                contact.setPhotoContentType(file.getContentType());
-                contactRepository.save(contact);
-            });
-            return ResponseEntity.ok("Photo uploaded successfully");
-        } else {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+        return switch (result) {
+            case UPDATED -> {
+                photoChanged(id);
+                // Avatars for list views are rendered in the background, before anyone asks
+                thumbnailService.pregenerate(id);
+                yield ResponseEntity.ok("Photo uploaded successfully");
+            }
+            case NOT_FOUND -> ResponseEntity.notFound().build();
+            case FAILED -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Failed to upload photo");
-        }
+        };
     }
 
     @GetMapping
     @Operation(summary = "Download photo", description = "Download a contact's photo from the container field")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Photo retrieved successfully"),
-        @ApiResponse(responseCode = "404", description = "Contact not found or no photo available")
+        @ApiResponse(responseCode = "400", description = "Unknown format, or w or h out of range"),
+        @ApiResponse(responseCode = "404", description = "Contact not found, no photo available, or (with w/h) not an image"),
+        @ApiResponse(responseCode = "503", description = "Thumbnail renderer or container streams busy; retry later")
     })
-    public ResponseEntity<byte[]> downloadPhoto(
+    public ResponseEntity<StreamingResponseBody> downloadPhoto(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id,
             @Parameter(description = "Image format (JPEG, PNGf, GIFf, PDF, TIFF)") 
-            @RequestParam(required = false) String format
+            @RequestParam(required = false) String format,
+            @Parameter(description = "Maximum width of a scaled-down variant (format is then ignored)")
+            @RequestParam(required = false) Integer w,
+            @Parameter(description = "Maximum height of a scaled-down variant (format is then ignored)")
+            @RequestParam(required = false) Integer h,
+            HttpServletRequest request
     ) {
-        // Verify contact exists
-        var contactOpt = contactRepository.findById(id);
-        if (contactOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        // Auto-detect format from content type if not specified
-        String effectiveFormat = format;
-        if (effectiveFormat == null || effectiveFormat.isEmpty()) {
-            String storedContentType = contactOpt.get().getPhotoContentType();
-            effectiveFormat = detectFormatFromContentType(storedContentType);
-        }
-
-        // Download - use probing if format is still unknown
-        byte[] photoData;
-        if (effectiveFormat == null) {
-            // Content type unknown (e.g., data entered from FileMaker without setting content type)
-            photoData = downloadWithAutoDetect(id);
-        } else {
-            photoData = containerFieldService.downloadFromContainer(TABLE_NAME, FIELD_NAME, id, effectiveFormat);
-        }
-
-        if (photoData == null || photoData.length == 0) {
-            return ResponseEntity.notFound().build();
-        }
-
-        // Determine content type for response
-        // If format was explicitly specified, use that format's content type
-        // Otherwise use stored content type or derive from effective format
-        String contentType;
-        if (format != null && !format.isEmpty()) {
-            // User explicitly requested a format - use that format's content type
-            contentType = determineContentType(format);
-        } else {
-            contentType = contactOpt.get().getPhotoContentType();
-            if (contentType == null || contentType.isEmpty()) {
-                contentType = determineContentType(effectiveFormat);
-            }
+        if (w != null || h != null) {
+            return streamThumbnail(id, w, h, true, request);
         }
-        
-        // Ensure contentType is never null
-        if (contentType == null || contentType.isEmpty()) {
-            contentType = "application/octet-stream";
-        }
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(contentType));
-        headers.setContentLength(photoData.length);
-        headers.setContentDispositionFormData("attachment", "photo." + getExtension(effectiveFormat));
-
-        return new ResponseEntity<>(photoData, headers, HttpStatus.OK);
+        return streamPhoto(id, format, true, request);
     }
 
     @GetMapping("/inline")
     @Operation(summary = "View photo inline", description = "View a contact's photo in the browser")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Photo retrieved successfully"),
-        @ApiResponse(responseCode = "404", description = "Contact not found or no photo available")
+        @ApiResponse(responseCode = "400", description = "Unknown format, or w or h out of range"),
+        @ApiResponse(responseCode = "404", description = "Contact not found, no photo available, or (with w/h) not an image"),
+        @ApiResponse(responseCode = "503", description = "Thumbnail renderer or container streams busy; retry later")
     })
-    public ResponseEntity<byte[]> viewPhoto(
+    public ResponseEntity<StreamingResponseBody> viewPhoto(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id,
             @Parameter(description = "Image format (JPEG, PNGf, GIFf, PDF, TIFF)") 
-            @RequestParam(required = false) String format
+            @RequestParam(required = false) String format,
+            @Parameter(description = "Maximum width of a scaled-down variant (format is then ignored)")
+            @RequestParam(required = false) Integer w,
+            @Parameter(description = "Maximum height of a scaled-down variant (format is then ignored)")
+            @RequestParam(required = false) Integer h,
+            HttpServletRequest request
     ) {
-        var contactOpt = contactRepository.findById(id);
-        if (contactOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        // Auto-detect format from content type if not specified
-        String effectiveFormat = format;
-        if (effectiveFormat == null || effectiveFormat.isEmpty()) {
-            String storedContentType = contactOpt.get().getPhotoContentType();
-            effectiveFormat = detectFormatFromContentType(storedContentType);
+        if (w != null || h != null) {
+            return streamThumbnail(id, w, h, false, request);
         }
-
-        // Download - use probing if format is still unknown
-        byte[] photoData;
-        if (effectiveFormat == null) {
-            photoData = downloadWithAutoDetect(id);
-        } else {
-            photoData = containerFieldService.downloadFromContainer(TABLE_NAME, FIELD_NAME, id, effectiveFormat);
-        }
-
-        if (photoData == null || photoData.length == 0) {
-            return ResponseEntity.notFound().build();
-        }
-
-        // Determine content type for response
-        String contentType;
-        if (format != null && !format.isEmpty()) {
-            contentType = determineContentType(format);
-        } else {
-            contentType = contactOpt.get().getPhotoContentType();
-            if (contentType == null || contentType.isEmpty()) {
-                contentType = determineContentType(effectiveFormat);
-            }
-        }
-        
-        // Ensure contentType is never null
-        if (contentType == null || contentType.isEmpty()) {
-            contentType = "application/octet-stream";
-        }
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(contentType));
-        headers.setContentLength(photoData.length);
-        // Inline display instead of download
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline");
-
-        return new ResponseEntity<>(photoData, headers, HttpStatus.OK);
+        return streamPhoto(id, format, false, request);
     }
 
     @DeleteMapping
@@ -206,22 +185,24 @@ public class PhotoController {
     public ResponseEntity<Void> deletePhoto(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id
     ) {
-        if (!contactRepository.existsById(id)) {
-            return ResponseEntity.notFound().build();
-        }
+        // Container and content type in one statement; a missing contact updates no row
+        var result = containerFieldService.clearWithContentType(TABLE_NAME, FIELD_NAME, CONTENT_TYPE_COLUMN, id);
 
-        boolean success = containerFieldService.clearContainer(TABLE_NAME, FIELD_NAME, id);
+        return switch (result) {
+            case UPDATED -> {
+                photoChanged(id);
+                yield ResponseEntity.noContent().build();
+            }
+            case NOT_FOUND -> ResponseEntity.notFound().build();
+            case FAILED -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        };
+    }
 
-        if (success) {
-            // Clear the content type field
-            contactRepository.findById(id).ifPresent(contact -> {
-                contact.setPhotoContentType(null);
-                contactRepository.save(contact);
-            });
-            return ResponseEntity.noContent().build();
-        } else {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    // The contact (content type), its cached photo files and its resolved type code are all stale now
+    private void photoChanged(Long id) {
+        contactCache.evict(id);
+        photoDiskCache.invalidate(id);
+        formatResolver.forget(id);
     }
 
     @GetMapping("/info")
@@ -233,17 +214,16 @@ public class PhotoController {
     public ResponseEntity<PhotoInfo> getPhotoInfo(
             @Parameter(description = "Contact ID") @PathVariable @NonNull Long id
     ) {
-        var contactOpt = contactRepository.findById(id);
-        if (contactOpt.isEmpty()) {
+        // Content type and reference in one query, without loading the contact
+        var row = containerFieldService.getContainerMetadata(TABLE_NAME, FIELD_NAME, CONTENT_TYPE_COLUMN, id);
+        if (row == null) {
             return ResponseEntity.notFound().build();
         }
 
-        String reference = containerFieldService.getContainerReference(TABLE_NAME, FIELD_NAME, id);
-        String contentType = contactOpt.get().getPhotoContentType();
-
+        String reference = row.reference();
         PhotoInfo info = new PhotoInfo();
         info.setContactId(id);
-        info.setContentType(contentType);
+        info.setContentType(row.contentType());
         info.setReference(reference);
         info.setHasPhoto(reference != null && !reference.isEmpty());
 
@@ -252,95 +232,249 @@ public class PhotoController {
 
     // Helper methods
 
-    private String determineContentType(String format) {
-        return switch (format.toUpperCase()) {
-            case "JPEG", "JPG" -> "image/jpeg";
-            case "PNG", "PNGF" -> "image/png";
-            case "GIF", "GIFF" -> "image/gif";
-            case "TIFF", "TIF" -> "image/tiff";
-            case "PDF", "PDF " -> "application/pdf";
-            default -> "application/octet-stream";
-        };
-    }
+    /**
+     * Stream a photo to the response, from the disk cache if it holds the contact's current version.
+     * <p>
+     * A cache hit takes one cheap version query and is sent as described at {@link #serveCached}.
+     * On a miss the photo is read into the cache and served from there: concurrent misses for the same
+     * photo share that one read ({@link #fill}), so a popular photo opens one container stream, not
+     * one per request. Photos that cannot be cached, or every photo with the cache disabled, are
+     * streamed from the container instead ({@link #open}): its first chunk is read before the headers
+     * are sent, so a missing photo is still a 404, and the rest is copied through a fixed buffer while
+     * the response is written.
+     */
+    private ResponseEntity<StreamingResponseBody> streamPhoto(@NonNull Long id, String format, boolean attachment,
+                                                              HttpServletRequest request) {
+        // Resolved to a known type code before anything is built from it: it becomes part of the SQL text
+        boolean formatGiven = format != null && !format.isEmpty();
+        Optional<ContainerFormat> requested = formatGiven ? ContainerFormat.ofName(format) : Optional.empty();
+        if (formatGiven && requested.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        String requestedFormat = requested.map(ContainerFormat::getTypeCode).orElse(null);
+
+        try {
+            OpenedPhoto opened = null;
+            // The record's modification count keys the disk cache, so changes made in FileMaker are seen too
+            if (photoDiskCache.isEnabled()) {
+                var versionOpt = contactCache.findVersionById(id);
+                if (versionOpt.isEmpty()) {
+                    return ResponseEntity.notFound().build();
+                }
+                long version = versionOpt.get().getModificationCount();
+                var cached = photoDiskCache.get(id, requestedFormat, version);
+                if (cached.isEmpty()) {
+                    // The caller running the fill keeps the container if it may not be cached
+                    AtomicReference<OpenedPhoto> own = new AtomicReference<>();
+                    Filled filled = fills.execute(new FillKey(id, requestedFormat, version),
+                            () -> fill(id, requested, own));
+                    if (filled.notFound()) {
+                        return ResponseEntity.notFound().build();
+                    }
+                    cached = Optional.ofNullable(filled.cached());
+                    opened = own.get();
+                }
+                if (cached.isPresent()) {
+                    var response = serveCached(cached.get(), photoHeaders(cached.get().contentType(), attachment), request);
+                    if (response != null) {
+                        return response;
+                    }
+                }
+            }
 
-    private String getExtension(String format) {
-        if (format == null) return "bin";
-        return switch (format.toUpperCase()) {
-            case "JPEG", "JPG" -> "jpg";
-            case "PNG", "PNGF" -> "png";
-            case "GIF", "GIFF" -> "gif";
-            case "TIFF", "TIF" -> "tiff";
-            case "PDF", "PDF " -> "pdf";
-            default -> "bin";
-        };
+            if (opened == null) {
+                opened = open(id, requested);
+                if (opened == null) {
+                    return ResponseEntity.notFound().build();
+                }
+            }
+
+            HttpHeaders headers = photoHeaders(opened.contentType(), attachment);
+            ContainerStream body = opened.stream();
+            // Known when the photo fit in the first chunk; larger ones are sent chunked
+            if (body.knownLength() >= 0) {
+                headers.setContentLength(body.knownLength());
+            }
+
+            StreamingResponseBody responseBody = out -> {
+                try (body) {
+                    body.transferTo(out);
+                }
+            };
+            return new ResponseEntity<>(responseBody, headers, HttpStatus.OK);
+        } catch (ContainerFieldService.StreamsBusyException e) {
+            // Every connection the pool can spare is held by downloads still being sent
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").build();
+        }
     }
 
     /**
-     * Detect FileMaker format code from MIME content type.
-     * If content type is unknown, returns null to trigger format probing.
+     * Read a photo into the disk cache, for every request that missed it meanwhile. A photo that may not
+     * be cached is left open in {@code own}, for the calling request to stream.
      */
-    private String detectFormatFromContentType(String contentType) {
-        if (contentType == null || contentType.isEmpty()) {
-            return null;  // Unknown - will trigger probing
+    private Filled fill(@NonNull Long id, Optional<ContainerFormat> requested, AtomicReference<OpenedPhoto> own) {
+        OpenedPhoto opened = open(id, requested);
+        if (opened == null) {
+            return new Filled(null, true);
+        }
+        if (!opened.cacheable()) {
+            own.set(opened);
+            return new Filled(null, false);
+        }
+        // Cached under the version read now, which is newer if the record changed since the lookup
+        String requestedFormat = requested.map(ContainerFormat::getTypeCode).orElse(null);
+        try (ContainerStream photo = opened.stream()) {
+            return new Filled(photoDiskCache.load(photo, id, requestedFormat, opened.version(), opened.contentType())
+                    .orElse(null), false);
+        } catch (IOException e) {
+            // Each request then reads the container itself
+            return new Filled(null, false);
         }
-        return switch (contentType.toLowerCase()) {
-            case "image/jpeg", "image/jpg" -> "JPEG";
-            case "image/png" -> "PNGf";
-            case "image/gif" -> "GIFf";
-            case "image/tiff" -> "TIFF";
-            case "application/pdf" -> "PDF ";
-            default -> null;  // Unknown - will trigger probing
-        };
     }
 
     /**
-     * Detect format from file reference (filename stored in container).
-     * This is fast - single query vs probing multiple formats.
+     * Open a photo with one statement reading its content type, file reference, version and container
+     * ({@link ContainerFieldService#openWithMetadata}), or return null if there is none. Containers
+     * without a known content type are resolved through {@link ContainerFormatResolver}, which records
+     * it for later requests.
      */
-    private String detectFormatFromReference(@NonNull Long id) {
-        String reference = containerFieldService.getContainerReference(TABLE_NAME, FIELD_NAME, id);
-        if (reference == null || reference.isEmpty()) {
+    private OpenedPhoto open(@NonNull Long id, Optional<ContainerFormat> requested) {
+        String requestedFormat = requested.map(ContainerFormat::getTypeCode).orElse(null);
+        var row = containerFieldService.openWithMetadata(TABLE_NAME, FIELD_NAME, CONTENT_TYPE_COLUMN, id, requestedFormat);
+        if (row == null) {
             return null;
         }
-        
-        String lowerRef = reference.toLowerCase();
-        if (lowerRef.endsWith(".jpg") || lowerRef.endsWith(".jpeg")) {
-            return "JPEG";
-        } else if (lowerRef.endsWith(".png")) {
-            return "PNGf";
-        } else if (lowerRef.endsWith(".gif")) {
-            return "GIFf";
-        } else if (lowerRef.endsWith(".pdf")) {
-            return "PDF ";
-        } else if (lowerRef.endsWith(".tiff") || lowerRef.endsWith(".tif")) {
-            return "TIFF";
+
+        ContainerStream photo = row.stream();
+        String contentType = row.contentType();
+        boolean cacheable = photoDiskCache.isEnabled();
+        if (requested.isPresent()) {
+            // User explicitly requested a format - use that format's content type
+            contentType = requested.get().getContentType();
+        } else if (ContainerFormat.ofContentType(contentType).isEmpty()) {
+            // Content type unknown (e.g., data entered from FileMaker without setting content type):
+            // the statement read the container as JPEG
+            var resolution = photo != null
+                    ? formatResolver.accept(TABLE_NAME, FIELD_NAME, id, row.version(), "JPEG", photo)
+                    : formatResolver.open(TABLE_NAME, FIELD_NAME, id, row.version(), row.reference(), "JPEG");
+            photo = resolution == null ? null : resolution.stream();
+            if ((contentType == null || contentType.isEmpty()) && resolution != null && resolution.format() != null) {
+                contentType = resolution.format().getContentType();
+            }
+            // Recording the content type when the download closes changes the record, so this version is not requested again
+            cacheable &= resolution == null || !resolution.recordsContentType();
         }
-        return null;
+        return photo == null ? null : new OpenedPhoto(photo, contentType, row.version(), cacheable);
     }
 
     /**
-     * Download with smart format detection.
-     * First tries to detect from file reference (fast), then falls back to probing (slow).
+     * Stream a scaled-down variant fitting in {@code w} x {@code h}, from the disk cache if it holds one
+     * for the contact's current version, otherwise rendered by {@link PhotoThumbnailService} (which
+     * caches it; concurrent requests for the same variant share one render).
      */
-    private byte[] downloadWithAutoDetect(@NonNull Long id) {
-        // First: try to detect from file reference (fast - single query)
-        String format = detectFormatFromReference(id);
-        if (format != null) {
-            byte[] data = containerFieldService.downloadFromContainer(TABLE_NAME, FIELD_NAME, id, format);
-            if (data != null && data.length > 0) {
-                return data;
+    private ResponseEntity<StreamingResponseBody> streamThumbnail(@NonNull Long id, Integer w, Integer h,
+                                                                  boolean attachment, HttpServletRequest request) {
+        int width = w == null ? 0 : w;
+        int height = h == null ? 0 : h;
+        int maxSize = thumbnailService.getMaxSize();
+        if (width < 0 || height < 0 || width + height == 0 || width > maxSize || height > maxSize) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        long version = -1;
+        if (photoDiskCache.isEnabled()) {
+            var versionOpt = contactCache.findVersionById(id);
+            if (versionOpt.isEmpty()) {
+                return ResponseEntity.notFound().build();
             }
+            version = versionOpt.get().getModificationCount();
+            var cached = photoDiskCache.get(id, PhotoThumbnailService.variant(width, height), version);
+            if (cached.isPresent()) {
+                var response = serveCached(cached.get(), photoHeaders(cached.get().contentType(), attachment), request);
+                if (response != null) {
+                    return response;
+                }
+            }
+        }
+
+        Optional<PhotoThumbnailService.Thumbnail> thumbnail;
+        try {
+            thumbnail = thumbnailService.render(id, width, height, version);
+        } catch (PhotoThumbnailService.RenderRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").build();
         }
-        
-        // Fallback: probe formats (slower - multiple queries)
-        String[] formatsToTry = {"JPEG", "PNGf", "PDF ", "GIFf", "TIFF"};
-        for (String fmt : formatsToTry) {
-            byte[] data = containerFieldService.downloadFromContainer(TABLE_NAME, FIELD_NAME, id, fmt);
-            if (data != null && data.length > 0) {
-                return data;
+        if (thumbnail.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        byte[] data = thumbnail.get().data();
+        HttpHeaders headers = photoHeaders(thumbnail.get().contentType(), attachment);
+        headers.setContentLength(data.length);
+        return new ResponseEntity<>(out -> out.write(data), headers, HttpStatus.OK);
+    }
+
+    private HttpHeaders photoHeaders(String contentType, boolean attachment) {
+        HttpHeaders headers = new HttpHeaders();
+        // Ensure contentType is never null
+        headers.setContentType(MediaType.parseMediaType(
+                contentType == null || contentType.isEmpty() ? "application/octet-stream" : contentType));
+        if (attachment) {
+            String extension = ContainerFormat.ofContentType(contentType).map(ContainerFormat::getExtension).orElse("bin");
+            headers.setContentDispositionFormData("attachment", "photo." + extension);
+        } else {
+            // Inline display instead of download
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline");
+        }
+        return headers;
+    }
+
+    /**
+     * Respond with a cached file, or null if it is gone (evicted since the lookup).
+     * <p>
+     * With Tomcat's sendfile the connector writes the file to the socket without passing it through
+     * the heap. It opens the file by name once the request has completed, so the file is
+     * {@link PhotoDiskCache#pin pinned} for the request and kept for a while after: an eviction or
+     * invalidation in between does not delete it. Without sendfile, the file is opened before
+     * returning and copied by {@link FileChannel#transferTo}.
+     */
+    private ResponseEntity<StreamingResponseBody> serveCached(PhotoDiskCache.CachedPhoto cached, HttpHeaders headers,
+                                                              HttpServletRequest request) {
+        headers.setContentLength(cached.size());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) && photoDiskCache.pin(cached)) {
+            try {
+                request.setAttribute(SENDFILE_FILENAME, cached.path().toRealPath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, cached.size());
+                // Tomcat reports nothing once it has sent the file: counted as served when the request completes
+                RequestContextHolder.currentRequestAttributes().registerDestructionCallback(SENDFILE_FILENAME, () -> {
+                    photoDiskCache.release(cached);
+                    photoDiskCache.served(cached.size());
+                }, RequestAttributes.SCOPE_REQUEST);
+                return new ResponseEntity<>(headers, HttpStatus.OK);
+            } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+                request.removeAttribute(SENDFILE_FILENAME);
+                photoDiskCache.release(cached);
             }
         }
-        return null;
+
+        // Opened now, so the file stays readable even if it is evicted before the body is written
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(cached.path(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return null;
+        }
+        StreamingResponseBody body = out -> {
+            try (channel) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (position < cached.size()) {
+                    position += channel.transferTo(position, cached.size() - position, target);
+                }
+            }
+            photoDiskCache.served(cached.size());
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
     // DTO for photo info
@@ -0,0 +1,96 @@
+package com.filemaker.demo.controller;
+
+import com.filemaker.demo.dto.BatchLoaderMetrics;
+import com.filemaker.demo.dto.CacheMetrics;
+import com.filemaker.demo.dto.PhotoCacheMetrics;
+import com.filemaker.demo.dto.SingleFlightMetrics;
+import com.filemaker.demo.dto.SuggestMetrics;
+import com.filemaker.demo.dto.ThumbnailMetrics;
+import com.filemaker.demo.dto.UploadBudgetMetrics;
+import com.filemaker.demo.service.ContactBatchLoader;
+import com.filemaker.demo.service.ContactCache;
+import com.filemaker.demo.service.ContactSuggestIndex;
+import com.filemaker.demo.service.ContainerWriteBudget;
+import com.filemaker.demo.service.PhotoDiskCache;
+import com.filemaker.demo.service.PhotoThumbnailService;
+import com.filemaker.demo.service.SingleFlightRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Runtime counters of the API's in-memory structures, for sizing and tuning.
+ */
+@RestController
+@RequestMapping("/api/stats")
+@Tag(name = "Stats", description = "Runtime counters for tuning")
+public class StatsController {
+
+    private final ContactCache contactCache;
+    private final ContactSuggestIndex contactSuggestIndex;
+    private final ContactBatchLoader contactBatchLoader;
+    private final SingleFlightRegistry singleFlightRegistry;
+    private final ContainerWriteBudget containerWriteBudget;
+    private final PhotoDiskCache photoDiskCache;
+    private final PhotoThumbnailService photoThumbnailService;
+
+    public StatsController(ContactCache contactCache, ContactSuggestIndex contactSuggestIndex,
+                           ContactBatchLoader contactBatchLoader, SingleFlightRegistry singleFlightRegistry,
+                           ContainerWriteBudget containerWriteBudget, PhotoDiskCache photoDiskCache,
+                           PhotoThumbnailService photoThumbnailService) {
+        this.contactCache = contactCache;
+        this.contactSuggestIndex = contactSuggestIndex;
+        this.contactBatchLoader = contactBatchLoader;
+        this.singleFlightRegistry = singleFlightRegistry;
+        this.containerWriteBudget = containerWriteBudget;
+        this.photoDiskCache = photoDiskCache;
+        this.photoThumbnailService = photoThumbnailService;
+    }
+
+    @GetMapping("/cache")
+    @Operation(summary = "Contact cache metrics", description = "Hit, miss and eviction counts of the contact lookup cache")
+    public ResponseEntity<CacheMetrics> getCacheMetrics() {
+        return ResponseEntity.ok(contactCache.metrics());
+    }
+
+    @GetMapping("/photo-cache")
+    @Operation(summary = "Photo disk cache metrics", description = "Hit rate, bytes served from disk and disk use of the photo cache")
+    public ResponseEntity<PhotoCacheMetrics> getPhotoCacheMetrics() {
+        return ResponseEntity.ok(photoDiskCache.metrics());
+    }
+
+    @GetMapping("/thumbnails")
+    @Operation(summary = "Photo thumbnail metrics", description = "Renders, average render time, queue length and rejected requests of the thumbnail pool")
+    public ResponseEntity<ThumbnailMetrics> getThumbnailMetrics() {
+        return ResponseEntity.ok(photoThumbnailService.metrics());
+    }
+
+    @GetMapping("/suggest")
+    @Operation(summary = "Autocomplete index size", description = "Term count and approximate memory use of the suggestion index")
+    public ResponseEntity<SuggestMetrics> getSuggestMetrics() {
+        return ResponseEntity.ok(contactSuggestIndex.metrics());
+    }
+
+    @GetMapping("/loader")
+    @Operation(summary = "Batching loader counters", description = "Contact lookups vs the queries sent to FileMaker for them")
+    public ResponseEntity<BatchLoaderMetrics> getLoaderMetrics() {
+        return ResponseEntity.ok(contactBatchLoader.metrics());
+    }
+
+    @GetMapping("/single-flight")
+    @Operation(summary = "Coalesced read counters", description = "Per kind of read: calls, queries actually run, and calls collapsed into a read already in flight")
+    public ResponseEntity<List<SingleFlightMetrics>> getSingleFlightMetrics() {
+        return ResponseEntity.ok(singleFlightRegistry.metrics());
+    }
+
+    @GetMapping("/uploads")
+    @Operation(summary = "Upload memory budget", description = "Heap reserved by container writes in progress, uploads waiting and rejected")
+    public ResponseEntity<UploadBudgetMetrics> getUploadMetrics() {
+        return ResponseEntity.ok(containerWriteBudget.metrics());
+    }
+}
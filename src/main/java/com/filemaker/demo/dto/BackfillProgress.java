@@ -0,0 +1,89 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Progress of the photo content-type backfill job.
+ */
+@Schema(description = "Photo content-type backfill progress")
+public class BackfillProgress {
+
+    @Schema(description = "IDLE, RUNNING, PAUSED, COMPLETED or FAILED", example = "RUNNING")
+    private String state;
+
+    @Schema(description = "Worker threads still busy (after a pause, until their ID ranges are done)", example = "2")
+    private int activeWorkers;
+
+    @Schema(description = "First contact ID not yet done; pass it as fromId to resume after a restart", example = "12400")
+    private long nextId;
+
+    @Schema(description = "Highest contact ID when the run started", example = "250000")
+    private long maxId;
+
+    @Schema(description = "ID ranges completed", example = "62")
+    private long chunks;
+
+    @Schema(description = "Contacts with a photo but no content type examined", example = "3100")
+    private long scanned;
+
+    @Schema(description = "Contacts whose content type was written", example = "3050")
+    private long updated;
+
+    @Schema(description = "Contacts whose container had to be read because the file reference had no known extension", example = "140")
+    private long sniffed;
+
+    @Schema(description = "Contacts whose format could not be identified", example = "50")
+    private long unresolved;
+
+    @Schema(description = "Time spent waiting for the connection pool to have room", example = "1250")
+    private long throttledMillis;
+
+    @Schema(description = "Time spent running, pauses excluded", example = "60000")
+    private long elapsedMillis;
+
+    @Schema(description = "Contacts examined per second of running time", example = "51.7")
+    private double recordsPerSecond;
+
+    @Schema(description = "Why the last run failed, if it did")
+    private String lastError;
+
+    // Getters and Setters
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+
+    public int getActiveWorkers() { return activeWorkers; }
+    public void setActiveWorkers(int activeWorkers) { this.activeWorkers = activeWorkers; }
+
+    public long getNextId() { return nextId; }
+    public void setNextId(long nextId) { this.nextId = nextId; }
+
+    public long getMaxId() { return maxId; }
+    public void setMaxId(long maxId) { this.maxId = maxId; }
+
+    public long getChunks() { return chunks; }
+    public void setChunks(long chunks) { this.chunks = chunks; }
+
+    public long getScanned() { return scanned; }
+    public void setScanned(long scanned) { this.scanned = scanned; }
+
+    public long getUpdated() { return updated; }
+    public void setUpdated(long updated) { this.updated = updated; }
+
+    public long getSniffed() { return sniffed; }
+    public void setSniffed(long sniffed) { this.sniffed = sniffed; }
+
+    public long getUnresolved() { return unresolved; }
+    public void setUnresolved(long unresolved) { this.unresolved = unresolved; }
+
+    public long getThrottledMillis() { return throttledMillis; }
+    public void setThrottledMillis(long throttledMillis) { this.throttledMillis = throttledMillis; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    public double getRecordsPerSecond() { return recordsPerSecond; }
+    public void setRecordsPerSecond(double recordsPerSecond) { this.recordsPerSecond = recordsPerSecond; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
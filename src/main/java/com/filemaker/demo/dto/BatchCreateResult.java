@@ -0,0 +1,76 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a batch create: overall counts plus one entry per submitted contact,
+ * in request order.
+ */
+@Schema(description = "Per-item results of a batch create")
+public class BatchCreateResult {
+
+    @Schema(description = "Number of contacts submitted", example = "3")
+    private int requested;
+
+    @Schema(description = "Number of contacts created", example = "2")
+    private int created;
+
+    @Schema(description = "Number of contacts that failed", example = "1")
+    private int failed;
+
+    @Schema(description = "Per-item results, in request order")
+    private List<Item> items = new ArrayList<>();
+
+    public void addCreated(int index) {
+        items.add(new Item(index, Item.CREATED, null));
+        created++;
+        requested++;
+    }
+
+    public void addFailed(int index, String error) {
+        items.add(new Item(index, Item.FAILED, error));
+        failed++;
+        requested++;
+    }
+
+    // Getters
+    public int getRequested() { return requested; }
+    public int getCreated() { return created; }
+    public int getFailed() { return failed; }
+    public List<Item> getItems() { return items; }
+
+    @Schema(description = "Result for a single submitted contact")
+    public static class Item {
+        public static final String CREATED = "CREATED";
+        public static final String FAILED = "FAILED";
+
+        @Schema(description = "Position of the contact in the request array", example = "0")
+        private int index;
+
+        @Schema(description = "CREATED or FAILED", example = "CREATED")
+        private String status;
+
+        @Schema(description = "Error message when the contact could not be created")
+        private String error;
+
+        public Item() {}
+
+        public Item(int index, String status, String error) {
+            this.index = index;
+            this.status = status;
+            this.error = error;
+        }
+
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+}
@@ -0,0 +1,29 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Counters of the micro-batching contact loader, since application start.
+ */
+@Schema(description = "Batching loader counters")
+public class BatchLoaderMetrics {
+
+    @Schema(description = "Single-contact lookups requested (cache misses)", example = "18230")
+    private long lookups;
+
+    @Schema(description = "Queries sent to FileMaker for them", example = "2114")
+    private long queries;
+
+    @Schema(description = "lookups / queries", example = "8.62")
+    private double averageBatchSize;
+
+    // Getters and Setters
+    public long getLookups() { return lookups; }
+    public void setLookups(long lookups) { this.lookups = lookups; }
+
+    public long getQueries() { return queries; }
+    public void setQueries(long queries) { this.queries = queries; }
+
+    public double getAverageBatchSize() { return averageBatchSize; }
+    public void setAverageBatchSize(double averageBatchSize) { this.averageBatchSize = averageBatchSize; }
+}
@@ -0,0 +1,30 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Result of a bulk delete by IDs.
+ */
+@Schema(description = "Result of a bulk delete")
+public class BulkDeleteResult {
+
+    @Schema(description = "Number of distinct IDs requested", example = "3")
+    private int requested;
+
+    @Schema(description = "Number of contacts deleted; IDs that did not exist are not counted", example = "2")
+    private int deleted;
+
+    public BulkDeleteResult() {}
+
+    public BulkDeleteResult(int requested, int deleted) {
+        this.requested = requested;
+        this.deleted = deleted;
+    }
+
+    // Getters and Setters
+    public int getRequested() { return requested; }
+    public void setRequested(int requested) { this.requested = requested; }
+
+    public int getDeleted() { return deleted; }
+    public void setDeleted(int deleted) { this.deleted = deleted; }
+}
@@ -0,0 +1,53 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Usage counters of an in-memory cache, since application start.
+ */
+@Schema(description = "Cache usage counters")
+public class CacheMetrics {
+
+    @Schema(description = "Approximate number of cached entries", example = "1250")
+    private long size;
+
+    @Schema(description = "Configured maximum number of entries", example = "10000")
+    private long maximumSize;
+
+    @Schema(description = "Lookups answered from the cache", example = "48210")
+    private long hits;
+
+    @Schema(description = "Lookups that went to FileMaker", example = "1730")
+    private long misses;
+
+    @Schema(description = "hits / (hits + misses)", example = "0.965")
+    private double hitRate;
+
+    @Schema(description = "Entries evicted because of the size bound", example = "0")
+    private long evictions;
+
+    @Schema(description = "Average time to load an entry from FileMaker, in milliseconds", example = "12.4")
+    private double averageLoadMillis;
+
+    // Getters and Setters
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public long getMaximumSize() { return maximumSize; }
+    public void setMaximumSize(long maximumSize) { this.maximumSize = maximumSize; }
+
+    public long getHits() { return hits; }
+    public void setHits(long hits) { this.hits = hits; }
+
+    public long getMisses() { return misses; }
+    public void setMisses(long misses) { this.misses = misses; }
+
+    public double getHitRate() { return hitRate; }
+    public void setHitRate(double hitRate) { this.hitRate = hitRate; }
+
+    public long getEvictions() { return evictions; }
+    public void setEvictions(long evictions) { this.evictions = evictions; }
+
+    public double getAverageLoadMillis() { return averageLoadMillis; }
+    public void setAverageLoadMillis(double averageLoadMillis) { this.averageLoadMillis = averageLoadMillis; }
+}
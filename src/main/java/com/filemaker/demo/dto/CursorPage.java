@@ -0,0 +1,42 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * A page of results read with keyset (seek) pagination.
+ * Pass {@code next} back as the {@code cursor} parameter to read the following page.
+ */
+@Schema(description = "Cursor-based page of results")
+public class CursorPage<T> {
+
+    @Schema(description = "Page content")
+    private List<T> content;
+
+    @Schema(description = "Requested page size", example = "20")
+    private int size;
+
+    @Schema(description = "Opaque cursor for the next page, null on the last page")
+    private String next;
+
+    public CursorPage() {}
+
+    public CursorPage(List<T> content, int size, String next) {
+        this.content = content;
+        this.size = size;
+        this.next = next;
+    }
+
+    // Getters and Setters
+    public List<T> getContent() { return content; }
+    public void setContent(List<T> content) { this.content = content; }
+
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = size; }
+
+    public String getNext() { return next; }
+    public void setNext(String next) { this.next = next; }
+
+    public boolean isHasNext() { return next != null; }
+}
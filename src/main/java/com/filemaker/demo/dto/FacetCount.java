@@ -0,0 +1,30 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Number of contacts sharing one value of a field.
+ */
+@Schema(description = "Facet value and its contact count")
+public class FacetCount {
+
+    @Schema(description = "Field value", example = "Acme Corp")
+    private String value;
+
+    @Schema(description = "Number of contacts with this value", example = "40213")
+    private long count;
+
+    public FacetCount() {}
+
+    public FacetCount(String value, long count) {
+        this.value = value;
+        this.count = count;
+    }
+
+    // Getters and Setters
+    public String getValue() { return value; }
+    public void setValue(String value) { this.value = value; }
+
+    public long getCount() { return count; }
+    public void setCount(long count) { this.count = count; }
+}
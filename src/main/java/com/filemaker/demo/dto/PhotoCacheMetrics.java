@@ -0,0 +1,65 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Usage counters of the on-disk photo cache, since application start.
+ */
+@Schema(description = "Photo disk cache counters")
+public class PhotoCacheMetrics {
+
+    @Schema(description = "Cached (contact, format, version) entries", example = "820")
+    private long entries;
+
+    @Schema(description = "Distinct files on disk (identical photos are stored once)", example = "790")
+    private long files;
+
+    @Schema(description = "Bytes on disk", example = "412000000")
+    private long sizeBytes;
+
+    @Schema(description = "Configured maximum bytes on disk", example = "1073741824")
+    private long maximumSizeBytes;
+
+    @Schema(description = "Downloads served from disk", example = "15230")
+    private long hits;
+
+    @Schema(description = "Downloads that went to FileMaker", example = "910")
+    private long misses;
+
+    @Schema(description = "hits / (hits + misses)", example = "0.944")
+    private double hitRate;
+
+    @Schema(description = "Bytes served from disk", example = "7340032000")
+    private long bytesServed;
+
+    @Schema(description = "Files removed because of the size bound", example = "12")
+    private long evictions;
+
+    // Getters and Setters
+    public long getEntries() { return entries; }
+    public void setEntries(long entries) { this.entries = entries; }
+
+    public long getFiles() { return files; }
+    public void setFiles(long files) { this.files = files; }
+
+    public long getSizeBytes() { return sizeBytes; }
+    public void setSizeBytes(long sizeBytes) { this.sizeBytes = sizeBytes; }
+
+    public long getMaximumSizeBytes() { return maximumSizeBytes; }
+    public void setMaximumSizeBytes(long maximumSizeBytes) { this.maximumSizeBytes = maximumSizeBytes; }
+
+    public long getHits() { return hits; }
+    public void setHits(long hits) { this.hits = hits; }
+
+    public long getMisses() { return misses; }
+    public void setMisses(long misses) { this.misses = misses; }
+
+    public double getHitRate() { return hitRate; }
+    public void setHitRate(double hitRate) { this.hitRate = hitRate; }
+
+    public long getBytesServed() { return bytesServed; }
+    public void setBytesServed(long bytesServed) { this.bytesServed = bytesServed; }
+
+    public long getEvictions() { return evictions; }
+    public void setEvictions(long evictions) { this.evictions = evictions; }
+}
@@ -0,0 +1,41 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Counters of one group of coalesced reads, since application start.
+ */
+@Schema(description = "Single-flight coalescing counters")
+public class SingleFlightMetrics {
+
+    @Schema(description = "Kind of read", example = "photo-fill")
+    private String name;
+
+    @Schema(description = "Reads requested", example = "5200")
+    private long calls;
+
+    @Schema(description = "Reads actually sent to FileMaker", example = "310")
+    private long executions;
+
+    @Schema(description = "Reads answered by joining an identical one in flight (calls - executions)", example = "4890")
+    private long collapsed;
+
+    @Schema(description = "Reads in flight right now", example = "2")
+    private long inFlight;
+
+    // Getters and Setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public long getCalls() { return calls; }
+    public void setCalls(long calls) { this.calls = calls; }
+
+    public long getExecutions() { return executions; }
+    public void setExecutions(long executions) { this.executions = executions; }
+
+    public long getCollapsed() { return collapsed; }
+    public void setCollapsed(long collapsed) { this.collapsed = collapsed; }
+
+    public long getInFlight() { return inFlight; }
+    public void setInFlight(long inFlight) { this.inFlight = inFlight; }
+}
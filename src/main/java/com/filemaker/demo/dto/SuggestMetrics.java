@@ -0,0 +1,41 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Size and memory use of the autocomplete index.
+ */
+@Schema(description = "Autocomplete index size")
+public class SuggestMetrics {
+
+    @Schema(description = "Distinct terms in the last snapshot", example = "1830211")
+    private long terms;
+
+    @Schema(description = "Prefixes with a precomputed top-k list", example = "9120")
+    private long precomputedPrefixes;
+
+    @Schema(description = "Terms added by API writes since the last snapshot", example = "12")
+    private long overlayTerms;
+
+    @Schema(description = "Approximate heap used by the snapshot, in bytes", example = "41226140")
+    private long estimatedBytes;
+
+    @Schema(description = "estimatedBytes scaled to one million terms", example = "22525000")
+    private long bytesPerMillionTerms;
+
+    // Getters and Setters
+    public long getTerms() { return terms; }
+    public void setTerms(long terms) { this.terms = terms; }
+
+    public long getPrecomputedPrefixes() { return precomputedPrefixes; }
+    public void setPrecomputedPrefixes(long precomputedPrefixes) { this.precomputedPrefixes = precomputedPrefixes; }
+
+    public long getOverlayTerms() { return overlayTerms; }
+    public void setOverlayTerms(long overlayTerms) { this.overlayTerms = overlayTerms; }
+
+    public long getEstimatedBytes() { return estimatedBytes; }
+    public void setEstimatedBytes(long estimatedBytes) { this.estimatedBytes = estimatedBytes; }
+
+    public long getBytesPerMillionTerms() { return bytesPerMillionTerms; }
+    public void setBytesPerMillionTerms(long bytesPerMillionTerms) { this.bytesPerMillionTerms = bytesPerMillionTerms; }
+}
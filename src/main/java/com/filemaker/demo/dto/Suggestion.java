@@ -0,0 +1,37 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * One type-ahead suggestion.
+ */
+@Schema(description = "Autocomplete suggestion")
+public class Suggestion {
+
+    @Schema(description = "Suggested text, as stored", example = "Walker")
+    private String text;
+
+    @Schema(description = "Where the text comes from: name, company or email (local part)", example = "name")
+    private String type;
+
+    @Schema(description = "Number of contacts with this text", example = "42")
+    private int count;
+
+    public Suggestion() {}
+
+    public Suggestion(String text, String type, int count) {
+        this.text = text;
+        this.type = type;
+        this.count = count;
+    }
+
+    // Getters and Setters
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public int getCount() { return count; }
+    public void setCount(int count) { this.count = count; }
+}
@@ -0,0 +1,59 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Counters of the photo thumbnail renderer, since application start.
+ */
+@Schema(description = "Photo thumbnail counters")
+public class ThumbnailMetrics {
+
+    @Schema(description = "Variants rendered (each then served from the disk cache)", example = "1200")
+    private long rendered;
+
+    @Schema(description = "Average time to read, decode, scale and encode a variant", example = "85.4")
+    private double averageRenderMillis;
+
+    @Schema(description = "Photos that could not be decoded as an image (e.g. PDFs)", example = "12")
+    private long unrenderable;
+
+    @Schema(description = "Requests answered 503 because the queue was full or the render timed out", example = "0")
+    private long rejected;
+
+    @Schema(description = "Uploads whose variants were queued for rendering in the background", example = "300")
+    private long pregenerated;
+
+    @Schema(description = "Uploads whose variants were not queued because the queue was half full", example = "4")
+    private long pregenerationsSkipped;
+
+    @Schema(description = "Renders waiting for a worker", example = "3")
+    private int queued;
+
+    @Schema(description = "Workers rendering now", example = "2")
+    private int active;
+
+    // Getters and Setters
+    public long getRendered() { return rendered; }
+    public void setRendered(long rendered) { this.rendered = rendered; }
+
+    public double getAverageRenderMillis() { return averageRenderMillis; }
+    public void setAverageRenderMillis(double averageRenderMillis) { this.averageRenderMillis = averageRenderMillis; }
+
+    public long getUnrenderable() { return unrenderable; }
+    public void setUnrenderable(long unrenderable) { this.unrenderable = unrenderable; }
+
+    public long getRejected() { return rejected; }
+    public void setRejected(long rejected) { this.rejected = rejected; }
+
+    public long getPregenerated() { return pregenerated; }
+    public void setPregenerated(long pregenerated) { this.pregenerated = pregenerated; }
+
+    public long getPregenerationsSkipped() { return pregenerationsSkipped; }
+    public void setPregenerationsSkipped(long pregenerationsSkipped) { this.pregenerationsSkipped = pregenerationsSkipped; }
+
+    public int getQueued() { return queued; }
+    public void setQueued(int queued) { this.queued = queued; }
+
+    public int getActive() { return active; }
+    public void setActive(int active) { this.active = active; }
+}
@@ -0,0 +1,35 @@
+package com.filemaker.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * State of the in-flight container write budget.
+ */
+@Schema(description = "Container upload memory budget")
+public class UploadBudgetMetrics {
+
+    @Schema(description = "Heap that pending container writes may hold", example = "268435456")
+    private long budgetBytes;
+
+    @Schema(description = "Bytes reserved by writes in progress", example = "52428800")
+    private long reservedBytes;
+
+    @Schema(description = "Uploads waiting for room in the budget", example = "0")
+    private int waiting;
+
+    @Schema(description = "Uploads rejected since start (too large, or no room in time)", example = "3")
+    private long rejected;
+
+    // Getters and Setters
+    public long getBudgetBytes() { return budgetBytes; }
+    public void setBudgetBytes(long budgetBytes) { this.budgetBytes = budgetBytes; }
+
+    public long getReservedBytes() { return reservedBytes; }
+    public void setReservedBytes(long reservedBytes) { this.reservedBytes = reservedBytes; }
+
+    public int getWaiting() { return waiting; }
+    public void setWaiting(int waiting) { this.waiting = waiting; }
+
+    public long getRejected() { return rejected; }
+    public void setRejected(long rejected) { this.rejected = rejected; }
+}
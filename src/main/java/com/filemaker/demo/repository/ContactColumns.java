@@ -0,0 +1,137 @@
+package com.filemaker.demo.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mapping between {@link com.filemaker.demo.entity.Contact} property names and
+ * FileMaker column names, for queries built by hand as native SQL.
+ */
+public final class ContactColumns {
+
+    /**
+     * All mapped properties, in entity order. The container field is not included:
+     * it can only be read through {@link com.filemaker.demo.service.ContainerFieldService}.
+     */
+    public static final Map<String, String> ALL;
+
+    /**
+     * Properties that can be used as a keyset (seek) pagination sort key.
+     * Long text and secret columns are deliberately left out.
+     */
+    public static final Map<String, String> SORTABLE;
+
+    /**
+     * Properties that {@code fields=} projections may select. The password is never handed out, and
+     * notes only with the full contact: sparse fieldsets are for lightweight list views.
+     */
+    public static final Set<String> PROJECTABLE;
+
+    static {
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("id", "id");
+        all.put("email", "email");
+        all.put("login", "login");
+        all.put("password", "password");
+        all.put("firstName", "first_name");
+        all.put("lastName", "last_name");
+        all.put("title", "title");
+        all.put("jobTitle", "job_title");
+        all.put("company", "company");
+        all.put("website", "website");
+        all.put("notes", "notes");
+        all.put("photoUrl", "photo_url");
+        all.put("photoContentType", "photo_content_type");
+        all.put("lastContactDate", "last_contact_date");
+        all.put("uuid", "uuid");
+        all.put("sku", "sku");
+        all.put("createTimestamp", "create_timestamp");
+        all.put("updateTimestamp", "update_timestamp");
+        ALL = Collections.unmodifiableMap(all);
+
+        Map<String, String> sortable = new LinkedHashMap<>();
+        sortable.put("id", "id");
+        sortable.put("email", "email");
+        sortable.put("login", "login");
+        sortable.put("firstName", "first_name");
+        sortable.put("lastName", "last_name");
+        sortable.put("title", "title");
+        sortable.put("jobTitle", "job_title");
+        sortable.put("company", "company");
+        sortable.put("website", "website");
+        sortable.put("lastContactDate", "last_contact_date");
+        sortable.put("createTimestamp", "create_timestamp");
+        sortable.put("updateTimestamp", "update_timestamp");
+        SORTABLE = Collections.unmodifiableMap(sortable);
+
+        Set<String> projectable = new LinkedHashSet<>(all.keySet());
+        projectable.remove("password");
+        projectable.remove("notes");
+        PROJECTABLE = Collections.unmodifiableSet(projectable);
+    }
+
+    /**
+     * Properties that can be written. The id, the auto-enter fields and the
+     * FileMaker-maintained timestamps are read-only.
+     */
+    public static final Set<String> UPDATABLE = Set.of(
+        "email", "login", "password", "firstName", "lastName", "title", "jobTitle",
+        "company", "website", "notes", "photoUrl", "photoContentType", "lastContactDate"
+    );
+
+    /**
+     * Properties of the built-in {@code summary} view used by list screens.
+     */
+    public static final List<String> SUMMARY = List.of("id", "firstName", "lastName", "email", "company");
+
+    private ContactColumns() {}
+
+    /**
+     * Resolve a {@code fields=} parameter to the properties to select, in entity order.
+     * The id is always included.
+     *
+     * @param fields Comma-separated property names
+     * @throws IllegalArgumentException if a property is unknown or cannot be selected
+     */
+    public static List<String> projection(String fields) {
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String property = field.trim();
+            if (property.isEmpty()) {
+                continue;
+            }
+            if (!ALL.containsKey(property)) {
+                throw new IllegalArgumentException("Unknown field: " + property);
+            }
+            if (!PROJECTABLE.contains(property)) {
+                throw new IllegalArgumentException("Field cannot be selected: " + property);
+            }
+            requested.add(property);
+        }
+        List<String> properties = new ArrayList<>();
+        for (String property : ALL.keySet()) {
+            if ("id".equals(property) || requested.contains(property)) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Resolve a sortable property to its column name.
+     *
+     * @throws IllegalArgumentException if the property cannot be used as a sort key
+     */
+    public static String sortColumn(String property) {
+        String column = SORTABLE.get(property);
+        if (column == null) {
+            throw new IllegalArgumentException("Unsupported sort property: " + property);
+        }
+        return column;
+    }
+}
@@ -3,10 +3,13 @@ package com.filemaker.demo.repository;
 import com.filemaker.demo.entity.Contact;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -26,6 +29,10 @@ public interface ContactRepository extends JpaRepository<Contact, Long>, Contact
     // Find by company with pagination
     Page<Contact> findByCompany(String company, Pageable pageable);
 
+    // Contacts per company as [company, count] rows, for the company facet; contacts without a company are left out
+    @Query("SELECT c.company, COUNT(c) FROM Contact c WHERE c.company IS NOT NULL GROUP BY c.company")
+    List<Object[]> countPerCompany();
+
     // Search contacts
     @Query("SELECT c FROM Contact c WHERE " +
            "c.firstName LIKE %:query% OR " +
@@ -34,6 +41,17 @@ public interface ContactRepository extends JpaRepository<Contact, Long>, Contact
            "c.company LIKE %:query%")
     Page<Contact> search(@Param("query") String query, Pageable pageable);
 
+    // All contacts as a slice - reads size + 1 rows to know if there is a next page, no COUNT(*)
+    Slice<Contact> findAllBy(Pageable pageable);
+
+    // Count of search(query) matches, for projected search pages
+    @Query("SELECT COUNT(c) FROM Contact c WHERE " +
+           "c.firstName LIKE %:query% OR " +
+           "c.lastName LIKE %:query% OR " +
+           "c.email LIKE %:query% OR " +
+           "c.company LIKE %:query%")
+    long countSearch(@Param("query") String query);
+
     // Native query with embedded pagination for FileMaker
     // FileMaker doesn't support parameterized OFFSET/FETCH
     @Query(value = "SELECT * FROM contact ORDER BY id OFFSET :offset ROWS FETCH FIRST :limit ROWS ONLY", 
@@ -43,4 +61,11 @@ public interface ContactRepository extends JpaRepository<Contact, Long>, Contact
     // Count for pagination
     @Query(value = "SELECT COUNT(*) FROM contact", nativeQuery = true)
     long countAll();
+
+    // Single-statement delete - unlike deleteById() it does not load the entity first.
+    // Returns the affected-row count (0 if the contact does not exist)
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Contact c WHERE c.id = :id")
+    int deleteContactById(@Param("id") Long id);
 }
@@ -1,8 +1,15 @@
 package com.filemaker.demo.repository;
 
+import com.filemaker.demo.dto.CursorPage;
 import com.filemaker.demo.entity.Contact;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Custom repository interface for FileMaker-specific pagination.
@@ -15,4 +22,93 @@ public interface ContactRepositoryCustom {
      * Uses native SQL with embedded OFFSET/FETCH values.
      */
     Page<Contact> findAllWithPagination(Pageable pageable);
+
+    /**
+     * Find contacts with keyset (seek) pagination.
+     * Cost does not grow with page depth, unlike OFFSET-based pagination.
+     *
+     * @param sortBy     Sort property (see {@link ContactColumns#SORTABLE}), ignored when a cursor is given
+     * @param descending Sort direction, ignored when a cursor is given
+     * @param cursor     Cursor returned with the previous page, or null for the first page
+     * @param size       Page size
+     * @throws IllegalArgumentException if the sort property or cursor is invalid
+     */
+    CursorPage<Contact> findAllWithKeyset(String sortBy, boolean descending, String cursor, int size);
+
+    /**
+     * Read only the given properties of contacts, as a SQL projection: unselected columns
+     * (for example {@code notes}) are neither read from FileMaker nor decoded.
+     *
+     * @param properties Properties to select (see {@link ContactColumns#projection(String)})
+     * @param query      Search text matched against name, email and company, or null for all contacts
+     * @param sort       Sort order; properties must be mapped columns
+     * @param offset     Rows to skip
+     * @param limit      Maximum number of rows
+     * @return One map of property to value per contact, in {@code properties} order
+     * @throws IllegalArgumentException if a property is unknown
+     */
+    List<Map<String, Object>> findProjected(List<String> properties, String query, Sort sort, long offset, int limit);
+
+    /**
+     * Read only the given properties of the contacts with the given IDs, in the order of {@code ids}.
+     * IDs that do not exist are skipped.
+     *
+     * @param properties Properties to select; must include id
+     * @throws IllegalArgumentException if a property is unknown
+     */
+    List<Map<String, Object>> findProjectedByIds(List<String> properties, List<Long> ids);
+
+    /**
+     * Find many contacts by ID with chunked {@code SELECT ... WHERE id IN (...)} queries,
+     * in the order of {@code ids}. IDs that do not exist are skipped; duplicates are returned once.
+     */
+    List<Contact> findAllByIds(List<Long> ids);
+
+    /**
+     * Delete many contacts by ID with chunked {@code DELETE ... WHERE id IN (...)} statements.
+     *
+     * @param ids Contact IDs; duplicates are ignored
+     * @return Number of contacts deleted
+     */
+    int deleteAllByIds(Collection<Long> ids);
+
+    /**
+     * Update only the given properties of a contact, with a single
+     * {@code UPDATE ... SET <changed columns> WHERE id = ?} and no prior read.
+     *
+     * @param id      Contact ID
+     * @param changes New values by property name (see {@link ContactColumns#UPDATABLE}); must not be empty
+     * @return Number of contacts updated (0 if the contact does not exist)
+     * @throws IllegalArgumentException if a property is unknown or read-only
+     */
+    int updateFields(Long id, Map<String, Object> changes);
+
+    /**
+     * Update only the given properties of a contact if it is still at the expected version,
+     * with a single {@code UPDATE ... WHERE id = ? AND ROWMODID = ?}. The version check and the
+     * write are one statement, so a concurrent change between them cannot be overwritten.
+     *
+     * @param id              Contact ID
+     * @param expectedVersion Expected modification count ({@code ROWMODID}), see {@link ContactVersion}
+     * @param changes         New values by property name (see {@link ContactColumns#UPDATABLE}); must not be empty
+     * @return Number of contacts updated (0 if the contact does not exist or has a different version)
+     * @throws IllegalArgumentException if a property is unknown or read-only
+     */
+    int updateFieldsIfVersion(Long id, long expectedVersion, Map<String, Object> changes);
+
+    /**
+     * Read only the version information of a contact ({@code ROWMODID}, update timestamp).
+     *
+     * @return The version, or empty if the contact does not exist
+     */
+    Optional<ContactVersion> findVersionById(Long id);
+
+    /**
+     * Read only the version information of the contacts on a page, in page order.
+     * The first sort order must be on a {@link ContactColumns#SORTABLE} property; id is
+     * used as the tiebreaker, so callers should sort the page itself the same way.
+     *
+     * @throws IllegalArgumentException if the sort property is not sortable
+     */
+    List<ContactVersion> findPageVersions(Pageable pageable);
 }
@@ -1,5 +1,6 @@
 package com.filemaker.demo.repository;
 
+import com.filemaker.demo.dto.CursorPage;
 import com.filemaker.demo.entity.Contact;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -7,10 +8,21 @@ import jakarta.persistence.Query;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
 import org.springframework.lang.NonNull;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Custom repository implementation for FileMaker-specific pagination.
@@ -20,6 +32,11 @@ import java.util.List;
 @Repository
 public class ContactRepositoryCustomImpl implements ContactRepositoryCustom {
 
+    /**
+     * Maximum number of IDs bound into a single {@code IN (...)} list.
+     */
+    static final int IN_CHUNK_SIZE = 200;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -30,10 +47,7 @@ public class ContactRepositoryCustomImpl implements ContactRepositoryCustom {
         int offset = (int) pageable.getOffset();
         int limit = pageable.getPageSize();
         
-        // FileMaker requires literal values in OFFSET/FETCH, not parameters
-        String sql = "SELECT * FROM contact ORDER BY id " +
-                     "OFFSET " + offset + " ROWS " +
-                     "FETCH FIRST " + limit + " ROWS ONLY";
+        String sql = buildOffsetSql(offset, limit);
         
         Query query = entityManager.createNativeQuery(sql, Contact.class);
         List<Contact> content = query.getResultList();
@@ -51,4 +65,285 @@ public class ContactRepositoryCustomImpl implements ContactRepositoryCustom {
         
         return new PageImpl<>(content, pageable, total);
     }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CursorPage<Contact> findAllWithKeyset(String sortBy, boolean descending, String cursor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must not be less than one");
+        }
+        KeysetCursor after = cursor != null && !cursor.isEmpty() ? KeysetCursor.decode(cursor) : null;
+        String property = after != null ? after.getProperty() : sortBy;
+        boolean desc = after != null ? after.isDescending() : descending;
+
+        // Fetch one extra row to know whether there is a next page
+        List<Object> params = new ArrayList<>();
+        String sql = buildKeysetSql(property, desc, after, size + 1, params);
+
+        Query query = entityManager.createNativeQuery(sql, Contact.class);
+        for (int i = 0; i < params.size(); i++) {
+            query.setParameter(i + 1, params.get(i));
+        }
+        List<Contact> rows = query.getResultList();
+
+        String next = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            next = KeysetCursor.after(rows.get(size - 1), property, desc).encode();
+        }
+        return new CursorPage<>(new ArrayList<>(rows), size, next);
+    }
+
+    @Override
+    public List<Map<String, Object>> findProjected(List<String> properties, String query, Sort sort,
+                                                   long offset, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT ").append(selectList(properties)).append(" FROM Contact c");
+        if (query != null) {
+            // Same predicate as ContactRepository.search
+            jpql.append(" WHERE c.firstName LIKE :pattern OR c.lastName LIKE :pattern")
+                .append(" OR c.email LIKE :pattern OR c.company LIKE :pattern");
+        }
+        String separator = " ORDER BY ";
+        for (Sort.Order order : sort) {
+            if (!ContactColumns.ALL.containsKey(order.getProperty())) {
+                throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+            }
+            jpql.append(separator).append("c.").append(order.getProperty())
+                .append(order.isDescending() ? " DESC" : " ASC");
+            separator = ", ";
+        }
+
+        Query select = entityManager.createQuery(jpql.toString());
+        if (query != null) {
+            select.setParameter("pattern", "%" + query + "%");
+        }
+        // Offset and limit are rendered by the dialect
+        List<?> rows = select.setFirstResult((int) offset).setMaxResults(limit).getResultList();
+
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            result.add(toProjection(properties, row));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Map<String, Object>> findProjectedByIds(List<String> properties, List<Long> ids) {
+        if (!properties.contains("id")) {
+            throw new IllegalArgumentException("Projection must include id");
+        }
+        String jpql = "SELECT " + selectList(properties) + " FROM Contact c WHERE c.id IN :ids";
+        Map<Object, Map<String, Object>> byId = new HashMap<>();
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()));
+            for (Object row : entityManager.createQuery(jpql).setParameter("ids", chunk).getResultList()) {
+                Map<String, Object> contact = toProjection(properties, row);
+                byId.put(contact.get("id"), contact);
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Map<String, Object> contact = byId.get(id);
+            if (contact != null) {
+                result.add(contact);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Contact> findAllByIds(List<Long> ids) {
+        Map<Long, Contact> byId = new HashMap<>();
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()));
+            entityManager.createQuery("SELECT c FROM Contact c WHERE c.id IN :ids", Contact.class)
+                    .setParameter("ids", chunk)
+                    .getResultList()
+                    .forEach(contact -> byId.put(contact.getId(), contact));
+        }
+        List<Contact> result = new ArrayList<>(byId.size());
+        for (Long id : distinct) {
+            Contact contact = byId.get(id);
+            if (contact != null) {
+                result.add(contact);
+            }
+        }
+        return result;
+    }
+
+    private static String selectList(List<String> properties) {
+        StringBuilder select = new StringBuilder();
+        for (String property : properties) {
+            if (!ContactColumns.PROJECTABLE.contains(property)) {
+                throw new IllegalArgumentException("Unknown field: " + property);
+            }
+            select.append(select.length() == 0 ? "" : ", ").append("c.").append(property);
+        }
+        return select.toString();
+    }
+
+    private static Map<String, Object> toProjection(List<String> properties, Object row) {
+        // A single selected property comes back as a scalar, not an array
+        Object[] values = row instanceof Object[] array ? array : new Object[] {row};
+        Map<String, Object> contact = new LinkedHashMap<>();
+        for (int i = 0; i < properties.size(); i++) {
+            contact.put(properties.get(i), values[i]);
+        }
+        return contact;
+    }
+
+    @Override
+    @Transactional
+    public int deleteAllByIds(Collection<Long> ids) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        // Same as @Modifying(flushAutomatically = true, clearAutomatically = true)
+        entityManager.flush();
+        int deleted = 0;
+        for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()));
+            deleted += entityManager.createQuery("DELETE FROM Contact c WHERE c.id IN :ids")
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        entityManager.clear();
+        return deleted;
+    }
+
+    @Override
+    @Transactional
+    public int updateFields(Long id, Map<String, Object> changes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        // Only the changed columns are written; Hibernate's merge would rewrite the whole row, notes included
+        StringBuilder jpql = new StringBuilder("UPDATE Contact c SET ");
+        String separator = "";
+        for (String property : changes.keySet()) {
+            if (!ContactColumns.UPDATABLE.contains(property)) {
+                throw new IllegalArgumentException("Property cannot be updated: " + property);
+            }
+            jpql.append(separator).append("c.").append(property).append(" = :").append(property);
+            separator = ", ";
+        }
+        jpql.append(" WHERE c.id = :id");
+
+        entityManager.flush();
+        Query update = entityManager.createQuery(jpql.toString());
+        changes.forEach(update::setParameter);
+        int updated = update.setParameter("id", id).executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public int updateFieldsIfVersion(Long id, long expectedVersion, Map<String, Object> changes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        // Native SQL: ROWMODID is not mapped on the entity, so it cannot appear in JPQL
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("UPDATE contact SET ");
+        String separator = "";
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (!ContactColumns.UPDATABLE.contains(change.getKey())) {
+                throw new IllegalArgumentException("Property cannot be updated: " + change.getKey());
+            }
+            sql.append(separator).append(ContactColumns.ALL.get(change.getKey())).append(" = ");
+            if (change.getValue() == null) {
+                // An untyped null parameter is not accepted by every driver
+                sql.append("NULL");
+            } else {
+                params.add(change.getValue());
+                sql.append('?').append(params.size());
+            }
+            separator = ", ";
+        }
+        params.add(id);
+        sql.append(" WHERE id = ?").append(params.size());
+        params.add(expectedVersion);
+        sql.append(" AND ROWMODID = ?").append(params.size());
+
+        entityManager.flush();
+        Query update = entityManager.createNativeQuery(sql.toString());
+        for (int i = 0; i < params.size(); i++) {
+            update.setParameter(i + 1, params.get(i));
+        }
+        int updated = update.executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<ContactVersion> findVersionById(Long id) {
+        // ROWMODID is a FileMaker system column; it is not mapped on the entity
+        List<Object[]> rows = entityManager.createNativeQuery(
+                "SELECT id, ROWMODID, update_timestamp FROM contact WHERE id = ?1")
+                .setParameter(1, id)
+                .getResultList();
+        return rows.stream().findFirst().map(ContactRepositoryCustomImpl::toVersion);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ContactVersion> findPageVersions(Pageable pageable) {
+        Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc("id"));
+        String column = ContactColumns.sortColumn(order.getProperty());
+        String direction = order.isDescending() ? " DESC" : " ASC";
+
+        String sql = "SELECT id, ROWMODID, update_timestamp FROM contact ORDER BY " + column + direction
+                + ("id".equals(column) ? "" : ", id" + direction)
+                + " OFFSET " + pageable.getOffset() + " ROWS"
+                + " FETCH FIRST " + pageable.getPageSize() + " ROWS ONLY";
+
+        List<Object[]> rows = entityManager.createNativeQuery(sql).getResultList();
+        List<ContactVersion> versions = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            versions.add(toVersion(row));
+        }
+        return versions;
+    }
+
+    private static ContactVersion toVersion(Object[] row) {
+        LocalDateTime updated = null;
+        if (row[2] instanceof Timestamp ts) {
+            updated = ts.toLocalDateTime();
+        } else if (row[2] instanceof LocalDateTime ldt) {
+            updated = ldt;
+        }
+        long modificationCount = row[1] == null ? 0 : ((Number) row[1]).longValue();
+        return new ContactVersion(((Number) row[0]).longValue(), modificationCount, updated);
+    }
+
+    /**
+     * FileMaker requires literal values in OFFSET/FETCH, not parameters.
+     */
+    static String buildOffsetSql(int offset, int limit) {
+        return "SELECT * FROM contact ORDER BY id " +
+               "OFFSET " + offset + " ROWS " +
+               "FETCH FIRST " + limit + " ROWS ONLY";
+    }
+
+    /**
+     * Build the seek query for the page after {@code after} (first page if null).
+     * The sort key is always followed by id as a tiebreaker so the order is total.
+     */
+    static String buildKeysetSql(String property, boolean descending, KeysetCursor after,
+                                 int limit, List<Object> params) {
+        String column = ContactColumns.sortColumn(property);
+        String direction = descending ? " DESC" : " ASC";
+        StringBuilder sql = new StringBuilder("SELECT * FROM contact");
+        if (after != null) {
+            sql.append(" WHERE ").append(after.seekPredicate(params));
+        }
+        sql.append(" ORDER BY ").append(column).append(direction);
+        if (!"id".equals(column)) {
+            sql.append(", id").append(direction);
+        }
+        sql.append(" FETCH FIRST ").append(limit).append(" ROWS ONLY");
+        return sql.toString();
+    }
 }
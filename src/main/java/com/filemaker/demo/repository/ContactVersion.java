@@ -0,0 +1,75 @@
+package com.filemaker.demo.repository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.OptionalLong;
+
+/**
+ * Version information of a contact record: FileMaker's modification count ({@code ROWMODID})
+ * and the {@code update_timestamp} auto-enter field.
+ * <p>
+ * Reading it is a cheap query (no text columns), used to answer conditional requests
+ * without loading the full record. The entity tag doubles as the version for optimistic
+ * concurrency: clients send it back in {@code If-Match} when updating.
+ */
+public class ContactVersion {
+
+    private final Long id;
+    private final long modificationCount;
+    private final LocalDateTime updateTimestamp;
+
+    public ContactVersion(Long id, long modificationCount, LocalDateTime updateTimestamp) {
+        this.id = id;
+        this.modificationCount = modificationCount;
+        this.updateTimestamp = updateTimestamp;
+    }
+
+    public Long getId() { return id; }
+    public long getModificationCount() { return modificationCount; }
+    public LocalDateTime getUpdateTimestamp() { return updateTimestamp; }
+
+    /**
+     * Strong entity tag: FileMaker increments {@code ROWMODID} on every change to the record.
+     */
+    public String getETag() {
+        return "\"" + id + "-" + modificationCount + "\"";
+    }
+
+    /**
+     * Last modification time in epoch milliseconds (FileMaker timestamps are server-local time),
+     * or -1 if unknown.
+     */
+    public long getLastModified() {
+        return toEpochMillis(updateTimestamp);
+    }
+
+    /**
+     * Find the modification count that an {@code If-Match} header expects for a contact.
+     * Tags of other contacts, weak tags and {@code *} are ignored.
+     *
+     * @param id      Contact ID
+     * @param ifMatch {@code If-Match} header value, possibly a comma-separated list
+     * @return The expected modification count, or empty if no tag of this contact is present
+     */
+    public static OptionalLong parseETag(Long id, String ifMatch) {
+        if (ifMatch == null) {
+            return OptionalLong.empty();
+        }
+        String prefix = "\"" + id + "-";
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                try {
+                    return OptionalLong.of(Long.parseLong(tag.substring(prefix.length(), tag.length() - 1)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours - keep looking
+                }
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp == null ? -1 : timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,149 @@
+package com.filemaker.demo.repository;
+
+import com.filemaker.demo.entity.Contact;
+import org.springframework.beans.BeanWrapperImpl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Opaque keyset (seek) pagination cursor for the contact table.
+ * <p>
+ * A cursor remembers the sort property, the direction and the sort key plus id of the
+ * last row returned. The next page is then read with a seek predicate
+ * ({@code WHERE (sortKey, id) > (?, ?)}) instead of {@code OFFSET n ROWS}, so FileMaker
+ * does not have to walk and discard every earlier row.
+ * <p>
+ * FileMaker SQL has no row value comparison, so the predicate is expanded to
+ * {@code sortKey > ? OR (sortKey = ? AND id > ?)}. Empty (NULL) sort keys are assumed
+ * to sort first in ascending order, which is how FileMaker orders them.
+ */
+public final class KeysetCursor {
+
+    private static final char SEPARATOR = '|';
+
+    private final String property;
+    private final boolean descending;
+    private final Object lastValue;
+    private final long lastId;
+
+    private KeysetCursor(String property, boolean descending, Object lastValue, long lastId) {
+        this.property = property;
+        this.descending = descending;
+        this.lastValue = lastValue;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Create the cursor pointing after the given row.
+     */
+    public static KeysetCursor after(Contact last, String property, boolean descending) {
+        ContactColumns.sortColumn(property);
+        Object value = "id".equals(property)
+                ? null
+                : toJdbcValue(new BeanWrapperImpl(last).getPropertyValue(property));
+        return new KeysetCursor(property, descending, value, last.getId());
+    }
+
+    /**
+     * Decode a token previously produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static KeysetCursor decode(String token) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+        // property|A or D|type|lastId|value  (value last, so it may contain the separator)
+        String[] parts = raw.split("\\" + SEPARATOR, 5);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        ContactColumns.sortColumn(parts[0]);
+        try {
+            Object value = switch (parts[2]) {
+                case "N" -> null;
+                case "S" -> parts[4];
+                case "L" -> Long.valueOf(parts[4]);
+                case "T" -> Timestamp.valueOf(parts[4]);
+                default -> throw new IllegalArgumentException("Malformed cursor");
+            };
+            return new KeysetCursor(parts[0], "D".equals(parts[1]), value, Long.parseLong(parts[3]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+
+    /**
+     * Encode this cursor as an opaque, URL-safe token.
+     */
+    public String encode() {
+        String type;
+        if (lastValue == null) {
+            type = "N";
+        } else if (lastValue instanceof Long) {
+            type = "L";
+        } else if (lastValue instanceof Timestamp) {
+            type = "T";
+        } else {
+            type = "S";
+        }
+        String raw = property + SEPARATOR + (descending ? "D" : "A") + SEPARATOR + type
+                + SEPARATOR + lastId + SEPARATOR + (lastValue == null ? "" : lastValue.toString());
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Build the seek predicate for the rows after this cursor.
+     * Uses ordinal placeholders ({@code ?1, ?2, ...}) numbered after the values already in
+     * {@code params}, and appends the values to bind.
+     */
+    String seekPredicate(List<Object> params) {
+        String column = ContactColumns.sortColumn(property);
+        String cmp = descending ? "<" : ">";
+        if ("id".equals(property)) {
+            return "id " + cmp + " " + bind(params, lastId);
+        }
+        if (lastValue == null) {
+            // NULLs sort first: ascending continues with the remaining NULLs and then everything else,
+            // descending only has NULLs left
+            return descending
+                    ? "(" + column + " IS NULL AND id < " + bind(params, lastId) + ")"
+                    : "((" + column + " IS NULL AND id > " + bind(params, lastId) + ") OR "
+                        + column + " IS NOT NULL)";
+        }
+        String predicate = "(" + column + " " + cmp + " " + bind(params, lastValue)
+                + " OR (" + column + " = " + bind(params, lastValue)
+                + " AND id " + cmp + " " + bind(params, lastId) + ")";
+        return descending ? predicate + " OR " + column + " IS NULL)" : predicate + ")";
+    }
+
+    public String getProperty() { return property; }
+    public boolean isDescending() { return descending; }
+
+    private static String bind(List<Object> params, Object value) {
+        params.add(value);
+        return "?" + params.size();
+    }
+
+    private static Object toJdbcValue(Object value) {
+        if (value instanceof LocalDateTime ldt) {
+            return Timestamp.valueOf(ldt);
+        }
+        if (value instanceof Date date) {
+            return new Timestamp(date.getTime());
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        return value == null ? null : value.toString();
+    }
+}
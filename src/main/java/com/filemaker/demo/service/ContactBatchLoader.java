@@ -0,0 +1,167 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.BatchLoaderMetrics;
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.repository.ContactRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Micro-batches concurrent single-contact lookups (DataLoader-style).
+ * <p>
+ * Lookups arriving within {@code contacts.batch-loader.window} of the first one are collected and
+ * loaded with one {@code WHERE id IN (...)} query ({@link ContactRepository#findAllByIds}); a batch
+ * is sent at once when it reaches {@code contacts.batch-loader.max-batch-size}. Each caller waits on
+ * its own future. Under load this turns many single-row queries per second into a few multi-row ones,
+ * at the cost of up to one window of added latency per cache miss. Lookups of the same ID in one
+ * batch share the result.
+ * <p>
+ * Window-triggered batches run on up to {@code contacts.batch-loader.max-concurrent-batches} loader
+ * threads; size-triggered ones run on the caller's thread. Used by {@link ContactCache} for misses.
+ * Callers inside a transaction must not use it (the batch runs on another connection).
+ */
+@Service
+public class ContactBatchLoader {
+
+    private final ContactRepository contactRepository;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private Map<Long, CompletableFuture<Optional<Contact>>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+
+    public ContactBatchLoader(ContactRepository contactRepository,
+                              @Value("${contacts.batch-loader.enabled:true}") boolean enabled,
+                              @Value("${contacts.batch-loader.window:2ms}") Duration window,
+                              @Value("${contacts.batch-loader.max-batch-size:100}") int maxBatchSize,
+                              @Value("${contacts.batch-loader.max-concurrent-batches:4}") int maxConcurrentBatches) {
+        this.contactRepository = contactRepository;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newScheduledThreadPool(maxConcurrentBatches, task -> {
+            Thread thread = new Thread(task, "contact-batch-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Find a contact, batched with concurrent lookups; blocks until its batch is loaded.
+     * Exceptions of the batch query are rethrown as-is.
+     */
+    public Optional<Contact> find(Long id) {
+        try {
+            return load(id).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queue a lookup; the future completes when its batch has been loaded.
+     */
+    public CompletableFuture<Optional<Contact>> load(Long id) {
+        lookups.increment();
+        if (!enabled) {
+            queries.increment();
+            return CompletableFuture.completedFuture(contactRepository.findById(id));
+        }
+
+        CompletableFuture<Optional<Contact>> future;
+        Map<Long, CompletableFuture<Optional<Contact>>> full = null;
+        synchronized (lock) {
+            future = pending.get(id);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(id, future);
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    /**
+     * Lookups and queries since startup; their ratio is the average batch size.
+     */
+    public BatchLoaderMetrics metrics() {
+        BatchLoaderMetrics metrics = new BatchLoaderMetrics();
+        long lookupCount = lookups.sum();
+        long queryCount = queries.sum();
+        metrics.setLookups(lookupCount);
+        metrics.setQueries(queryCount);
+        metrics.setAverageBatchSize(queryCount == 0 ? 0 : (double) lookupCount / queryCount);
+        return metrics;
+    }
+
+    private void flush() {
+        Map<Long, CompletableFuture<Optional<Contact>>> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    // Callers hold the lock
+    private Map<Long, CompletableFuture<Optional<Contact>>> takePending() {
+        Map<Long, CompletableFuture<Optional<Contact>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Map<Long, CompletableFuture<Optional<Contact>>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        queries.increment();
+        try {
+            Map<Long, Contact> found = new HashMap<>();
+            contactRepository.findAllByIds(new ArrayList<>(batch.keySet()))
+                    .forEach(contact -> found.put(contact.getId(), contact));
+            batch.forEach((id, future) -> future.complete(Optional.ofNullable(found.get(id))));
+        } catch (RuntimeException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
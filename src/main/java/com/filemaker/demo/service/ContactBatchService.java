@@ -0,0 +1,165 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.BatchCreateResult;
+import com.filemaker.demo.dto.ContactDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service for creating many contacts in one call.
+ * <p>
+ * A single pooled connection is used for the whole request, and rows are inserted in
+ * chunks of {@code contacts.batch.chunk-size} using JDBC batching
+ * ({@link PreparedStatement#addBatch()}), so one chunk costs one round trip to FileMaker.
+ * If the driver does not support batch updates, or a batch fails part-way, the affected
+ * rows are inserted one by one on the same connection so every item still gets an exact result.
+ * <p>
+ * FileMaker does not return generated keys ({@code use_get_generated_keys=false}), so results
+ * report the outcome per item but not the new record IDs.
+ */
+@Service
+public class ContactBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactBatchService.class);
+
+    static final String INSERT_SQL = "INSERT INTO contact (email, login, password, first_name, last_name, "
+            + "title, job_title, company, website, notes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final int chunkSize;
+
+    public ContactBatchService(DataSource dataSource,
+                               @Value("${contacts.batch.chunk-size:200}") int chunkSize) {
+        this.dataSource = dataSource;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Insert all contacts, in chunks.
+     *
+     * @param contacts The contacts to create
+     * @return Per-item results, in the order of {@code contacts}
+     */
+    public BatchCreateResult createAll(List<ContactDTO> contacts) {
+        String[] errors = new String[contacts.size()];
+
+        // Rows missing NOT NULL columns would fail the whole JDBC batch - reject them up front
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < contacts.size(); i++) {
+            String error = validate(contacts.get(i));
+            if (error != null) {
+                errors[i] = error;
+            } else {
+                valid.add(i);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int from = 0;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+
+            boolean batching = conn.getMetaData().supportsBatchUpdates();
+            for (; from < valid.size(); from += chunkSize) {
+                List<Integer> chunk = valid.subList(from, Math.min(from + chunkSize, valid.size()));
+                if (batching) {
+                    insertBatch(ps, contacts, chunk, errors);
+                } else {
+                    insertEach(ps, contacts, chunk, errors);
+                }
+            }
+
+        } catch (SQLException e) {
+            // Connection-level failure: earlier chunks are done, the rest is unknown or not executed
+            log.error("Batch create failed: {}", e.getMessage(), e);
+            for (int index : valid.subList(from, valid.size())) {
+                if (errors[index] == null) {
+                    errors[index] = "Not executed: " + e.getMessage();
+                }
+            }
+        }
+
+        BatchCreateResult result = new BatchCreateResult();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) {
+                result.addCreated(i);
+            } else {
+                result.addFailed(i, errors[i]);
+            }
+        }
+        log.info("Batch create: {} of {} contacts created in {} ms",
+                 result.getCreated(), result.getRequested(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void insertBatch(PreparedStatement ps, List<ContactDTO> contacts, List<Integer> chunk,
+                             String[] errors) throws SQLException {
+        for (int index : chunk) {
+            bind(ps, contacts.get(index));
+            ps.addBatch();
+        }
+        try {
+            int[] counts = ps.executeBatch();
+            markFailures(counts, chunk, errors);
+        } catch (BatchUpdateException e) {
+            // Drivers either report every row (EXECUTE_FAILED for bad ones) or stop at the first failure
+            int[] counts = e.getUpdateCounts();
+            markFailures(counts, chunk, errors);
+            ps.clearBatch();
+            if (counts.length < chunk.size()) {
+                errors[chunk.get(counts.length)] = e.getMessage();
+                insertEach(ps, contacts, chunk.subList(counts.length + 1, chunk.size()), errors);
+            }
+        }
+    }
+
+    private void insertEach(PreparedStatement ps, List<ContactDTO> contacts, List<Integer> chunk,
+                            String[] errors) throws SQLException {
+        for (int index : chunk) {
+            try {
+                bind(ps, contacts.get(index));
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                errors[index] = e.getMessage();
+            }
+        }
+    }
+
+    private void markFailures(int[] counts, List<Integer> chunk, String[] errors) {
+        for (int i = 0; i < counts.length && i < chunk.size(); i++) {
+            if (counts[i] == Statement.EXECUTE_FAILED) {
+                errors[chunk.get(i)] = "Insert failed";
+            }
+        }
+    }
+
+    private void bind(PreparedStatement ps, ContactDTO dto) throws SQLException {
+        ps.setString(1, dto.getEmail());
+        ps.setString(2, dto.getLogin());
+        ps.setString(3, dto.getPassword());
+        ps.setString(4, dto.getFirstName());
+        ps.setString(5, dto.getLastName());
+        ps.setString(6, dto.getTitle());
+        ps.setString(7, dto.getJobTitle());
+        ps.setString(8, dto.getCompany());
+        ps.setString(9, dto.getWebsite());
+        ps.setString(10, dto.getNotes());
+    }
+
+    private String validate(ContactDTO dto) {
+        if (dto == null) {
+            return "Contact is null";
+        }
+        if (dto.getEmail() == null || dto.getLogin() == null || dto.getPassword() == null) {
+            return "email, login and password are required";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,213 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.CacheMetrics;
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.repository.ContactRepository;
+import com.filemaker.demo.repository.ContactVersion;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Read-through cache in front of {@link ContactRepository#findById} for hot contacts.
+ * <p>
+ * Backed by Caffeine: the size bound is enforced with frequency-aware (W-TinyLFU) eviction,
+ * so a scan over many cold contacts does not push out the hot ones, and reads do not lock.
+ * Misses are loaded asynchronously: the cache holds the pending batch lookup, so a load never
+ * runs while Caffeine holds a lock and concurrent misses for the same ID wait on one future.
+ * Entries expire after {@code contacts.cache.time-to-live} so changes made directly in
+ * FileMaker are picked up. Every write path through the API must call {@link #evict(Long)}.
+ * Entries loaded for a known version are tagged with its modification count ({@code ROWMODID}),
+ * the value the ETag is built from, so {@link #findById(Long, long)} can tell a current copy
+ * from one of the same second.
+ * <p>
+ * Cached contacts are shared between requests and must not be modified; write with the
+ * repository's single-statement updates instead. Missing contacts are not cached.
+ * Reads inside a transaction go to the database, so uncommitted rows never enter the cache.
+ */
+@Service
+public class ContactCache {
+
+    private final ContactRepository contactRepository;
+    private final ContactBatchLoader contactBatchLoader;
+    private final AsyncLoadingCache<Long, Entry> cache;
+    private final long maximumSize;
+
+    public ContactCache(ContactRepository contactRepository,
+                        ContactBatchLoader contactBatchLoader,
+                        @Value("${contacts.cache.maximum-size:10000}") long maximumSize,
+                        @Value("${contacts.cache.time-to-live:5m}") Duration timeToLive) {
+        this.contactRepository = contactRepository;
+        this.contactBatchLoader = contactBatchLoader;
+        this.maximumSize = maximumSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .buildAsync((AsyncCacheLoader<Long, Entry>) (id, executor) ->
+                        contactBatchLoader.load(id).thenApply(contact -> contact.map(Entry::untagged).orElse(null)));
+    }
+
+    // A cached contact and the modification count it was loaded for, or UNKNOWN
+    private record Entry(Contact contact, long modificationCount) {
+        static final long UNKNOWN = -1;
+
+        static Entry untagged(Contact contact) {
+            return new Entry(contact, UNKNOWN);
+        }
+    }
+
+    /**
+     * Find a contact, loading it on a miss. Concurrent misses for the same ID load it once;
+     * misses for different IDs are batched into one query by {@link ContactBatchLoader}.
+     */
+    public Optional<Contact> findById(Long id) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return contactRepository.findById(id);
+        }
+        return Optional.ofNullable(join(cache.get(id))).map(Entry::contact);
+    }
+
+    /**
+     * Read the current version of a contact from FileMaker; it is never cached, since it is what
+     * tells whether a cached copy is current. Nor is it shared with concurrent reads: one started
+     * before a write would return the old version, under which a stale copy would then be served.
+     */
+    public Optional<ContactVersion> findVersionById(Long id) {
+        return contactRepository.findVersionById(id);
+    }
+
+    /**
+     * Find many contacts, in the order of {@code ids}. The misses are loaded together with
+     * chunked {@code IN (...)} queries; IDs that do not exist are skipped, duplicates returned once.
+     */
+    public List<Contact> findAllById(List<Long> ids) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return contactRepository.findAllByIds(ids);
+        }
+        Map<Long, Entry> found = join(cache.getAll(ids, (missing, executor) -> {
+            Map<Long, Entry> loaded = new HashMap<>();
+            contactRepository.findAllByIds(List.copyOf(missing)).forEach(c -> loaded.put(c.getId(), Entry.untagged(c)));
+            return CompletableFuture.completedFuture(loaded);
+        }));
+        List<Contact> result = new ArrayList<>(found.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Entry entry = found.get(id);
+            if (entry != null) {
+                result.add(entry.contact());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find a contact at the modification count just read by a version query, reloading it unless the
+     * cached copy was loaded for that same count ({@code update_timestamp} only has one-second
+     * resolution, so two writes within a second would look alike). The reload runs after the version
+     * query, so its copy is at least that version and is cached under it; a copy that is newer than
+     * its tag is reloaded again by the next version query.
+     */
+    public Optional<Contact> findById(Long id, long modificationCount) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return contactRepository.findById(id);
+        }
+        Entry cached = done(cache.getIfPresent(id));
+        if (cached != null && cached.modificationCount() == modificationCount) {
+            return Optional.of(cached.contact());
+        }
+        // Not through the cache: a load already in flight may have started before the version query
+        Optional<Contact> loaded = contactBatchLoader.find(id);
+        loaded.ifPresentOrElse(
+                contact -> cache.put(id, CompletableFuture.completedFuture(new Entry(contact, modificationCount))),
+                () -> cache.synchronous().invalidate(id));
+        return loaded;
+    }
+
+    /**
+     * The cached copy of a contact, without loading it on a miss or waiting for a load in progress.
+     */
+    public Optional<Contact> peek(Long id) {
+        return Optional.ofNullable(done(cache.getIfPresent(id))).map(Entry::contact);
+    }
+
+    /**
+     * Drop a contact after it was changed or deleted. Inside a transaction it is dropped again
+     * on completion, so a concurrent read cannot re-cache the old row before the commit.
+     */
+    public void evict(Long id) {
+        evictAll(List.of(id));
+    }
+
+    public void evictAll(Collection<Long> ids) {
+        cache.synchronous().invalidateAll(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<Long> pending = List.copyOf(ids);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.synchronous().invalidateAll(pending);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Hit, miss and eviction counts since startup, for sizing the cache.
+     */
+    public CacheMetrics metrics() {
+        // Run pending maintenance (evictions are applied asynchronously) so the size is current
+        Cache<Long, Entry> view = cache.synchronous();
+        view.cleanUp();
+        CacheStats stats = view.stats();
+        CacheMetrics metrics = new CacheMetrics();
+        metrics.setSize(view.estimatedSize());
+        metrics.setMaximumSize(maximumSize);
+        metrics.setHits(stats.hitCount());
+        metrics.setMisses(stats.missCount());
+        metrics.setHitRate(stats.hitRate());
+        metrics.setEvictions(stats.evictionCount());
+        metrics.setAverageLoadMillis(stats.averageLoadPenalty() / 1_000_000.0);
+        return metrics;
+    }
+
+    // The entry of a completed load, or null if absent, still loading or failed
+    private static Entry done(CompletableFuture<Entry> future) {
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    // Exceptions of the load are rethrown as-is, as ContactBatchLoader#find does
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.FacetCount;
+import com.filemaker.demo.repository.ContactRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contact count per company, held in memory for dashboards.
+ * <p>
+ * Loaded with one {@code GROUP BY} query, then kept current by the API's write paths:
+ * creates increment, deletes decrement and company changes move one contact between companies.
+ * Single writes learn the old company from the {@link ContactCache}; where it is not cached (and for
+ * bulk deletes), a reload is scheduled instead, so writes never read before writing. A full reload also runs every
+ * {@code contacts.company-facets.refresh-interval} to pick up changes made in FileMaker itself.
+ * Counts inside a transaction are read from the database and nothing is applied before the commit.
+ */
+@Service
+public class ContactCompanyFacets {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactCompanyFacets.class);
+
+    private final ContactRepository contactRepository;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+
+    // Reloads before giving up when every one overlaps a write
+    private static final int MAX_LOADS = 3;
+
+    // Guarded by lock for writes. counts is null until loaded; writesDuringLoad is set by writes applied while a reload runs
+    private final Object lock = new Object();
+    private volatile Map<String, AtomicLong> counts;
+    private boolean loading;
+    private boolean writesDuringLoad;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    private ScheduledExecutorService refresher;
+
+    public ContactCompanyFacets(ContactRepository contactRepository,
+                                @Value("${contacts.company-facets.enabled:true}") boolean enabled,
+                                @Value("${contacts.company-facets.refresh-interval:10m}") Duration refreshInterval) {
+        this.contactRepository = contactRepository;
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "contact-company-facets");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Reload all counts from the database.
+     * <p>
+     * A write applied while the {@code GROUP BY} runs may or may not be in its result, and counts
+     * cannot be applied twice safely, so such a load is discarded and run again. If every load
+     * overlaps a write, the current counts (which had those writes applied) are kept until the next
+     * reload; only a first load is installed anyway.
+     */
+    public synchronized void refresh() {
+        long start = System.currentTimeMillis();
+        for (int attempt = 1; ; attempt++) {
+            synchronized (lock) {
+                loading = true;
+                writesDuringLoad = false;
+            }
+            Map<String, AtomicLong> loaded;
+            try {
+                loaded = load();
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    loading = false;
+                }
+                throw e;
+            }
+
+            synchronized (lock) {
+                if (!writesDuringLoad || (attempt == MAX_LOADS && counts == null)) {
+                    loading = false;
+                    counts = loaded;
+                    log.info("Company facets loaded: {} companies in {} ms", loaded.size(), System.currentTimeMillis() - start);
+                    return;
+                }
+                if (attempt == MAX_LOADS) {
+                    loading = false;
+                    log.info("Company facets not reloaded: writes overlapped {} loads", MAX_LOADS);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedule a reload; requests made while one is already queued are merged into it.
+     */
+    public void refreshAsync() {
+        if (refresher != null && refreshQueued.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                refreshQueued.set(false);
+                refreshQuietly();
+            });
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Company facet reload failed, keeping the previous counts: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Companies by contact count, largest first (ties alphabetically).
+     *
+     * @param limit Maximum number of companies
+     */
+    public List<FacetCount> top(int limit) {
+        Map<String, AtomicLong> current = counts;
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            current = load();
+        } else if (current == null) {
+            // First request before the background load finished
+            refresh();
+            current = counts;
+        }
+        List<FacetCount> facets = new ArrayList<>(current.size());
+        current.forEach((company, count) -> {
+            if (count.get() > 0) {
+                facets.add(new FacetCount(company, count.get()));
+            }
+        });
+        facets.sort(Comparator.comparingLong(FacetCount::getCount).reversed().thenComparing(FacetCount::getValue));
+        return facets.size() > limit ? new ArrayList<>(facets.subList(0, limit)) : facets;
+    }
+
+    /**
+     * Count a created contact (after commit).
+     */
+    public void increment(String company) {
+        move(null, company);
+    }
+
+    /**
+     * Uncount a deleted contact (after commit).
+     */
+    public void decrement(String company) {
+        move(company, null);
+    }
+
+    /**
+     * Move a contact from one company to another (after commit); either side may be null.
+     */
+    public void move(String from, String to) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        Runnable apply = () -> {
+            synchronized (lock) {
+                Map<String, AtomicLong> current = counts;
+                if (current != null) {
+                    if (from != null) {
+                        current.computeIfAbsent(from, key -> new AtomicLong()).decrementAndGet();
+                    }
+                    if (to != null) {
+                        current.computeIfAbsent(to, key -> new AtomicLong()).incrementAndGet();
+                    }
+                }
+                writesDuringLoad |= loading;
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private Map<String, AtomicLong> load() {
+        Map<String, AtomicLong> loaded = new ConcurrentHashMap<>();
+        for (Object[] row : contactRepository.countPerCompany()) {
+            loaded.put((String) row[0], new AtomicLong(((Number) row[1]).longValue()));
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,59 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.repository.ContactRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Cached {@code SELECT COUNT(*) FROM contact} for paginated lists.
+ * <p>
+ * On FileMaker the count costs about as much as the page itself. The total is reused until
+ * a create or delete through the API invalidates it, or {@code contacts.count-cache.time-to-live}
+ * expires (rows added or removed in FileMaker itself). Concurrent requests after an
+ * invalidation share one count query. Counts inside a transaction are not cached.
+ */
+@Service
+public class ContactCountCache {
+
+    private static final String TOTAL = "total";
+
+    private final ContactRepository contactRepository;
+    private final LoadingCache<String, Long> cache;
+
+    public ContactCountCache(ContactRepository contactRepository,
+                             @Value("${contacts.count-cache.time-to-live:30s}") Duration timeToLive) {
+        this.contactRepository = contactRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(timeToLive)
+                .build(key -> contactRepository.countAll());
+    }
+
+    public long total() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return contactRepository.countAll();
+        }
+        return cache.get(TOTAL);
+    }
+
+    /**
+     * Drop the cached total after contacts were created or deleted; inside a transaction
+     * it is dropped again on completion.
+     */
+    public void invalidate() {
+        cache.invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidateAll();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.filemaker.demo.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.filemaker.demo.repository.ContactColumns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.*;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Service for exporting the contact table as newline-delimited JSON (NDJSON).
+ * <p>
+ * Paging through {@code GET /api/contacts} costs a persistence context, a {@code COUNT(*)}
+ * and a full {@code Page} JSON tree per page. The export instead opens a single forward-only,
+ * read-only JDBC {@link ResultSet} and writes every row straight to the output stream,
+ * without creating managed entities. Heap use stays flat regardless of table size.
+ */
+@Service
+public class ContactExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactExportService.class);
+
+    private static final Set<String> TIMESTAMP_PROPERTIES =
+            Set.of("lastContactDate", "createTimestamp", "updateTimestamp");
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public ContactExportService(DataSource dataSource, ObjectMapper objectMapper,
+                                @Value("${contacts.export.fetch-size:500}") int fetchSize) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Write every contact to the output stream, one JSON object per line, ordered by id.
+     * The output stream is not closed.
+     *
+     * @param out The output stream
+     * @return The number of rows written
+     */
+    public long exportAll(OutputStream out) throws IOException {
+        return export(null, out);
+    }
+
+    /**
+     * Write the contacts of one company to the output stream, like {@link #exportAll(OutputStream)}.
+     *
+     * @param company The exact company name
+     * @param out The output stream
+     * @return The number of rows written
+     */
+    public long exportByCompany(String company, OutputStream out) throws IOException {
+        return export(company, out);
+    }
+
+    private long export(String company, OutputStream out) throws IOException {
+        String sql = "SELECT " + String.join(", ", ContactColumns.ALL.values()) + " FROM contact"
+                + (company != null ? " WHERE company = ?" : "") + " ORDER BY id";
+
+        long rows = 0;
+        long start = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            ps.setFetchSize(fetchSize);
+            if (company != null) {
+                ps.setString(1, company);
+            }
+
+            try (ResultSet rs = ps.executeQuery();
+                 JsonGenerator json = objectMapper.createGenerator(out, JsonEncoding.UTF8)) {
+                json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // One object per line: no separator between root values, newline written explicitly
+                json.setPrettyPrinter(new MinimalPrettyPrinter(""));
+
+                while (rs.next()) {
+                    writeRow(rs, json);
+                    json.writeRaw('\n');
+                    rows++;
+                }
+            }
+
+        } catch (SQLException e) {
+            log.error("Failed to export contacts after {} rows: {}", rows, e.getMessage(), e);
+            throw new IOException("Contact export failed", e);
+        }
+
+        log.info("Exported {} contacts in {} ms", rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    private void writeRow(ResultSet rs, JsonGenerator json) throws SQLException, IOException {
+        json.writeStartObject();
+        int index = 1;
+        for (String property : ContactColumns.ALL.keySet()) {
+            json.writeFieldName(property);
+            if ("id".equals(property)) {
+                long id = rs.getLong(index);
+                if (rs.wasNull()) {
+                    json.writeNull();
+                } else {
+                    json.writeNumber(id);
+                }
+            } else if (TIMESTAMP_PROPERTIES.contains(property)) {
+                // Match the entity's JSON: lastContactDate is a Date, the auto-enter timestamps are LocalDateTime
+                Timestamp ts = rs.getTimestamp(index);
+                if (ts == null) {
+                    json.writeNull();
+                } else if ("lastContactDate".equals(property)) {
+                    json.writeObject(new Date(ts.getTime()));
+                } else {
+                    json.writeObject(ts.toLocalDateTime());
+                }
+            } else {
+                json.writeString(rs.getString(index));
+            }
+            index++;
+        }
+        json.writeEndObject();
+    }
+}
@@ -0,0 +1,455 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.entity.Contact;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory trigram index over the searchable contact fields (first name, last name, email, company).
+ * <p>
+ * {@code LIKE '%q%'} cannot use a FileMaker index, so {@link com.filemaker.demo.repository.ContactRepository#search}
+ * scans the whole table on every call. This index maps each three-character sequence to the contacts
+ * containing it: a query intersects the posting lists of its trigrams and verifies the few candidates
+ * with a substring check, so FileMaker is only needed to load the matching records.
+ * <p>
+ * Matching is case-insensitive, and {@code %} and {@code _} in the query are literal characters.
+ * The index is loaded in the background at startup and reloaded every
+ * {@code contacts.search-index.refresh-interval} to pick up changes made in FileMaker itself; writes
+ * through the API are applied immediately (after commit). Until the first load completes, and inside
+ * a transaction, {@link #search} returns empty and callers fall back to the database.
+ */
+@Service
+public class ContactSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactSearchIndex.class);
+
+    static final String LOAD_SQL = "SELECT id, first_name, last_name, email, company FROM contact";
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock. index is null until loaded; pending is non-null while a reload runs
+    private Index index;
+    private List<Consumer<Index>> pending;
+
+    private ScheduledExecutorService refresher;
+
+    public ContactSearchIndex(DataSource dataSource,
+                              @Value("${contacts.search-index.enabled:true}") boolean enabled,
+                              @Value("${contacts.search-index.refresh-interval:10m}") Duration refreshInterval) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "contact-search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Schedule a full reload, e.g. after rows were created whose IDs are not known.
+     */
+    public void refreshAsync() {
+        if (refresher != null) {
+            refresher.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * Reload the whole index from the database. Writes applied while loading are replayed on the new index.
+     */
+    public synchronized void refresh() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.currentTimeMillis();
+        Index fresh = new Index();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(LOAD_SQL,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    fresh.put(rs.getLong(1), text(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)));
+                }
+            }
+        } catch (SQLException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            pending.forEach(op -> op.accept(fresh));
+            pending = null;
+            index = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Search index loaded: {} contacts, {} trigrams in {} ms",
+                 fresh.size(), fresh.trigrams(), System.currentTimeMillis() - start);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Search index reload failed, keeping the previous index: {}", e.getMessage(), e);
+        }
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return index != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the contacts whose first name, last name, email or company contains the query.
+     *
+     * @param query  Search text
+     * @param offset Matches to skip
+     * @param limit  Maximum number of IDs to return
+     * @return Matching IDs in ascending order with the total match count, or empty if the index cannot
+     *         answer (not loaded yet, or called inside a transaction whose writes it cannot see)
+     */
+    public Optional<Hits> search(String query, long offset, int limit) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Optional.empty();
+        }
+        long[] ids;
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return Optional.empty();
+            }
+            ids = index.search(query.toLowerCase(Locale.ROOT));
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(ids);
+
+        List<Long> page = new ArrayList<>(Math.min(limit, ids.length));
+        for (long i = offset; i < ids.length && page.size() < limit; i++) {
+            page.add(ids[(int) i]);
+        }
+        return Optional.of(new Hits(ids.length, page));
+    }
+
+    /**
+     * Index a created or updated contact.
+     */
+    public void put(Contact contact) {
+        if (contact.getId() == null) {
+            return;
+        }
+        long id = contact.getId();
+        String text = text(contact.getFirstName(), contact.getLastName(), contact.getEmail(), contact.getCompany());
+        apply(idx -> idx.put(id, text));
+    }
+
+    public void remove(Long id) {
+        removeAll(List.of(id));
+    }
+
+    public void removeAll(Collection<Long> ids) {
+        List<Long> removed = List.copyOf(ids);
+        apply(idx -> removed.forEach(idx::remove));
+    }
+
+    private void apply(Consumer<Index> op) {
+        // Only committed changes enter the index
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyNow(op);
+                }
+            });
+        } else {
+            applyNow(op);
+        }
+    }
+
+    private void applyNow(Consumer<Index> op) {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                op.accept(index);
+            }
+            if (pending != null) {
+                pending.add(op);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The searchable fields of a contact, lower-cased. The separator keeps trigrams from spanning fields.
+     */
+    static String text(String firstName, String lastName, String email, String company) {
+        StringBuilder text = new StringBuilder();
+        for (String field : new String[] {firstName, lastName, email, company}) {
+            if (field != null) {
+                text.append(field.toLowerCase(Locale.ROOT));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * A page of matching contact IDs.
+     */
+    public static class Hits {
+        private final int total;
+        private final List<Long> ids;
+
+        public Hits(int total, List<Long> ids) {
+            this.total = total;
+            this.ids = ids;
+        }
+
+        public int getTotal() { return total; }
+        public List<Long> getIds() { return ids; }
+    }
+
+    /**
+     * The index itself; not thread-safe. Documents are numbered in insertion order, so posting lists
+     * stay sorted by appending. Updated and removed documents leave tombstones until the next compaction.
+     */
+    static class Index {
+
+        private static final int COMPACT_MIN_DEAD = 10_000;
+
+        private long[] ids = new long[1024];
+        private String[] texts = new String[1024];
+        private int docs;
+        private int dead;
+        private Map<Long, Integer> docById = new HashMap<>();
+        private Map<Long, Postings> postings = new HashMap<>();
+
+        int size() {
+            return docs - dead;
+        }
+
+        int trigrams() {
+            return postings.size();
+        }
+
+        void put(long id, String text) {
+            Integer previous = docById.get(id);
+            if (previous != null) {
+                if (text.equals(texts[previous])) {
+                    return;
+                }
+                tombstone(previous);
+            }
+            int doc = docs++;
+            if (doc == ids.length) {
+                ids = Arrays.copyOf(ids, doc * 2);
+                texts = Arrays.copyOf(texts, doc * 2);
+            }
+            ids[doc] = id;
+            texts[doc] = text;
+            docById.put(id, doc);
+            for (long trigram : trigrams(text)) {
+                postings.computeIfAbsent(trigram, key -> new Postings()).add(doc);
+            }
+            maybeCompact();
+        }
+
+        void remove(long id) {
+            Integer doc = docById.remove(id);
+            if (doc != null) {
+                tombstone(doc);
+                maybeCompact();
+            }
+        }
+
+        private void tombstone(int doc) {
+            texts[doc] = null;
+            dead++;
+        }
+
+        private void maybeCompact() {
+            if (dead < COMPACT_MIN_DEAD || dead < docs / 2) {
+                return;
+            }
+            Index compacted = new Index();
+            for (int doc = 0; doc < docs; doc++) {
+                if (texts[doc] != null) {
+                    compacted.put(ids[doc], texts[doc]);
+                }
+            }
+            ids = compacted.ids;
+            texts = compacted.texts;
+            docs = compacted.docs;
+            dead = 0;
+            docById = compacted.docById;
+            postings = compacted.postings;
+        }
+
+        /**
+         * IDs of the live documents containing the (lower-cased) query, unordered.
+         */
+        long[] search(String query) {
+            long[] grams = trigrams(query);
+            if (grams.length == 0) {
+                // Shorter than a trigram - scan the texts, still far cheaper than a table scan
+                return verify(null, query);
+            }
+            Postings[] lists = new Postings[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) {
+                    return new long[0];
+                }
+            }
+            // Intersect the shortest lists first
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            int[] candidates = Arrays.copyOf(lists[0].docs, lists[0].size);
+            int count = candidates.length;
+            for (int i = 1; i < lists.length && count > 0; i++) {
+                count = intersect(candidates, count, lists[i]);
+            }
+            return verify(Arrays.copyOf(candidates, count), query);
+        }
+
+        /**
+         * Keep the candidates (all documents if null) that are live and really contain the query:
+         * sharing all its trigrams does not guarantee they appear in sequence.
+         */
+        private long[] verify(int[] candidates, String query) {
+            int total = candidates == null ? docs : candidates.length;
+            long[] matches = new long[Math.min(total, 1024)];
+            int count = 0;
+            for (int i = 0; i < total; i++) {
+                int doc = candidates == null ? i : candidates[i];
+                String text = texts[doc];
+                if (text != null && text.contains(query)) {
+                    if (count == matches.length) {
+                        matches = Arrays.copyOf(matches, count * 2);
+                    }
+                    matches[count++] = ids[doc];
+                }
+            }
+            return Arrays.copyOf(matches, count);
+        }
+
+        /**
+         * Intersect sorted {@code candidates[0..count)} with a posting list in place.
+         */
+        private static int intersect(int[] candidates, int count, Postings list) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < list.size; i++) {
+                int doc = candidates[i];
+                while (j < list.size && list.docs[j] < doc) {
+                    j++;
+                }
+                if (j < list.size && list.docs[j] == doc) {
+                    candidates[kept++] = doc;
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * Distinct trigrams of a text, each packed as three 16-bit chars.
+         */
+        static long[] trigrams(String text) {
+            if (text.length() < 3) {
+                return new long[0];
+            }
+            long[] grams = new long[text.length() - 2];
+            for (int i = 0; i < grams.length; i++) {
+                grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            }
+            Arrays.sort(grams);
+            int distinct = 0;
+            for (int i = 0; i < grams.length; i++) {
+                if (i == 0 || grams[i] != grams[i - 1]) {
+                    grams[distinct++] = grams[i];
+                }
+            }
+            return Arrays.copyOf(grams, distinct);
+        }
+    }
+
+    /**
+     * Growable, sorted list of document numbers.
+     */
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
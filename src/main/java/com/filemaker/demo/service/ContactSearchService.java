@@ -0,0 +1,156 @@
+package com.filemaker.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Selects how {@code GET /api/contacts/search} finds matching IDs.
+ * <ul>
+ *   <li>{@link Strategy#INDEX} - the in-memory trigram index ({@link ContactSearchIndex})</li>
+ *   <li>{@link Strategy#FANOUT} - one {@code LIKE} query per column, run concurrently on separate
+ *       pool connections. FileMaker evaluates a single-field find much faster than the OR of four
+ *       {@code LIKE}s; the IDs are merged, deduplicated and paged in memory</li>
+ *   <li>{@link Strategy#JPQL} - {@link com.filemaker.demo.repository.ContactRepository#search}</li>
+ * </ul>
+ * The default comes from {@code contacts.search.strategy}. A strategy that cannot answer (index
+ * not loaded, a fan-out query failed, or the caller is inside a transaction whose uncommitted rows
+ * other connections cannot see) returns empty, and the caller falls back to the JPQL query.
+ * At most {@code contacts.search.fanout-threads} column queries run at once across all requests,
+ * which bounds the pool connections fan-out can take.
+ */
+@Service
+public class ContactSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactSearchService.class);
+
+    /** Searched columns, as in {@code ContactRepository.search}. */
+    static final List<String> COLUMNS = List.of("first_name", "last_name", "email", "company");
+
+    private static final int FETCH_SIZE = 1000;
+
+    public enum Strategy {
+        INDEX, FANOUT, JPQL;
+
+        /**
+         * @throws IllegalArgumentException if the name is not a strategy
+         */
+        public static Strategy parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown search strategy: " + name);
+            }
+        }
+    }
+
+    private final ContactSearchIndex contactSearchIndex;
+    private final DataSource dataSource;
+    private final Strategy defaultStrategy;
+    private final ExecutorService fanout;
+
+    public ContactSearchService(ContactSearchIndex contactSearchIndex,
+                                DataSource dataSource,
+                                @Value("${contacts.search.strategy:index}") String defaultStrategy,
+                                @Value("${contacts.search.fanout-threads:4}") int fanoutThreads) {
+        this.contactSearchIndex = contactSearchIndex;
+        this.dataSource = dataSource;
+        this.defaultStrategy = Strategy.parse(defaultStrategy);
+        this.fanout = Executors.newFixedThreadPool(fanoutThreads, task -> {
+            Thread thread = new Thread(task, "contact-search-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        fanout.shutdownNow();
+    }
+
+    public Strategy getDefaultStrategy() {
+        return defaultStrategy;
+    }
+
+    /**
+     * Find one page of matching contact IDs, in ID order.
+     *
+     * @param query    Search text
+     * @param offset   Index of the first ID to return
+     * @param limit    Maximum number of IDs to return
+     * @param strategy How to search
+     * @return The page and the total number of matches, or empty if the caller should run the JPQL query
+     */
+    public Optional<ContactSearchIndex.Hits> search(String query, long offset, int limit, Strategy strategy) {
+        return switch (strategy) {
+            case INDEX -> contactSearchIndex.search(query, offset, limit);
+            case FANOUT -> fanout(query, offset, limit);
+            case JPQL -> Optional.empty();
+        };
+    }
+
+    private Optional<ContactSearchIndex.Hits> fanout(String query, long offset, int limit) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Optional.empty();
+        }
+        String pattern = "%" + query + "%";
+        List<Future<List<Long>>> futures = new ArrayList<>(COLUMNS.size());
+        for (String column : COLUMNS) {
+            futures.add(fanout.submit(() -> findIds(column, pattern)));
+        }
+
+        // A contact can match in several columns - merge into one sorted, distinct set
+        TreeSet<Long> merged = new TreeSet<>();
+        try {
+            for (Future<List<Long>> future : futures) {
+                merged.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            log.warn("Fan-out search for '{}' failed, falling back to JPQL: {}", query, e.getCause().getMessage());
+            futures.forEach(future -> future.cancel(true));
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            return Optional.empty();
+        }
+
+        List<Long> page = merged.stream().skip(offset).limit(limit).toList();
+        return Optional.of(new ContactSearchIndex.Hits(merged.size(), page));
+    }
+
+    private List<Long> findIds(String column, String pattern) throws SQLException {
+        String sql = "SELECT id FROM contact WHERE " + column + " LIKE ?";
+        List<Long> ids = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, pattern);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+}
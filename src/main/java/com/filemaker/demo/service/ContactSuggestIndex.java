@@ -0,0 +1,432 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.Suggestion;
+import com.filemaker.demo.dto.SuggestMetrics;
+import com.filemaker.demo.entity.Contact;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefix suggestions (type-ahead) for contact names, companies and email local parts,
+ * answered from memory without touching FileMaker.
+ * <p>
+ * Distinct terms are kept in one immutable, sorted snapshot: the UTF-8 text of all terms in a single
+ * byte array with an offset table, plus a type and an occurrence count per term (about 30 bytes per term,
+ * instead of a few hundred for a node-per-character trie). A prefix maps to a contiguous range found by
+ * binary search. The top-k terms of every prefix whose range is larger than {@value #SCAN_THRESHOLD}
+ * terms are precomputed, so one- and two-letter prefixes cost a map lookup and longer ones a short scan.
+ * <p>
+ * The snapshot is rebuilt from FileMaker at startup and every {@code contacts.suggest.refresh-interval}.
+ * Contacts created or updated through the API are added to a small overlay right away, one entry per
+ * contact that each update replaces; terms of deleted or renamed contacts disappear with the next rebuild.
+ */
+@Service
+public class ContactSuggestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactSuggestIndex.class);
+
+    static final String LOAD_SQL = "SELECT first_name, last_name, email, company FROM contact";
+
+    /** Maximum suggestions per prefix. */
+    public static final int MAX_SUGGESTIONS = 10;
+
+    /** Prefix ranges up to this size are scanned instead of precomputed. */
+    static final int SCAN_THRESHOLD = 256;
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int OVERLAY_LIMIT = 10_000;
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+
+    private volatile Snapshot snapshot;
+    // Terms of contacts written since the snapshot, by contact ID
+    private final Map<Long, List<Term>> overlay = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService refresher;
+
+    public ContactSuggestIndex(DataSource dataSource,
+                               @Value("${contacts.suggest.enabled:true}") boolean enabled,
+                               @Value("${contacts.suggest.refresh-interval:10m}") Duration refreshInterval) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "contact-suggest-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Schedule a rebuild, e.g. after rows were created whose values are not at hand.
+     */
+    public void refreshAsync() {
+        if (refresher != null) {
+            refresher.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * Rebuild the snapshot from the database.
+     */
+    public synchronized void refresh() throws SQLException {
+        long start = System.currentTimeMillis();
+        // Entries added before the load were committed before it, so the load sees them
+        Map<Long, List<Term>> loaded = new HashMap<>(overlay);
+        Map<String, Term> terms = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(LOAD_SQL,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    collect(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), terms);
+                }
+            }
+        }
+        snapshot = Snapshot.build(terms);
+        // Entries added or replaced during the load may be missing from it: keep them until the next rebuild
+        loaded.forEach((id, entry) -> overlay.computeIfPresent(id, (key, current) -> current == entry ? null : current));
+        log.info("Suggest index built: {} terms, {} precomputed prefixes, ~{} KB in {} ms",
+                 snapshot.size(), snapshot.topK.size(), snapshot.estimatedBytes() / 1024,
+                 System.currentTimeMillis() - start);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Suggest index rebuild failed, keeping the previous snapshot: {}", e.getMessage(), e);
+        }
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Suggest terms starting with the prefix (case-insensitive), most frequent first.
+     *
+     * @param prefix Typed prefix, at least one character
+     * @param limit  Maximum number of suggestions, capped at {@link #MAX_SUGGESTIONS}
+     * @return Suggestions, empty if nothing matches or the index is not loaded yet
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int k = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        Map<String, Term> candidates = new HashMap<>();
+
+        Snapshot current = snapshot;
+        if (current != null) {
+            for (Term term : current.top(key, k)) {
+                candidates.put(term.id(), term);
+            }
+        }
+        if (!overlay.isEmpty()) {
+            for (List<Term> terms : overlay.values()) {
+                for (Term term : terms) {
+                    if (term.key.startsWith(key)) {
+                        candidates.merge(term.id(), term, (a, b) -> new Term(a.display, a.key, a.type, a.count + b.count));
+                    }
+                }
+            }
+        }
+
+        List<Term> ranked = new ArrayList<>(candidates.values());
+        ranked.sort(Term.RANKING);
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(k, ranked.size()));
+        for (Term term : ranked.subList(0, Math.min(k, ranked.size()))) {
+            suggestions.add(new Suggestion(term.display, term.type, term.count));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Add the terms of a created or updated contact to the overlay (after commit), replacing
+     * those of its previous write, so repeated updates do not inflate the counts.
+     */
+    public void add(Contact contact) {
+        Map<String, Term> terms = new HashMap<>();
+        collect(contact.getFirstName(), contact.getLastName(), contact.getEmail(), contact.getCompany(), terms);
+        List<Term> entry = List.copyOf(terms.values());
+        Runnable apply = () -> {
+            overlay.put(contact.getId(), entry);
+            if (overlay.size() > OVERLAY_LIMIT) {
+                refreshAsync();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    /**
+     * Size and memory use of the snapshot, for {@code /api/stats/suggest}.
+     */
+    public SuggestMetrics metrics() {
+        SuggestMetrics metrics = new SuggestMetrics();
+        Snapshot current = snapshot;
+        metrics.setOverlayTerms(overlay.values().stream().mapToLong(List::size).sum());
+        if (current != null) {
+            long bytes = current.estimatedBytes();
+            metrics.setTerms(current.size());
+            metrics.setPrecomputedPrefixes(current.topK.size());
+            metrics.setEstimatedBytes(bytes);
+            metrics.setBytesPerMillionTerms(current.size() == 0 ? 0 : bytes * 1_000_000 / current.size());
+        }
+        return metrics;
+    }
+
+    private static void collect(String firstName, String lastName, String email, String company,
+                                Map<String, Term> terms) {
+        count(firstName, "name", terms);
+        count(lastName, "name", terms);
+        if (firstName != null && lastName != null) {
+            count(firstName.trim() + " " + lastName.trim(), "name", terms);
+        }
+        count(company, "company", terms);
+        if (email != null) {
+            int at = email.indexOf('@');
+            count(at > 0 ? email.substring(0, at) : email, "email", terms);
+        }
+    }
+
+    private static void count(String text, String type, Map<String, Term> terms) {
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        String display = text.trim();
+        Term term = new Term(display, display.toLowerCase(Locale.ROOT), type, 1);
+        terms.merge(term.id(), term, (a, b) -> new Term(a.display, a.key, a.type, a.count + b.count));
+    }
+
+    /**
+     * A distinct term; {@code key} is the lower-cased display text used for matching.
+     */
+    record Term(String display, String key, String type, int count) {
+
+        static final Comparator<Term> ORDER = Comparator.comparing(Term::key).thenComparing(Term::type);
+
+        // Most frequent first, then alphabetical
+        static final Comparator<Term> RANKING = Comparator.comparingInt(Term::count).reversed()
+                .thenComparing(Term::key).thenComparing(Term::type);
+
+        String id() {
+            return type + ':' + key;
+        }
+    }
+
+    /**
+     * Immutable, sorted term table with precomputed top-k lists for large prefix ranges.
+     */
+    static final class Snapshot {
+
+        private static final String[] TYPES = {"name", "company", "email"};
+
+        private final byte[] text;
+        private final int[] offsets;
+        private final byte[] types;
+        private final int[] counts;
+        private final Map<String, int[]> topK = new HashMap<>();
+
+        private Snapshot(List<Term> sorted) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream(sorted.size() * 12);
+            offsets = new int[sorted.size() + 1];
+            types = new byte[sorted.size()];
+            counts = new int[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                Term term = sorted.get(i);
+                data.writeBytes(term.display.getBytes(StandardCharsets.UTF_8));
+                offsets[i + 1] = data.size();
+                types[i] = typeCode(term.type);
+                counts[i] = term.count;
+            }
+            text = data.toByteArray();
+        }
+
+        private static byte typeCode(String type) {
+            for (byte code = 0; code < TYPES.length; code++) {
+                if (TYPES[code].equals(type)) {
+                    return code;
+                }
+            }
+            throw new IllegalArgumentException("Unknown term type: " + type);
+        }
+
+        static Snapshot build(Map<String, Term> terms) {
+            List<Term> sorted = new ArrayList<>(terms.values());
+            sorted.sort(Term.ORDER);
+            Snapshot snapshot = new Snapshot(sorted);
+            snapshot.precompute(sorted, 0, sorted.size(), "");
+            return snapshot;
+        }
+
+        int size() {
+            return counts.length;
+        }
+
+        /**
+         * Precompute the top-k of {@code prefix}, then of each longer prefix whose range is still large.
+         * All terms in {@code [lo, hi)} start with {@code prefix}.
+         */
+        private void precompute(List<Term> sorted, int lo, int hi, String prefix) {
+            if (hi - lo <= SCAN_THRESHOLD) {
+                return;
+            }
+            if (!prefix.isEmpty()) {
+                topK.put(prefix, select(lo, hi, MAX_SUGGESTIONS));
+            }
+            int depth = prefix.length();
+            int i = lo;
+            // Terms equal to the prefix sort first and have no child
+            while (i < hi && sorted.get(i).key.length() == depth) {
+                i++;
+            }
+            while (i < hi) {
+                char next = sorted.get(i).key.charAt(depth);
+                int end = i;
+                while (end < hi && sorted.get(end).key.charAt(depth) == next) {
+                    end++;
+                }
+                precompute(sorted, i, end, prefix + next);
+                i = end;
+            }
+        }
+
+        List<Term> top(String prefix, int k) {
+            int[] precomputed = topK.get(prefix);
+            int[] indexes;
+            if (precomputed != null) {
+                indexes = precomputed;
+            } else {
+                int lo = bound(prefix, false);
+                int hi = bound(prefix, true);
+                indexes = select(lo, hi, k);
+            }
+            List<Term> terms = new ArrayList<>(Math.min(k, indexes.length));
+            for (int i = 0; i < indexes.length && terms.size() < k; i++) {
+                terms.add(term(indexes[i]));
+            }
+            return terms;
+        }
+
+        /**
+         * First index whose key starts with or sorts after the prefix ({@code upper = false}),
+         * or first index sorting after every key that starts with it ({@code upper = true}).
+         */
+        private int bound(String prefix, boolean upper) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                String key = key(mid);
+                int cmp = key.startsWith(prefix) ? 0 : key.compareTo(prefix);
+                if (cmp < 0 || (upper && cmp == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private int[] select(int lo, int hi, int k) {
+            // Min-heap of the best k by ranking; the root is the weakest kept term
+            Comparator<Integer> ranking = (a, b) -> compareRank(a, b);
+            PriorityQueue<Integer> heap = new PriorityQueue<>(k + 1, ranking.reversed());
+            for (int i = lo; i < hi; i++) {
+                heap.add(i);
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+            int[] best = new int[heap.size()];
+            for (int i = best.length - 1; i >= 0; i--) {
+                best[i] = heap.poll();
+            }
+            return best;
+        }
+
+        private int compareRank(int a, int b) {
+            // Sorted by key and type, so index order breaks count ties alphabetically
+            int byCount = Integer.compare(counts[b], counts[a]);
+            return byCount != 0 ? byCount : Integer.compare(a, b);
+        }
+
+        private Term term(int i) {
+            String display = display(i);
+            return new Term(display, display.toLowerCase(Locale.ROOT), TYPES[types[i]], counts[i]);
+        }
+
+        private String display(int i) {
+            return new String(text, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+
+        private String key(int i) {
+            return display(i).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Approximate heap use: the arrays plus the precomputed prefix map.
+         */
+        long estimatedBytes() {
+            long bytes = 16L + text.length + 16L + offsets.length * 4L + 16L + types.length + 16L + counts.length * 4L;
+            for (Map.Entry<String, int[]> entry : topK.entrySet()) {
+                // Map node, prefix string, index array
+                bytes += 48 + 40 + entry.getKey().length() + 16 + entry.getValue().length * 4L;
+            }
+            return bytes;
+        }
+    }
+}
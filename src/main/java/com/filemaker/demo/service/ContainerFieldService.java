@@ -1,13 +1,22 @@
 package com.filemaker.demo.service;
 
+import org.apache.commons.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for handling FileMaker container fields (binary data).
@@ -29,40 +38,70 @@ public class ContainerFieldService {
     private static final Logger log = LoggerFactory.getLogger(ContainerFieldService.class);
 
     private final DataSource dataSource;
-
-    public ContainerFieldService(DataSource dataSource) {
+    private final ContainerWriteBudget writeBudget;
+
+    // Each open stream holds a pool connection until the client has read it; capped below the pool size
+    // so that downloads cannot take every connection. Copy buffers are kept for reuse up to the same count
+    private final Semaphore openStreams;
+    private final long streamWaitMillis;
+    private final int streamBufferSize;
+    private final BlockingQueue<byte[]> streamBuffers;
+
+    // Cleared on the first driver call that cannot return a binary stream
+    private volatile boolean binaryStreams = true;
+
+    // Buffers kept when the pool size is not known (data sources other than DBCP)
+    private static final int DEFAULT_POOLED_BUFFERS = 10;
+
+    public ContainerFieldService(DataSource dataSource,
+                                 ContainerWriteBudget writeBudget,
+                                 @Value("${contacts.container.stream-buffer-size:64KB}") DataSize streamBufferSize,
+                                 @Value("${contacts.container.reserved-connections:2}") int reservedConnections,
+                                 @Value("${contacts.container.stream-wait:1s}") Duration streamWait) {
         this.dataSource = dataSource;
+        this.writeBudget = writeBudget;
+        this.streamBufferSize = (int) streamBufferSize.toBytes();
+        this.streamWaitMillis = streamWait.toMillis();
+        // The pool size is only known for DBCP; other data sources are not capped
+        int maxOpenStreams = dataSource instanceof BasicDataSource pool && pool.getMaxTotal() > 0
+                ? Math.max(1, pool.getMaxTotal() - reservedConnections)
+                : Integer.MAX_VALUE;
+        this.openStreams = new Semaphore(maxOpenStreams);
+        this.streamBuffers = new ArrayBlockingQueue<>(
+                maxOpenStreams == Integer.MAX_VALUE ? DEFAULT_POOLED_BUFFERS : maxOpenStreams);
     }
 
     /**
      * Upload binary data to a FileMaker container field.
+     * <p>
+     * The multipart file stays spooled on disk until the statement is prepared; only then is it read
+     * into one array of its exact size for {@code setBytes}. The write holds its size in the
+     * {@link ContainerWriteBudget} for as long as the array is needed.
      *
      * @param tableName  The table name
      * @param fieldName  The container field name
      * @param recordId   The record ID
      * @param file       The file to upload
      * @return true if successful
+     * @throws ContainerWriteBudget.BudgetExceededException if the upload does not fit in the memory budget
      */
     public boolean uploadToContainer(String tableName, String fieldName, Long recordId, MultipartFile file) {
-        String filename = file.getOriginalFilename();
-        if (filename == null || filename.isEmpty()) {
-            filename = "upload.bin";
-        }
-
         // FileMaker requires: UPDATE table SET container = ? AS 'filename.ext' WHERE id = ?
         String sql = String.format(
             "UPDATE %s SET %s = ? AS '%s' WHERE id = ?",
-            tableName, fieldName, filename
+            tableName, fieldName, containerFileName(file.getOriginalFilename())
         );
 
         log.info("Uploading to container: {} bytes to {}.{} for record {}", 
                  file.getSize(), tableName, fieldName, recordId);
 
+        // Wait for room in the budget before taking a pool connection
+        ContainerWriteBudget.Reservation reservation = writeBudget.reserve(file.getSize());
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             // FileMaker requires setBytes(), not setBinaryStream()
-            ps.setBytes(1, file.getBytes());
+            ps.setBytes(1, readFully(file));
             ps.setLong(2, recordId);
             int updated = ps.executeUpdate();
             log.info("Container upload result: {} rows updated", updated);
@@ -71,6 +110,8 @@ public class ContainerFieldService {
         } catch (SQLException | IOException e) {
             log.error("Failed to upload to container field: {}", e.getMessage(), e);
             return false;
+        } finally {
+            reservation.close();
         }
     }
 
@@ -83,21 +124,19 @@ public class ContainerFieldService {
      * @param data       The binary data
      * @param filename   The filename (used to determine format)
      * @return true if successful
+     * @throws ContainerWriteBudget.BudgetExceededException if the upload does not fit in the memory budget
      */
     public boolean uploadToContainer(String tableName, String fieldName, Long recordId, 
                                      byte[] data, String filename) {
-        if (filename == null || filename.isEmpty()) {
-            filename = "upload.bin";
-        }
-
         String sql = String.format(
             "UPDATE %s SET %s = ? AS '%s' WHERE id = ?",
-            tableName, fieldName, filename
+            tableName, fieldName, containerFileName(filename)
         );
 
         log.info("Uploading {} bytes to {}.{} for record {}", 
                  data.length, tableName, fieldName, recordId);
 
+        ContainerWriteBudget.Reservation reservation = writeBudget.reserve(data.length);
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
@@ -110,7 +149,89 @@ public class ContainerFieldService {
         } catch (SQLException e) {
             log.error("Failed to upload to container field: {}", e.getMessage(), e);
             return false;
+        } finally {
+            reservation.close();
+        }
+    }
+
+    /**
+     * Upload a file to a FileMaker container field and set the record's content type column, in one
+     * statement: {@code UPDATE table SET field = ? AS 'name', type = ? WHERE id = ?}.
+     * <p>
+     * The file is read and budgeted as by {@link #uploadToContainer(String, String, Long, MultipartFile)}.
+     * A missing record is told apart from a failed write by the affected-row count, so callers need no
+     * existence check first.
+     *
+     * @param tableName         The table name
+     * @param fieldName         The container field name
+     * @param contentTypeColumn The column holding the container's MIME type
+     * @param recordId          The record ID
+     * @param file              The file to upload
+     * @param contentType       The MIME type to store, may be null
+     * @return Whether the record was written, not found, or the write failed
+     * @throws ContainerWriteBudget.BudgetExceededException if the upload does not fit in the memory budget
+     */
+    public WriteResult uploadWithContentType(String tableName, String fieldName, String contentTypeColumn,
+                                             Long recordId, MultipartFile file, String contentType) {
+        String sql = String.format(
+            "UPDATE %s SET %s = ? AS '%s', %s = ? WHERE id = ?",
+            tableName, fieldName, containerFileName(file.getOriginalFilename()), contentTypeColumn
+        );
+
+        log.info("Uploading to container with content type {}: {} bytes to {}.{} for record {}",
+                 contentType, file.getSize(), tableName, fieldName, recordId);
+
+        ContainerWriteBudget.Reservation reservation = writeBudget.reserve(file.getSize());
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setBytes(1, readFully(file));
+            ps.setString(2, contentType);
+            ps.setLong(3, recordId);
+            int updated = ps.executeUpdate();
+            log.info("Container upload result: {} rows updated", updated);
+            return updated > 0 ? WriteResult.UPDATED : WriteResult.NOT_FOUND;
+
+        } catch (SQLException | IOException e) {
+            log.error("Failed to upload to container field: {}", e.getMessage(), e);
+            return WriteResult.FAILED;
+        } finally {
+            reservation.close();
+        }
+    }
+
+    /**
+     * Outcome of a container write that reports a missing record.
+     */
+    public enum WriteResult {
+        UPDATED,
+        /** No record with that ID */
+        NOT_FOUND,
+        FAILED
+    }
+
+    // The name after AS: a default when the client sent none, quotes doubled for the SQL literal
+    private static String containerFileName(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            filename = "upload.bin";
+        }
+        return filename.replace("'", "''");
+    }
+
+    // One array of the file's exact size (getBytes() may copy through a growing buffer first)
+    private static byte[] readFully(MultipartFile file) throws IOException {
+        long size = file.getSize();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("File too large for a container write: " + size + " bytes");
         }
+        byte[] data = new byte[(int) size];
+        try (InputStream in = file.getInputStream()) {
+            int read = in.readNBytes(data, 0, data.length);
+            if (read < data.length) {
+                throw new IOException("Upload ended after " + read + " of " + size + " bytes");
+            }
+        }
+        return data;
     }
 
     /**
@@ -135,7 +256,7 @@ public class ContainerFieldService {
     public byte[] downloadFromContainer(String tableName, String fieldName, Long recordId, String format) {
         // Convert common format names to FileMaker type codes
         String fmFormat = toFileMakerTypeCode(format);
-        
+
         // FileMaker requires: SELECT GetAs(field, 'format') FROM table WHERE id = ?
         String sql = String.format(
             "SELECT GetAs(%s, '%s') FROM %s WHERE id = ?",
@@ -169,6 +290,254 @@ public class ContainerFieldService {
         return null;
     }
 
+    /**
+     * Open a container field for streaming, without reading it into memory.
+     * <p>
+     * Reads through {@code ResultSet.getBinaryStream} and copies via one pooled buffer of
+     * {@code contacts.container.stream-buffer-size}. If the driver does not support binary streams,
+     * the data is read with {@code getBytes} instead (this call and all later ones). Unlike
+     * {@link #downloadFromContainer(String, String, Long, String)}, concurrent reads are not shared.
+     * <p>
+     * The returned stream holds its connection until it is closed; callers must close it. At most
+     * the pool size minus {@code contacts.container.reserved-connections} streams are open at once.
+     *
+     * @param tableName  The table name
+     * @param fieldName  The container field name
+     * @param recordId   The record ID
+     * @param format     The format to retrieve (e.g., "JPEG", "PNGf", "TIFF")
+     * @return The open stream, or null if not found or empty
+     * @throws StreamsBusyException if no stream became free within {@code contacts.container.stream-wait}
+     */
+    public ContainerStream openFromContainer(String tableName, String fieldName, Long recordId, String format) {
+        String fmFormat = toFileMakerTypeCode(format);
+        String sql = String.format(
+            "SELECT GetAs(%s, '%s') FROM %s WHERE id = ?",
+            fieldName, fmFormat, tableName
+        );
+
+        log.info("Streaming from container: {}.{} for record {} as {}",
+                 tableName, fieldName, recordId, format);
+
+        acquireStream();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        ContainerStream stream = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(sql);
+            ps.setLong(1, recordId);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            stream = openColumn(conn, ps, rs, 1);
+            return stream;
+
+        } catch (SQLException | IOException e) {
+            log.error("Failed to stream from container field: {}", e.getMessage(), e);
+            return null;
+        } finally {
+            if (stream == null) {
+                closeQuietly(rs, ps, conn);
+                openStreams.release();
+            }
+        }
+    }
+
+    /**
+     * Open a container field together with its record's content type, file reference and
+     * modification count ({@code ROWMODID}), all in one statement:
+     * {@code SELECT type, CAST(field AS VARCHAR), ROWMODID, GetAs(field, ...) FROM table WHERE id = ?}.
+     * <p>
+     * Without a {@code format}, the type code is picked inside the statement from the content type
+     * column, falling back to JPEG when it holds no known type. The container is streamed as by
+     * {@link #openFromContainer}; the row's stream holds its connection until it is closed.
+     *
+     * @param tableName         The table name
+     * @param fieldName         The container field name
+     * @param contentTypeColumn The column holding the container's MIME type
+     * @param recordId          The record ID
+     * @param format            The format to retrieve, or null to use the stored content type
+     * @return The row, whose stream is null if the container is empty in that format; null if the
+     *         record does not exist
+     * @throws IllegalArgumentException if the format is not a known type code or name
+     * @throws StreamsBusyException if no stream became free within {@code contacts.container.stream-wait}
+     */
+    public ContainerRow openWithMetadata(String tableName, String fieldName, String contentTypeColumn,
+                                         Long recordId, String format) {
+        String typeCode = format != null ? "'" + toFileMakerTypeCode(format) + "'" : typeCodeOf(contentTypeColumn);
+        String sql = String.format(
+            "SELECT %s, CAST(%s AS VARCHAR), ROWMODID, GetAs(%s, %s) FROM %s WHERE id = ?",
+            contentTypeColumn, fieldName, fieldName, typeCode, tableName
+        );
+
+        log.info("Streaming from container with metadata: {}.{} for record {} as {}",
+                 tableName, fieldName, recordId, format != null ? format : "stored type");
+
+        acquireStream();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        ContainerStream stream = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(sql);
+            ps.setLong(1, recordId);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            // Columns in select order: the container comes last
+            String contentType = rs.getString(1);
+            String reference = rs.getString(2);
+            long version = rs.getLong(3);
+            stream = openColumn(conn, ps, rs, 4);
+            return new ContainerRow(contentType, reference, version, stream);
+
+        } catch (SQLException | IOException e) {
+            log.error("Failed to stream from container field: {}", e.getMessage(), e);
+            return null;
+        } finally {
+            if (stream == null) {
+                closeQuietly(rs, ps, conn);
+                openStreams.release();
+            }
+        }
+    }
+
+    /**
+     * Read a record's content type, container file reference and modification count, without
+     * the container data.
+     *
+     * @return The row (with a null stream), or null if the record does not exist
+     */
+    public ContainerRow getContainerMetadata(String tableName, String fieldName, String contentTypeColumn, Long recordId) {
+        String sql = String.format(
+            "SELECT %s, CAST(%s AS VARCHAR), ROWMODID FROM %s WHERE id = ?",
+            contentTypeColumn, fieldName, tableName
+        );
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setLong(1, recordId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new ContainerRow(rs.getString(1), rs.getString(2), rs.getLong(3), null);
+                }
+            }
+
+        } catch (SQLException e) {
+            log.error("Failed to get container metadata: {}", e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * A record's container metadata, and the open container if it was read.
+     *
+     * @param contentType The stored MIME type, may be null
+     * @param reference   The container's file reference, null if the container is empty
+     * @param version     The record's modification count ({@code ROWMODID})
+     * @param stream      The open container, or null if empty or not read; callers must close it
+     */
+    public record ContainerRow(String contentType, String reference, long version, ContainerStream stream) {}
+
+    // SQL expression mapping the stored content type to its type code, JPEG if unknown
+    private static String typeCodeOf(String contentTypeColumn) {
+        StringBuilder sql = new StringBuilder("CASE LOWER(").append(contentTypeColumn).append(')');
+        for (ContainerFormat format : ContainerFormat.values()) {
+            sql.append(" WHEN '").append(format.getContentType()).append("' THEN '").append(format.getTypeCode()).append('\'');
+        }
+        return sql.append(" ELSE 'JPEG' END").toString();
+    }
+
+    /**
+     * Open column {@code column} of the current row. A returned stream owns the connection,
+     * statement, result set and open-stream permit (closing it releases them); when null is returned
+     * they stay the caller's.
+     */
+    private ContainerStream openColumn(Connection conn, PreparedStatement ps, ResultSet rs, int column)
+            throws SQLException, IOException {
+        if (binaryStreams) {
+            try {
+                InputStream in = rs.getBinaryStream(column);
+                if (in == null) {
+                    return null;
+                }
+                byte[] buffer = takeBuffer();
+                ContainerStream stream;
+                try {
+                    stream = ContainerStream.open(in, buffer, () -> {
+                        closeQuietly(in, rs, ps, conn);
+                        releaseBuffer(buffer);
+                        openStreams.release();
+                    });
+                } catch (IOException e) {
+                    closeQuietly(in);
+                    releaseBuffer(buffer);
+                    throw e;
+                }
+                if (stream.isEmpty()) {
+                    closeQuietly(in);
+                    releaseBuffer(buffer);
+                    return null;
+                }
+                return stream;
+            } catch (SQLFeatureNotSupportedException e) {
+                log.info("JDBC driver does not stream container data, using getBytes: {}", e.getMessage());
+                binaryStreams = false;
+            }
+        }
+
+        byte[] data = rs.getBytes(column);
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        // Already in memory: the connection is not needed any more
+        closeQuietly(rs, ps, conn);
+        openStreams.release();
+        return ContainerStream.of(data);
+    }
+
+    private void acquireStream() {
+        try {
+            if (!openStreams.tryAcquire(streamWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw new StreamsBusyException("All container streams are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StreamsBusyException("Interrupted while waiting for a container stream");
+        }
+    }
+
+    private byte[] takeBuffer() {
+        byte[] buffer = streamBuffers.poll();
+        return buffer != null ? buffer : new byte[streamBufferSize];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer != null) {
+            streamBuffers.offer(buffer);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.debug("Failed to close {}: {}", resource.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
     /**
      * Download binary data from a FileMaker container field using FILE format.
      * This retrieves the raw file data regardless of type.
@@ -212,6 +581,38 @@ public class ContainerFieldService {
         }
     }
 
+    /**
+     * Clear a container field and the record's content type column in one statement:
+     * {@code UPDATE table SET field = NULL, type = NULL WHERE id = ?}.
+     *
+     * @param tableName         The table name
+     * @param fieldName         The container field name
+     * @param contentTypeColumn The column holding the container's MIME type
+     * @param recordId          The record ID
+     * @return Whether the record was written, not found, or the write failed
+     */
+    public WriteResult clearWithContentType(String tableName, String fieldName, String contentTypeColumn, Long recordId) {
+        String sql = String.format(
+            "UPDATE %s SET %s = NULL, %s = NULL WHERE id = ?",
+            tableName, fieldName, contentTypeColumn
+        );
+
+        log.info("Clearing container and content type: {}.{} for record {}", tableName, fieldName, recordId);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setLong(1, recordId);
+            int updated = ps.executeUpdate();
+            log.info("Container clear result: {} rows updated", updated);
+            return updated > 0 ? WriteResult.UPDATED : WriteResult.NOT_FOUND;
+
+        } catch (SQLException e) {
+            log.error("Failed to clear container field: {}", e.getMessage(), e);
+            return WriteResult.FAILED;
+        }
+    }
+
     /**
      * Get the file reference (path) from a container field.
      * Uses CAST to VARCHAR to retrieve the file path/reference.
@@ -256,26 +657,34 @@ public class ContainerFieldService {
      *   <li>{@code TIFF} - Raster file format for digital images</li>
      *   <li>{@code PDF } - Portable Document Format (trailing space required!)</li>
      *   <li>{@code PNGf} - Bitmap image format (PNG)</li>
+     *   <li>{@code FILE} - The raw file</li>
      * </ul>
+     * The type code is written into the SQL text, so nothing else is passed through.
      *
      * @param format The format name (e.g., "PNG", "JPEG", "PDF")
      * @return The FileMaker type code
+     * @throws IllegalArgumentException if the format is not one of these
      */
     private String toFileMakerTypeCode(String format) {
         if (format == null) {
             return "PDF ";  // Default to PDF with trailing space
         }
-        return switch (format.toUpperCase()) {
-            case "PNG" -> "PNGf";
-            case "PNGF" -> "PNGf";
-            case "JPG", "JPEG" -> "JPEG";
-            case "GIF" -> "GIFf";
-            case "GIFF" -> "GIFf";
-            case "TIFF", "TIF" -> "TIFF";
-            case "PDF" -> "PDF ";  // Trailing space is REQUIRED
-            case "PDF " -> "PDF "; // Already correct
-            case "FILE" -> "FILE";
-            default -> format;  // Pass through if already a type code
-        };
+        if (format.equalsIgnoreCase("FILE")) {
+            return "FILE";
+        }
+        return ContainerFormat.ofName(format)
+                .map(ContainerFormat::getTypeCode)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown container format: " + format));
+    }
+
+    /**
+     * Every container stream the pool can spare is open (held by downloads still being sent).
+     */
+    public static class StreamsBusyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public StreamsBusyException(String message) {
+            super(message);
+        }
     }
 }
@@ -0,0 +1,119 @@
+package com.filemaker.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Container content formats: FileMaker type code, MIME type, file extension and the
+ * leading bytes ("magic number") that identify the format.
+ */
+public enum ContainerFormat {
+
+    JPEG("JPEG", "image/jpeg", "jpg", new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+    PNG("PNGf", "image/png", "png", new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}),
+    PDF("PDF ", "application/pdf", "pdf", "%PDF-".getBytes(StandardCharsets.US_ASCII)),
+    GIF("GIFf", "image/gif", "gif", "GIF8".getBytes(StandardCharsets.US_ASCII)),
+    TIFF("TIFF", "image/tiff", "tiff", new byte[] {'I', 'I', 42, 0}, new byte[] {'M', 'M', 0, 42});
+
+    private final String typeCode;
+    private final String contentType;
+    private final String extension;
+    private final List<byte[]> signatures;
+
+    ContainerFormat(String typeCode, String contentType, String extension, byte[]... signatures) {
+        this.typeCode = typeCode;
+        this.contentType = contentType;
+        this.extension = extension;
+        this.signatures = List.of(signatures);
+    }
+
+    /** FileMaker's {@code GetAs} type code (note the trailing space of {@code "PDF "}). */
+    public String getTypeCode() { return typeCode; }
+    public String getContentType() { return contentType; }
+    public String getExtension() { return extension; }
+
+    /**
+     * Identify a container from its first bytes.
+     */
+    public static Optional<ContainerFormat> sniff(ContainerStream stream) {
+        for (ContainerFormat format : values()) {
+            for (byte[] signature : format.signatures) {
+                if (stream.startsWith(signature)) {
+                    return Optional.of(format);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The format suggested by a file name's extension, e.g. of a container's file reference.
+     */
+    public static Optional<ContainerFormat> ofFileName(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return Optional.empty();
+        }
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        if (lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg")) {
+            return Optional.of(JPEG);
+        } else if (lowerName.endsWith(".png")) {
+            return Optional.of(PNG);
+        } else if (lowerName.endsWith(".gif")) {
+            return Optional.of(GIF);
+        } else if (lowerName.endsWith(".pdf")) {
+            return Optional.of(PDF);
+        } else if (lowerName.endsWith(".tiff") || lowerName.endsWith(".tif")) {
+            return Optional.of(TIFF);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The format of a MIME type, or empty if it is not one of these.
+     */
+    public static Optional<ContainerFormat> ofContentType(String contentType) {
+        if (contentType == null) {
+            return Optional.empty();
+        }
+        String normalized = contentType.trim().toLowerCase(Locale.ROOT);
+        for (ContainerFormat format : values()) {
+            if (format.contentType.equals(normalized)) {
+                return Optional.of(format);
+            }
+        }
+        // Non-standard, but sent by some clients
+        return normalized.equals("image/jpg") ? Optional.of(JPEG) : Optional.empty();
+    }
+
+    /**
+     * The format named by a request parameter: a type code or a common name ({@code JPG}, {@code PNG},
+     * {@code TIF}, ...), case-insensitive. Empty for anything else, which must not reach the SQL text.
+     */
+    public static Optional<ContainerFormat> ofName(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        return switch (name.toUpperCase(Locale.ROOT)) {
+            case "JPG", "JPEG" -> Optional.of(JPEG);
+            case "PNG", "PNGF" -> Optional.of(PNG);
+            case "GIF", "GIFF" -> Optional.of(GIF);
+            case "TIFF", "TIF" -> Optional.of(TIFF);
+            case "PDF", "PDF " -> Optional.of(PDF);
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * The format of a FileMaker type code, or empty if it is not one of these.
+     */
+    public static Optional<ContainerFormat> ofTypeCode(String typeCode) {
+        for (ContainerFormat format : values()) {
+            if (format.typeCode.equals(typeCode)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,180 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.repository.ContactRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Finds the {@code GetAs} type code of containers whose content type is not recorded on the contact
+ * (e.g. photos inserted in FileMaker itself).
+ * <p>
+ * FileMaker returns NULL when a container is read as a type it does not hold, so an unknown container
+ * has to be probed: the extension of its file reference first, then each known type. Every probe is a
+ * full container read. To do this at most once per photo, the type code that worked is remembered per
+ * record and modification count, and the content type identified from the first bytes is written back
+ * to the contact, after which downloads no longer need this class at all. The write happens when the
+ * returned stream is closed: the stream holds a pool connection, and borrowing a second one for the
+ * write could wait forever once every connection is held by such a download.
+ */
+@Service
+public class ContainerFormatResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(ContainerFormatResolver.class);
+
+    // Most common first
+    private static final List<ContainerFormat> PROBE_ORDER = List.of(
+            ContainerFormat.JPEG, ContainerFormat.PNG, ContainerFormat.PDF, ContainerFormat.GIF, ContainerFormat.TIFF);
+
+    /**
+     * An opened container and its format (null if the content was not recognized).
+     *
+     * @param recordsContentType Whether the content type is written to the contact when the stream is
+     *                           closed (unless the record changed meanwhile), which changes its
+     *                           modification count
+     */
+    public record Resolution(ContainerStream stream, ContainerFormat format, boolean recordsContentType) {}
+
+    private record Remembered(long version, String typeCode) {}
+
+    private final ContainerFieldService containerFieldService;
+    private final ContactRepository contactRepository;
+    private final ContactCache contactCache;
+    private final Cache<Long, Remembered> remembered;
+
+    public ContainerFormatResolver(ContainerFieldService containerFieldService,
+                                   ContactRepository contactRepository,
+                                   ContactCache contactCache,
+                                   @Value("${contacts.photo-formats.maximum-size:10000}") long maximumSize) {
+        this.containerFieldService = containerFieldService;
+        this.contactRepository = contactRepository;
+        this.contactCache = contactCache;
+        this.remembered = Caffeine.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Open a container of unknown format.
+     *
+     * @param version   The record's modification count, or -1 if unknown (a remembered type code is then tried anyway)
+     * @param reference The container's file reference, whose extension is tried first; may be null
+     * @param tried     A type code already read and found empty (e.g. by a query that guessed it), or null
+     * @return The open container, or null if it is empty in every format
+     */
+    public Resolution open(String tableName, String fieldName, Long recordId, long version, String reference, String tried) {
+        Remembered known = remembered.getIfPresent(recordId);
+        if (known != null && (version < 0 || known.version() == version) && !known.typeCode().equals(tried)) {
+            ContainerStream stream = containerFieldService.openFromContainer(tableName, fieldName, recordId, known.typeCode());
+            if (stream != null) {
+                return new Resolution(stream, ContainerFormat.ofTypeCode(known.typeCode()).orElse(null), false);
+            }
+            remembered.invalidate(recordId);
+        }
+
+        Probe probe = probe(tableName, fieldName, recordId, version, ContainerFormat.ofFileName(reference), tried);
+        return probe == null ? null : resolve(recordId, version, probe);
+    }
+
+    /**
+     * Resolve a container of unknown format that was already read as {@code typeCode}: identify it
+     * from its first bytes and record it as {@link #open} does.
+     */
+    public Resolution accept(String tableName, String fieldName, Long recordId, long version,
+                             String typeCode, ContainerStream stream) {
+        return resolve(recordId, version, identify(tableName, fieldName, recordId, version, typeCode, stream));
+    }
+
+    /**
+     * Identify a container's format from its content, for callers that already checked its file
+     * reference. Nothing is written to the contact.
+     *
+     * @return The format, or empty if the container is empty or its content is not recognized
+     */
+    public Optional<ContainerFormat> detect(String tableName, String fieldName, Long recordId) {
+        Probe probe = probe(tableName, fieldName, recordId, -1, Optional.empty(), null);
+        if (probe == null) {
+            return Optional.empty();
+        }
+        probe.stream().close();
+        return probe.confirmed() ? Optional.of(probe.sniffed()) : Optional.empty();
+    }
+
+    // An open container, the type code it was read as, and the format of its first bytes (null if unknown)
+    private record Probe(ContainerStream stream, String typeCode, ContainerFormat sniffed) {
+        boolean confirmed() {
+            return sniffed != null && sniffed.getTypeCode().equals(typeCode);
+        }
+    }
+
+    private Probe probe(String tableName, String fieldName, Long recordId, long version,
+                        Optional<ContainerFormat> guess, String tried) {
+        List<String> candidates = new ArrayList<>();
+        guess.ifPresent(format -> candidates.add(format.getTypeCode()));
+        for (ContainerFormat format : PROBE_ORDER) {
+            if (!candidates.contains(format.getTypeCode())) {
+                candidates.add(format.getTypeCode());
+            }
+        }
+        candidates.remove(tried);
+
+        for (String typeCode : candidates) {
+            ContainerStream stream = containerFieldService.openFromContainer(tableName, fieldName, recordId, typeCode);
+            if (stream != null) {
+                return identify(tableName, fieldName, recordId, version, typeCode, stream);
+            }
+        }
+        return null;
+    }
+
+    private Probe identify(String tableName, String fieldName, Long recordId, long version,
+                           String typeCode, ContainerStream stream) {
+        remembered.put(recordId, new Remembered(version, typeCode));
+        Optional<ContainerFormat> sniffed = ContainerFormat.sniff(stream);
+        log.info("Resolved container {}.{} of record {} as '{}' (content: {})",
+                 tableName, fieldName, recordId, typeCode, sniffed.map(ContainerFormat::getContentType).orElse("unknown"));
+        return new Probe(stream, typeCode, sniffed.orElse(null));
+    }
+
+    private Resolution resolve(Long recordId, long version, Probe probe) {
+        ContainerFormat format = probe.sniffed() != null
+                ? probe.sniffed() : ContainerFormat.ofTypeCode(probe.typeCode()).orElse(null);
+        // Only a content type that maps back to the type code that was read can be recorded
+        if (!probe.confirmed()) {
+            return new Resolution(probe.stream(), format, false);
+        }
+        ContainerStream stream = probe.stream().whenClosed(() -> recordContentType(recordId, version, probe.sniffed()));
+        return new Resolution(stream, format, true);
+    }
+
+    /**
+     * Forget what was resolved for a record (its container was replaced or cleared).
+     */
+    public void forget(Long recordId) {
+        remembered.invalidate(recordId);
+    }
+
+    // Against the version that was read when it is known, so a photo uploaded meanwhile keeps its content type.
+    // Runs once the container's connection is released.
+    private void recordContentType(Long recordId, long version, ContainerFormat format) {
+        try {
+            Map<String, Object> changes = new HashMap<>();
+            changes.put("photoContentType", format.getContentType());
+            if (version < 0) {
+                contactRepository.updateFields(recordId, changes);
+            } else {
+                contactRepository.updateFieldsIfVersion(recordId, version, changes);
+            }
+            contactCache.evict(recordId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to record content type {} for contact {}: {}", format.getContentType(), recordId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.filemaker.demo.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An open container read, handed from the controller to the response writer.
+ * <p>
+ * The first chunk is read when the stream is opened, so an empty container is known before any
+ * response header is sent, and a container that fits in that chunk has a known length. The rest
+ * is copied through the same buffer by {@link #transferTo}, so heap use does not grow with the
+ * container size. A stream opened by {@link ContainerFieldService#openFromContainer} holds a pool
+ * connection until it is closed.
+ */
+public class ContainerStream implements Closeable {
+
+    private final byte[] head;
+    private final int headLength;
+    private final InputStream rest;
+    private final Runnable release;
+    private final AtomicBoolean closed;
+
+    private ContainerStream(byte[] head, int headLength, InputStream rest, Runnable release, AtomicBoolean closed) {
+        this.head = head;
+        this.headLength = headLength;
+        this.rest = rest;
+        this.release = release;
+        this.closed = closed;
+    }
+
+    /**
+     * Read the first chunk of {@code in} into {@code buffer}; the buffer is reused for the rest.
+     *
+     * @param release Run once on {@link #close}, to free the connection and the buffer
+     */
+    static ContainerStream open(InputStream in, byte[] buffer, Runnable release) throws IOException {
+        int read = in.readNBytes(buffer, 0, buffer.length);
+        // A short first read means the container ended inside the buffer
+        InputStream rest = read < buffer.length ? null : in;
+        return new ContainerStream(buffer, read, rest, release, new AtomicBoolean());
+    }
+
+    /**
+     * Wrap data that is already in memory (drivers without binary streams).
+     */
+    public static ContainerStream of(byte[] data) {
+        return new ContainerStream(data, data.length, null, () -> { }, new AtomicBoolean());
+    }
+
+    /**
+     * This stream with {@code action} run once it is closed, after its connection was released
+     * (e.g. for a write that must not hold a second pool connection). Use the returned stream only;
+     * both share one close, so the connection is never released twice.
+     */
+    public ContainerStream whenClosed(Runnable action) {
+        return new ContainerStream(head, headLength, rest, () -> {
+            release.run();
+            action.run();
+        }, closed);
+    }
+
+    public boolean isEmpty() {
+        return headLength == 0;
+    }
+
+    /**
+     * Whether the container starts with {@code prefix}, checked against the first chunk
+     * (only valid before {@link #transferTo}, which reuses its buffer).
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > headLength) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (head[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The size in bytes if the container fit in the first chunk, otherwise -1
+     */
+    public long knownLength() {
+        return rest == null ? headLength : -1;
+    }
+
+    /**
+     * Copy the container to {@code out}.
+     *
+     * @return The number of bytes written
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        out.write(head, 0, headLength);
+        long written = headLength;
+        if (rest != null) {
+            int read;
+            while ((read = rest.read(head)) != -1) {
+                out.write(head, 0, read);
+                written += read;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Read the container through an input stream instead of {@link #transferTo}, for decoders that
+     * pull their input. The stream is only valid until this container is closed.
+     */
+    public InputStream asInputStream() {
+        InputStream first = new ByteArrayInputStream(head, 0, headLength);
+        return rest == null ? first : new SequenceInputStream(first, rest);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
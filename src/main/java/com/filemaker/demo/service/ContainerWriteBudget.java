@@ -0,0 +1,116 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.UploadBudgetMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the heap held by container writes in flight.
+ * <p>
+ * FileMaker only accepts container data through {@code setBytes}, so every upload is on the heap
+ * in full while its {@code UPDATE} runs. Each write reserves its size here first; once
+ * {@code contacts.upload.memory-budget} is committed, further writes wait (first come, first served)
+ * for up to {@code contacts.upload.budget-wait} and are then rejected. A single write larger than
+ * the whole budget is rejected at once.
+ */
+@Component
+public class ContainerWriteBudget {
+
+    // Permits are KB, so budgets beyond 2 GB still fit in an int
+    private static final int UNIT = 1024;
+
+    private final Semaphore permits;
+    private final int totalPermits;
+    private final long waitNanos;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public ContainerWriteBudget(@Value("${contacts.upload.memory-budget:256MB}") DataSize budget,
+                                @Value("${contacts.upload.budget-wait:10s}") Duration wait) {
+        this.totalPermits = (int) Math.max(1, budget.toBytes() / UNIT);
+        this.permits = new Semaphore(totalPermits, true);
+        this.waitNanos = wait.toNanos();
+    }
+
+    /**
+     * Reserve {@code bytes} of the budget, waiting for running writes to finish if needed.
+     * Close the reservation once the write is done.
+     *
+     * @throws BudgetExceededException if the write is larger than the budget, or no room was freed in time
+     */
+    public Reservation reserve(long bytes) {
+        int needed = (int) Math.min(totalPermits + 1L, Math.max(1, (bytes + UNIT - 1) / UNIT));
+        if (needed > totalPermits) {
+            rejected.increment();
+            throw new BudgetExceededException("Upload of " + bytes + " bytes exceeds the memory budget", false);
+        }
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(needed, waitNanos, TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new BudgetExceededException("Too many uploads in progress", true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new BudgetExceededException("Interrupted while waiting for upload memory", true);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        return new Reservation(needed);
+    }
+
+    public UploadBudgetMetrics metrics() {
+        UploadBudgetMetrics metrics = new UploadBudgetMetrics();
+        metrics.setBudgetBytes((long) totalPermits * UNIT);
+        metrics.setReservedBytes((long) (totalPermits - permits.availablePermits()) * UNIT);
+        metrics.setWaiting(waiting.get());
+        metrics.setRejected(rejected.sum());
+        return metrics;
+    }
+
+    /**
+     * A share of the budget; released once on {@link #close}.
+     */
+    public class Reservation implements AutoCloseable {
+        private int held;
+
+        private Reservation(int held) {
+            this.held = held;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (held > 0) {
+                permits.release(held);
+                held = 0;
+            }
+        }
+    }
+
+    /**
+     * The write could not be admitted. {@link #isRetryable()} is false when it can never fit.
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean retryable;
+
+        public BudgetExceededException(String message, boolean retryable) {
+            super(message);
+            this.retryable = retryable;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+}
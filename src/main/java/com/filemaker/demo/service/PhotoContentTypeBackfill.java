@@ -0,0 +1,338 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.BackfillProgress;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background job that fills in {@code photo_content_type} for contacts whose photo was put in the
+ * container from FileMaker itself, so their downloads stop going through {@link ContainerFormatResolver}.
+ * <p>
+ * The contact table is walked in ID ranges of {@code contacts.photo-backfill.chunk-size}, by
+ * {@code contacts.photo-backfill.workers} threads that each hold at most one pool connection at a time.
+ * The format comes from the extension of the container's file reference; only when that says nothing
+ * is the container itself read and its first bytes identified. The content types found in a range are
+ * written with one {@code UPDATE ... WHERE id IN (...)} per type, which only fills empty values, so a
+ * photo uploaded meanwhile keeps its own.
+ * <p>
+ * The job yields to requests: before each contact it waits while fewer than
+ * {@code contacts.photo-backfill.reserved-connections} pool connections are free, and it sleeps
+ * {@code contacts.photo-backfill.chunk-delay} between ranges. It can be paused and started again
+ * from where it stopped; after a restart, pass the reported {@code nextId} to carry on.
+ */
+@Service
+public class PhotoContentTypeBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoContentTypeBackfill.class);
+
+    private static final String TABLE_NAME = "contact";
+    private static final String FIELD_NAME = "photo_content";
+
+    static final String MAX_ID_SQL = "SELECT MAX(id) FROM contact";
+    static final String CANDIDATES_SQL = "SELECT id FROM contact WHERE id >= ? AND id < ? "
+            + "AND photo_content_type IS NULL AND photo_content IS NOT NULL ORDER BY id";
+
+    // Same bound as the repository's IN (...) chunks
+    private static final int MAX_IN_LIST = 200;
+    private static final long THROTTLE_POLL_MILLIS = 100;
+
+    public enum State { IDLE, RUNNING, PAUSED, COMPLETED, FAILED }
+
+    private final DataSource dataSource;
+    private final BasicDataSource pool;
+    private final ContainerFieldService containerFieldService;
+    private final ContainerFormatResolver formatResolver;
+    private final ContactCache contactCache;
+    private final int workers;
+    private final int chunkSize;
+    private final Duration chunkDelay;
+    private final int reservedConnections;
+    private final boolean autoStart;
+    private final ExecutorService executor;
+
+    // Run state, guarded by this
+    private State state = State.IDLE;
+    private long maxId;
+    private long cursor;
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private int activeWorkers;
+    private long runningSinceNanos;
+    private long elapsedNanos;
+    private String lastError;
+    private volatile boolean running;
+
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder updated = new LongAdder();
+    private final LongAdder sniffed = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+    private final LongAdder throttledMillis = new LongAdder();
+
+    public PhotoContentTypeBackfill(DataSource dataSource,
+                                    ContainerFieldService containerFieldService,
+                                    ContainerFormatResolver formatResolver,
+                                    ContactCache contactCache,
+                                    @Value("${contacts.photo-backfill.workers:2}") int workers,
+                                    @Value("${contacts.photo-backfill.chunk-size:200}") int chunkSize,
+                                    @Value("${contacts.photo-backfill.chunk-delay:200ms}") Duration chunkDelay,
+                                    @Value("${contacts.photo-backfill.reserved-connections:4}") int reservedConnections,
+                                    @Value("${contacts.photo-backfill.auto-start:false}") boolean autoStart) {
+        this.dataSource = dataSource;
+        // Pool pressure is only known for DBCP; other data sources are not throttled
+        this.pool = dataSource instanceof BasicDataSource basic ? basic : null;
+        this.containerFieldService = containerFieldService;
+        this.formatResolver = formatResolver;
+        this.contactCache = contactCache;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.chunkDelay = chunkDelay;
+        this.reservedConnections = reservedConnections;
+        this.autoStart = autoStart;
+        this.executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "photo-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if (autoStart) {
+            start(null);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Start a run, or resume a paused one.
+     *
+     * @param fromId First contact ID to examine; null to resume a paused run where it stopped, or
+     *               otherwise start from the beginning
+     * @return false if a run is still in progress (or still finishing its ranges after a pause), or the
+     *         table could not be read
+     */
+    public synchronized boolean start(Long fromId) {
+        if (activeWorkers > 0) {
+            return false;
+        }
+        try {
+            maxId = queryMaxId();
+        } catch (SQLException e) {
+            log.warn("Photo content-type backfill could not start: {}", e.getMessage());
+            state = State.FAILED;
+            lastError = e.getMessage();
+            return false;
+        }
+        if (state != State.PAUSED && state != State.FAILED) {
+            // A new run
+            cursor = 0;
+            elapsedNanos = 0;
+            for (LongAdder counter : List.of(chunks, scanned, updated, sniffed, unresolved, throttledMillis)) {
+                counter.reset();
+            }
+        }
+        if (fromId != null) {
+            cursor = fromId;
+        }
+        lastError = null;
+        state = State.RUNNING;
+        running = true;
+        runningSinceNanos = System.nanoTime();
+        activeWorkers = workers;
+        log.info("Photo content-type backfill running from ID {} to {} with {} workers", cursor, maxId, workers);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+        return true;
+    }
+
+    /**
+     * Stop claiming ranges; the ranges in progress are finished first.
+     */
+    public synchronized void pause() {
+        if (state == State.RUNNING) {
+            running = false;
+            state = State.PAUSED;
+        }
+    }
+
+    public synchronized BackfillProgress progress() {
+        long elapsed = elapsedNanos + (activeWorkers > 0 ? System.nanoTime() - runningSinceNanos : 0);
+        BackfillProgress progress = new BackfillProgress();
+        progress.setState(state.name());
+        progress.setActiveWorkers(activeWorkers);
+        progress.setNextId(checkpoint());
+        progress.setMaxId(maxId);
+        progress.setChunks(chunks.sum());
+        progress.setScanned(scanned.sum());
+        progress.setUpdated(updated.sum());
+        progress.setSniffed(sniffed.sum());
+        progress.setUnresolved(unresolved.sum());
+        progress.setThrottledMillis(throttledMillis.sum());
+        progress.setElapsedMillis(elapsed / 1_000_000);
+        progress.setRecordsPerSecond(elapsed == 0 ? 0 : scanned.sum() * 1e9 / elapsed);
+        progress.setLastError(lastError);
+        return progress;
+    }
+
+    private void work() {
+        try {
+            long from;
+            while ((from = claim()) >= 0) {
+                try {
+                    processChunk(from, from + chunkSize);
+                    chunks.increment();
+                } catch (SQLException | RuntimeException e) {
+                    log.warn("Photo content-type backfill failed in IDs {} to {}: {}", from, from + chunkSize - 1, e.getMessage(), e);
+                    fail(from, e);
+                    return;
+                } finally {
+                    inFlight.remove(from);
+                }
+                Thread.sleep(chunkDelay.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished();
+        }
+    }
+
+    // The start of the next range to do, or -1 when there is none or the run was stopped
+    private synchronized long claim() {
+        if (!running || cursor > maxId) {
+            return -1;
+        }
+        long from = cursor;
+        cursor += chunkSize;
+        inFlight.add(from);
+        return from;
+    }
+
+    // Ranges below the lowest one in progress are done
+    private synchronized long checkpoint() {
+        return inFlight.isEmpty() ? cursor : Math.min(cursor, inFlight.first());
+    }
+
+    // Resuming starts again with the failed range; ranges done after it are cheap to walk again
+    private synchronized void fail(long from, Exception e) {
+        running = false;
+        state = State.FAILED;
+        lastError = e.getMessage();
+        cursor = Math.min(cursor, from);
+    }
+
+    private synchronized void finished() {
+        if (--activeWorkers > 0) {
+            return;
+        }
+        elapsedNanos += System.nanoTime() - runningSinceNanos;
+        if (state == State.RUNNING) {
+            running = false;
+            state = State.COMPLETED;
+        }
+        log.info("Photo content-type backfill {}: {} examined, {} updated, {} unidentified, next ID {}",
+                 state.name().toLowerCase(), scanned.sum(), updated.sum(), unresolved.sum(), checkpoint());
+    }
+
+    private void processChunk(long from, long to) throws SQLException, InterruptedException {
+        // The connection is returned before the containers are read, so a worker never holds two
+        List<Long> ids = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(CANDIDATES_SQL)) {
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+
+        Map<String, List<Long>> idsByContentType = new HashMap<>();
+        for (Long id : ids) {
+            throttle();
+            scanned.increment();
+            Optional<ContainerFormat> format = ContainerFormat.ofFileName(
+                    containerFieldService.getContainerReference(TABLE_NAME, FIELD_NAME, id));
+            if (format.isEmpty()) {
+                sniffed.increment();
+                format = formatResolver.detect(TABLE_NAME, FIELD_NAME, id);
+            }
+            if (format.isPresent()) {
+                idsByContentType.computeIfAbsent(format.get().getContentType(), type -> new ArrayList<>()).add(id);
+            } else {
+                unresolved.increment();
+            }
+        }
+
+        for (Map.Entry<String, List<Long>> entry : idsByContentType.entrySet()) {
+            throttle();
+            updated.add(recordContentType(entry.getKey(), entry.getValue()));
+            contactCache.evictAll(entry.getValue());
+        }
+    }
+
+    private int recordContentType(String contentType, List<Long> ids) throws SQLException {
+        int count = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+                List<Long> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+                String sql = "UPDATE contact SET photo_content_type = ? WHERE photo_content_type IS NULL AND id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setString(1, contentType);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setLong(i + 2, chunk.get(i));
+                    }
+                    count += ps.executeUpdate();
+                }
+            }
+        }
+        return count;
+    }
+
+    // Wait while requests need the pool
+    private void throttle() throws InterruptedException {
+        while (running && pool != null && pool.getMaxTotal() - pool.getNumActive() < reservedConnections) {
+            Thread.sleep(THROTTLE_POLL_MILLIS);
+            throttledMillis.add(THROTTLE_POLL_MILLIS);
+        }
+    }
+
+    private long queryMaxId() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(MAX_ID_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
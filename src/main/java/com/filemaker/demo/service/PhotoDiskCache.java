@@ -0,0 +1,498 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.PhotoCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local disk cache of container downloads, so repeated photo requests do not go to FileMaker.
+ * <p>
+ * Entries are keyed by contact, format and the record's modification count ({@code ROWMODID}):
+ * any change to the record, including one made in FileMaker itself, makes older entries
+ * unreachable. Files are named by the SHA-256 of their content, so identical photos (the same
+ * picture under two formats, or unchanged by an unrelated edit) are stored once. The least recently
+ * used files are deleted once {@code contacts.photo-cache.maximum-size} is exceeded; photos larger
+ * than an eighth of that are not cached.
+ * <p>
+ * Files handed to a reader that opens them by name later ({@link #pin}) outlive their eviction or
+ * invalidation until released, plus {@link #RELEASE_DELAY}.
+ * <p>
+ * The index is held in memory; files left by an earlier run are deleted at startup.
+ */
+@Service
+public class PhotoDiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoDiskCache.class);
+
+    private static final String FILE_SUFFIX = ".photo";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Tomcat's sendfile opens the file once the request has completed, after the pin was released
+    static final Duration RELEASE_DELAY = Duration.ofSeconds(30);
+
+    private record Key(Long contactId, String format, long version) {}
+
+    // A key's file (by content hash) and the content type it was served with
+    private record Entry(String hash, String contentType) {}
+
+    /**
+     * A cached photo: its file, size in bytes and content type.
+     */
+    public record CachedPhoto(Path path, long size, String contentType) {}
+
+    private static class Blob {
+        final Path path;
+        final long size;
+        final Set<Key> keys = new HashSet<>();
+
+        Blob(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maximumSize;
+    private final long maximumEntrySize;
+
+    // Guarded by this; blobs is in access order, eldest first
+    private final Map<Key, Entry> index = new HashMap<>();
+    private final LinkedHashMap<String, Blob> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    // Pins per file, and the System.nanoTime() until which released files are still held (in that
+    // order). Files deleted from the cache while pinned or held wait in retired.
+    private final Map<Path, Integer> pins = new HashMap<>();
+    private final LinkedHashMap<Path, Long> heldUntil = new LinkedHashMap<>();
+    private final Set<Path> retired = new HashSet<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PhotoDiskCache(@Value("${contacts.photo-cache.enabled:true}") boolean enabled,
+                          @Value("${contacts.photo-cache.directory:${java.io.tmpdir}/contacts-photo-cache}") Path directory,
+                          @Value("${contacts.photo-cache.maximum-size:1GB}") DataSize maximumSize) {
+        this.directory = directory;
+        this.maximumSize = maximumSize.toBytes();
+        this.maximumEntrySize = this.maximumSize / 8;
+        this.enabled = enabled && prepare(directory);
+    }
+
+    private static boolean prepare(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*{" + FILE_SUFFIX + "," + TEMP_SUFFIX + "}")) {
+                for (Path file : leftovers) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Photo cache directory {} is not usable, caching disabled: {}", directory, e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Look up a photo. Callers report the bytes they actually sent with {@link #served}.
+     *
+     * @param format  Requested format, or null for the stored one
+     * @param version The contact's modification count
+     */
+    public Optional<CachedPhoto> get(Long contactId, String format, long version) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Key key = new Key(contactId, normalize(format), version);
+        Entry entry;
+        Blob blob;
+        synchronized (this) {
+            entry = index.get(key);
+            blob = entry == null ? null : blobs.get(entry.hash());
+        }
+        // Checked outside the lock, so other lookups and fills do not wait on the file system
+        if (blob != null && !Files.isRegularFile(blob.path)) {
+            synchronized (this) {
+                // Deleted behind our back; drop it unless it was replaced or removed meanwhile
+                if (blobs.get(entry.hash()) == blob) {
+                    remove(entry.hash(), blob);
+                }
+            }
+            blob = null;
+        }
+        if (blob == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(new CachedPhoto(blob.path, blob.size, entry.contentType()));
+    }
+
+    /**
+     * Count a cached photo as sent to a client.
+     */
+    public void served(long bytes) {
+        bytesServed.add(bytes);
+    }
+
+    /**
+     * Keep a cached photo's file on disk until {@link #release}d, even if it is evicted or invalidated
+     * meanwhile, for a reader that opens it by name later (Tomcat's sendfile).
+     *
+     * @return false if the file is no longer in the cache
+     */
+    public synchronized boolean pin(CachedPhoto photo) {
+        Blob blob = blobs.get(hashOf(photo.path()));
+        if (blob == null || !blob.path.equals(photo.path())) {
+            return false;
+        }
+        pins.merge(photo.path(), 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * Release a {@link #pin}. A file deleted from the cache meanwhile stays on disk for another
+     * {@link #RELEASE_DELAY}, as the reader may open it only after the release.
+     */
+    public synchronized void release(CachedPhoto photo) {
+        if (pins.computeIfPresent(photo.path(), (path, pinned) -> pinned == 1 ? null : pinned - 1) == null) {
+            // Moved to the end, so the entries are ordered by expiry
+            heldUntil.remove(photo.path());
+            heldUntil.put(photo.path(), System.nanoTime() + RELEASE_DELAY.toNanos());
+        }
+        sweep();
+    }
+
+    /**
+     * Whether an entry exists, without counting a hit or miss (for background fills).
+     */
+    public synchronized boolean contains(Long contactId, String format, long version) {
+        return enabled && index.containsKey(new Key(contactId, normalize(format), version));
+    }
+
+    /**
+     * Wrap a download's output so the bytes written to it also fill the cache. Call
+     * {@link Fill#commit} once the whole photo was written; closing an uncommitted fill discards it.
+     * Cache-side failures are logged and never affect {@code out}.
+     *
+     * @param contentType Returned with later hits, so they need no other lookup
+     */
+    public Fill fill(OutputStream out, Long contactId, String format, long version, String contentType) {
+        return new Fill(out, new Key(contactId, normalize(format), version), contentType, false);
+    }
+
+    /**
+     * Read a photo into the cache without serving it, so that the requests waiting for it can all be
+     * served from the file. Stops reading as soon as the photo turns out not cacheable (too large).
+     *
+     * @return The cached photo, or empty if it was not cached
+     * @throws IOException If reading the photo failed
+     */
+    public Optional<CachedPhoto> load(ContainerStream photo, Long contactId, String format, long version,
+                                      String contentType) throws IOException {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        try (Fill fill = new Fill(OutputStream.nullOutputStream(), new Key(contactId, normalize(format), version),
+                contentType, true)) {
+            photo.transferTo(fill);
+            fill.commit();
+            return Optional.ofNullable(fill.stored);
+        } catch (NotCacheableException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Cache a photo already held in memory, e.g. a rendered thumbnail under its variant's format key.
+     */
+    public void put(Long contactId, String format, long version, String contentType, byte[] data) {
+        try (Fill fill = fill(OutputStream.nullOutputStream(), contactId, format, version, contentType)) {
+            fill.write(data, 0, data.length);
+            fill.commit();
+        } catch (IOException e) {
+            // Only the cache file can fail; fill already logged and discarded it
+        }
+    }
+
+    /**
+     * Drop every cached format and version of a contact's photo.
+     */
+    public synchronized void invalidate(Long contactId) {
+        Iterator<Map.Entry<Key, Entry>> entries = index.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Key, Entry> entry = entries.next();
+            if (entry.getKey().contactId().equals(contactId)) {
+                entries.remove();
+                unlink(entry.getKey(), entry.getValue().hash());
+            }
+        }
+    }
+
+    public PhotoCacheMetrics metrics() {
+        PhotoCacheMetrics metrics = new PhotoCacheMetrics();
+        synchronized (this) {
+            metrics.setEntries(index.size());
+            metrics.setFiles(blobs.size());
+            metrics.setSizeBytes(size);
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        metrics.setMaximumSizeBytes(maximumSize);
+        metrics.setHits(hitCount);
+        metrics.setMisses(missCount);
+        metrics.setHitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        metrics.setBytesServed(bytesServed.sum());
+        metrics.setEvictions(evictions.sum());
+        return metrics;
+    }
+
+    private static String normalize(String format) {
+        return format == null ? "*" : format.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static String hashOf(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(FILE_SUFFIX) ? name.substring(0, name.length() - FILE_SUFFIX.length()) : name;
+    }
+
+    private synchronized CachedPhoto store(Key key, Path temp, String hash, long length, String contentType) throws IOException {
+        Blob blob = blobs.get(hash);
+        if (blob == null) {
+            Path target = directory.resolve(hash + FILE_SUFFIX);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // Same content as a retired file of this name, which is live again
+            retired.remove(target);
+            blob = new Blob(target, length);
+            blobs.put(hash, blob);
+            size += length;
+        } else {
+            Files.deleteIfExists(temp);
+        }
+        Entry previous = index.put(key, new Entry(hash, contentType));
+        if (previous != null && !previous.hash().equals(hash)) {
+            unlink(key, previous.hash());
+        }
+        blob.keys.add(key);
+
+        // The new file is the most recently used, so it goes last
+        Iterator<Blob> eldest = blobs.values().iterator();
+        while (size > maximumSize && eldest.hasNext()) {
+            Blob evicted = eldest.next();
+            eldest.remove();
+            evicted.keys.forEach(index::remove);
+            delete(evicted);
+            evictions.increment();
+        }
+        sweep();
+        // Not evicted itself: it is the most recently used, and at most an eighth of the limit
+        return new CachedPhoto(blob.path, blob.size, contentType);
+    }
+
+    // Callers hold the lock and have removed the key from the index
+    private void unlink(Key key, String hash) {
+        Blob blob = blobs.get(hash);
+        if (blob != null) {
+            blob.keys.remove(key);
+            if (blob.keys.isEmpty()) {
+                blobs.remove(hash);
+                delete(blob);
+            }
+        }
+    }
+
+    // Callers hold the lock
+    private void remove(String hash, Blob blob) {
+        blobs.remove(hash);
+        blob.keys.forEach(index::remove);
+        size -= blob.size;
+    }
+
+    // Callers hold the lock and have removed the blob from the map
+    private void delete(Blob blob) {
+        size -= blob.size;
+        if (pins.containsKey(blob.path) || heldUntil.containsKey(blob.path)) {
+            retired.add(blob.path);
+        } else {
+            deleteFile(blob.path);
+        }
+    }
+
+    // Callers hold the lock: end expired holds, deleting their file if it was retired meanwhile
+    private void sweep() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> held = heldUntil.entrySet().iterator();
+        while (held.hasNext()) {
+            Map.Entry<Path, Long> file = held.next();
+            if (now - file.getValue() < 0) {
+                break;
+            }
+            held.remove();
+            if (!pins.containsKey(file.getKey()) && retired.remove(file.getKey())) {
+                deleteFile(file.getKey());
+            }
+        }
+    }
+
+    private static void deleteFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached photo {}: {}", path, e.getMessage());
+        }
+    }
+
+    // Ends a load() once the photo cannot be cached any more
+    private static class NotCacheableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NotCacheableException() {
+            super("Not cacheable");
+        }
+    }
+
+    /**
+     * Output that passes a download through to the client and copies it into a cache file.
+     */
+    public class Fill extends OutputStream {
+        private final OutputStream out;
+        private final Key key;
+        private final String contentType;
+        // Only filling, with no client: fail writes once the cache file is abandoned
+        private final boolean stopWhenAbandoned;
+        private CachedPhoto stored;
+        private Path temp;
+        private OutputStream file;
+        private MessageDigest digest;
+        private long written;
+        private boolean done;
+
+        private Fill(OutputStream out, Key key, String contentType, boolean stopWhenAbandoned) {
+            this.out = out;
+            this.key = key;
+            this.contentType = contentType;
+            this.stopWhenAbandoned = stopWhenAbandoned;
+            if (!enabled) {
+                return;
+            }
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+                temp = Files.createTempFile(directory, "fill-", TEMP_SUFFIX);
+                file = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), digest);
+            } catch (IOException | NoSuchAlgorithmException e) {
+                abandon(e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (file == null) {
+                if (stopWhenAbandoned) {
+                    throw new NotCacheableException();
+                }
+                return;
+            }
+            written += len;
+            if (written > maximumEntrySize) {
+                // Too large to cache; keep serving
+                abandon(null);
+            } else {
+                try {
+                    file.write(b, off, len);
+                } catch (IOException e) {
+                    abandon(e);
+                }
+            }
+            if (file == null && stopWhenAbandoned) {
+                throw new NotCacheableException();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * The whole photo was written: add it to the cache.
+         */
+        public void commit() {
+            if (file == null || done) {
+                return;
+            }
+            done = true;
+            try {
+                file.close();
+                file = null;
+                stored = store(key, temp, HexFormat.of().formatHex(digest.digest()), written, contentType);
+            } catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        /**
+         * Discard the cache file unless committed; the client stream is left open.
+         */
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                abandon(null);
+            }
+        }
+
+        private void abandon(Exception cause) {
+            if (cause != null) {
+                log.warn("Not caching photo of contact {}: {}", key.contactId(), cause.getMessage());
+            }
+            try {
+                if (file != null) {
+                    file.close();
+                }
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                log.debug("Failed to discard photo cache file {}: {}", temp, e.getMessage());
+            }
+            file = null;
+        }
+    }
+}
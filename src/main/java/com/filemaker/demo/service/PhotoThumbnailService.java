@@ -0,0 +1,359 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.ThumbnailMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scaled-down variants of contact photos (e.g. 64 px avatars), so list views do not download the originals.
+ * <p>
+ * Variants are rendered with ImageIO on a bounded pool ({@code contacts.photo-thumbnails.workers} threads,
+ * {@code queue-capacity} waiting renders) and kept in the {@link PhotoDiskCache} under a format key of
+ * their own, so they are keyed by the record's modification count and dropped with the photo. A missing
+ * variant is rendered on its first request; concurrent requests for it share one render. After an upload,
+ * the {@code pregenerate} sizes are rendered in the background.
+ * <p>
+ * Large originals are decoded with subsampling, at no less than twice the variant's size, so the
+ * decoded image stays small whatever the photo's resolution. Variants with transparency are PNGs,
+ * the others JPEGs. Originals are never scaled up.
+ */
+@Service
+public class PhotoThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoThumbnailService.class);
+
+    private static final String TABLE_NAME = "contact";
+    private static final String FIELD_NAME = "photo_content";
+    private static final String CONTENT_TYPE_COLUMN = "photo_content_type";
+    private static final int UNRENDERABLE_MAXIMUM_SIZE = 10_000;
+
+    /**
+     * A rendered variant; shared between the requests that waited for it, do not modify.
+     */
+    public record Thumbnail(byte[] data, String contentType) {}
+
+    /**
+     * No worker picked up the render in time, or the queue is full; retry later.
+     */
+    public static class RenderRejectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public RenderRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private record Key(Long contactId, int width, int height, long version) {}
+
+    private final ContainerFieldService containerFieldService;
+    private final ContainerFormatResolver formatResolver;
+    private final ContactCache contactCache;
+    private final PhotoDiskCache photoDiskCache;
+    private final SingleFlight<Key, Optional<Thumbnail>> renders;
+    private final int maxSize;
+    private final int queueCapacity;
+    private final Duration renderTimeout;
+    private final int[] pregenerateSizes;
+    private final ThreadPoolExecutor executor;
+    // Contact -> version whose photo could not be decoded (e.g. a PDF), so it is not read again
+    private final Cache<Long, Long> unrenderable;
+
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder unrenderableCount = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder pregenerated = new LongAdder();
+    private final LongAdder pregenerationsSkipped = new LongAdder();
+
+    public PhotoThumbnailService(ContainerFieldService containerFieldService,
+                                 ContainerFormatResolver formatResolver,
+                                 ContactCache contactCache,
+                                 PhotoDiskCache photoDiskCache,
+                                 SingleFlightRegistry singleFlightRegistry,
+                                 @Value("${contacts.photo-thumbnails.workers:2}") int workers,
+                                 @Value("${contacts.photo-thumbnails.queue-capacity:50}") int queueCapacity,
+                                 @Value("${contacts.photo-thumbnails.render-timeout:10s}") Duration renderTimeout,
+                                 @Value("${contacts.photo-thumbnails.max-size:1024}") int maxSize,
+                                 @Value("${contacts.photo-thumbnails.pregenerate:64}") int[] pregenerateSizes) {
+        this.containerFieldService = containerFieldService;
+        this.formatResolver = formatResolver;
+        this.contactCache = contactCache;
+        this.photoDiskCache = photoDiskCache;
+        this.renders = singleFlightRegistry.create("photo-thumbnail");
+        this.maxSize = maxSize;
+        this.queueCapacity = queueCapacity;
+        this.renderTimeout = renderTimeout;
+        this.pregenerateSizes = pregenerateSizes;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "photo-thumbnail");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.unrenderable = Caffeine.newBuilder().maximumSize(UNRENDERABLE_MAXIMUM_SIZE).build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Largest width or height a variant may be requested at.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The {@link PhotoDiskCache} format key of a variant.
+     *
+     * @param width  Maximum width, 0 for any
+     * @param height Maximum height, 0 for any
+     */
+    public static String variant(int width, int height) {
+        return "THUMB-" + width + "X" + height;
+    }
+
+    /**
+     * Render a variant on the worker pool and wait for it, or join the identical render in flight.
+     * The caller has already looked in the disk cache.
+     *
+     * @param width   Maximum width, 0 for any
+     * @param height  Maximum height, 0 for any
+     * @param version The contact's modification count, or -1 if unknown (the variant is then only
+     *                shared with concurrent requests)
+     * @return The variant, or empty if the contact has no photo or it cannot be decoded as an image
+     * @throws RenderRejectedException if the queue is full, the render took longer than
+     *                                 {@code contacts.photo-thumbnails.render-timeout}, or the original
+     *                                 could not be opened because all container streams were in use
+     */
+    public Optional<Thumbnail> render(Long contactId, int width, int height, long version) {
+        if (version >= 0 && Objects.equals(unrenderable.getIfPresent(contactId), version)) {
+            return Optional.empty();
+        }
+        return renders.execute(new Key(contactId, width, height, version), () -> {
+            Future<Optional<Thumbnail>> future;
+            try {
+                future = executor.submit(() -> renderNow(contactId, width, height));
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw new RenderRejectedException("Thumbnail queue is full");
+            }
+            try {
+                return future.get(renderTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // The render goes on and fills the disk cache for the next request
+                rejected.increment();
+                throw new RenderRejectedException("Thumbnail not rendered within " + renderTimeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RenderRejectedException("Interrupted while waiting for the thumbnail");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ContainerFieldService.StreamsBusyException) {
+                    rejected.increment();
+                    throw new RenderRejectedException("No container stream free for the original photo");
+                }
+                log.warn("Failed to render thumbnail of contact {}: {}", contactId, e.getCause().getMessage(), e.getCause());
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * Queue the {@code pregenerate} variants of a contact's new photo; returns at once. Skipped when
+     * the disk cache is off (there would be nowhere to keep them) or the queue is half full, so
+     * background renders never crowd out requests.
+     */
+    public void pregenerate(Long contactId) {
+        if (pregenerateSizes.length == 0 || !photoDiskCache.isEnabled()) {
+            return;
+        }
+        if (executor.getQueue().remainingCapacity() <= queueCapacity / 2) {
+            pregenerationsSkipped.increment();
+            return;
+        }
+        try {
+            executor.execute(() -> contactCache.findVersionById(contactId).ifPresent(version -> {
+                long modificationCount = version.getModificationCount();
+                for (int size : pregenerateSizes) {
+                    if (photoDiskCache.contains(contactId, variant(size, size), modificationCount)) {
+                        continue;
+                    }
+                    // Runs on this worker, but still shares the render with requests that arrive meanwhile.
+                    // A render already in flight is skipped, not joined: it may be queued behind this task
+                    Key key = new Key(contactId, size, size, modificationCount);
+                    try {
+                        renders.tryExecute(key, () -> renderNow(contactId, size, size));
+                    } catch (RuntimeException e) {
+                        log.debug("Pregenerating thumbnail {} of contact {} failed: {}", size, contactId, e.getMessage());
+                    }
+                }
+            }));
+            pregenerated.increment();
+        } catch (RejectedExecutionException e) {
+            pregenerationsSkipped.increment();
+        }
+    }
+
+    public ThumbnailMetrics metrics() {
+        ThumbnailMetrics metrics = new ThumbnailMetrics();
+        long renderCount = rendered.sum();
+        metrics.setRendered(renderCount);
+        metrics.setAverageRenderMillis(renderCount == 0 ? 0 : renderNanos.sum() / 1_000_000.0 / renderCount);
+        metrics.setUnrenderable(unrenderableCount.sum());
+        metrics.setRejected(rejected.sum());
+        metrics.setPregenerated(pregenerated.sum());
+        metrics.setPregenerationsSkipped(pregenerationsSkipped.sum());
+        metrics.setQueued(executor.getQueue().size());
+        metrics.setActive(executor.getActiveCount());
+        return metrics;
+    }
+
+    // On a worker: one statement for the original, then decode, scale, encode and cache
+    private Optional<Thumbnail> renderNow(Long contactId, int width, int height) {
+        long started = System.nanoTime();
+        var row = containerFieldService.openWithMetadata(TABLE_NAME, FIELD_NAME, CONTENT_TYPE_COLUMN, contactId, null);
+        if (row == null) {
+            return Optional.empty();
+        }
+        ContainerStream source = row.stream();
+        long version = row.version();
+        if (source == null && ContainerFormat.ofContentType(row.contentType()).isEmpty()) {
+            // No content type and not a JPEG: find a type the container converts to
+            var resolution = formatResolver.open(TABLE_NAME, FIELD_NAME, contactId, version, row.reference(), "JPEG");
+            source = resolution == null ? null : resolution.stream();
+            if (resolution != null && resolution.recordsContentType()) {
+                // Recording it when the source closes changes the record, so this version's variant would never be looked up
+                version = -1;
+            }
+        }
+        if (source == null) {
+            return Optional.empty();
+        }
+
+        BufferedImage image;
+        try (ContainerStream original = source) {
+            image = decode(original, width, height);
+        } catch (IOException | RuntimeException e) {
+            log.info("Cannot decode photo of contact {}: {}", contactId, e.getMessage());
+            image = null;
+        }
+        if (image == null) {
+            unrenderable.put(contactId, row.version());
+            unrenderableCount.increment();
+            return Optional.empty();
+        }
+
+        Thumbnail thumbnail;
+        try {
+            thumbnail = encode(scale(image, width, height));
+        } catch (IOException e) {
+            log.warn("Failed to encode thumbnail of contact {}: {}", contactId, e.getMessage());
+            return Optional.empty();
+        }
+        rendered.increment();
+        renderNanos.add(System.nanoTime() - started);
+        if (version >= 0) {
+            photoDiskCache.put(contactId, variant(width, height), version, thumbnail.contentType(), thumbnail.data());
+        }
+        return Optional.of(thumbnail);
+    }
+
+    // Null if no ImageIO reader recognizes the content
+    private static BufferedImage decode(ContainerStream source, int width, int height) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(source.asInputStream())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                double factor = scaleFactor(reader.getWidth(0), reader.getHeight(0), width, height);
+                // Keep at least twice the target resolution; scale() smooths the rest
+                int subsampling = Math.max(1, (int) (0.5 / factor));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        double factor = scaleFactor(image.getWidth(), image.getHeight(), width, height);
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        // Halve at most per step: a single bilinear step skips pixels and aliases
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(targetWidth, currentWidth / 2);
+            currentHeight = Math.max(targetHeight, currentHeight / 2);
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (currentWidth != targetWidth || currentHeight != targetHeight);
+        return current;
+    }
+
+    private static Thumbnail encode(BufferedImage image) throws IOException {
+        boolean alpha = image.getColorModel().hasAlpha();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, alpha ? "png" : "jpeg", out)) {
+            throw new IOException("No ImageIO writer for " + (alpha ? "PNG" : "JPEG"));
+        }
+        return new Thumbnail(out.toByteArray(), alpha ? ContainerFormat.PNG.getContentType() : ContainerFormat.JPEG.getContentType());
+    }
+
+    // Fit within width x height (0 = unbounded), never enlarging
+    private static double scaleFactor(int sourceWidth, int sourceHeight, int width, int height) {
+        double factor = 1;
+        if (width > 0) {
+            factor = Math.min(factor, (double) width / sourceWidth);
+        }
+        if (height > 0) {
+            factor = Math.min(factor, (double) height / sourceHeight);
+        }
+        return factor;
+    }
+}
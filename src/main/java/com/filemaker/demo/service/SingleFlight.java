@@ -0,0 +1,122 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.SingleFlightMetrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads: while a read for a key is in flight, further callers
+ * with the same key wait for it and get the same result (or exception) instead of running their own.
+ * Nothing is kept after the read completes, so this is not a cache - a caller arriving after the
+ * read finished runs a new one. Results are shared between callers and must not be modified.
+ * <p>
+ * Create instances with {@link SingleFlightRegistry#create(String)} so their counters are reported.
+ *
+ * @param <K> Key identifying identical reads
+ * @param <V> Result type
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final boolean enabled;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+
+    SingleFlight(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Run the read, or join the identical one already in flight.
+     * Exceptions of the read are rethrown as-is to every caller sharing it.
+     */
+    public V execute(K key, Supplier<V> read) {
+        calls.increment();
+        if (!enabled) {
+            executions.increment();
+            return read.get();
+        }
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return join(running);
+        }
+
+        executions.increment();
+        try {
+            V value = read.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Run the read unless an identical one is already in flight, without waiting for it: for
+     * callers that must not block (e.g. background work on the pool the read itself needs).
+     *
+     * @return false if the read was left to the one in flight
+     */
+    public boolean tryExecute(K key, Supplier<V> read) {
+        calls.increment();
+        if (!enabled) {
+            executions.increment();
+            read.get();
+            return true;
+        }
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return false;
+        }
+
+        executions.increment();
+        try {
+            mine.complete(read.get());
+            return true;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public SingleFlightMetrics metrics() {
+        SingleFlightMetrics metrics = new SingleFlightMetrics();
+        long callCount = calls.sum();
+        long executionCount = executions.sum();
+        metrics.setName(name);
+        metrics.setCalls(callCount);
+        metrics.setExecutions(executionCount);
+        metrics.setCollapsed(callCount - executionCount);
+        metrics.setInFlight(inFlight.size());
+        return metrics;
+    }
+
+    private V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.SingleFlightMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates the application's {@link SingleFlight} groups and collects their counters
+ * for {@code GET /api/stats/single-flight}. Coalescing is switched off for all groups
+ * with {@code contacts.single-flight.enabled=false}.
+ */
+@Component
+public class SingleFlightRegistry {
+
+    private final boolean enabled;
+    private final List<SingleFlight<?, ?>> groups = new CopyOnWriteArrayList<>();
+
+    public SingleFlightRegistry(@Value("${contacts.single-flight.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public <K, V> SingleFlight<K, V> create(String name) {
+        SingleFlight<K, V> group = new SingleFlight<>(name, enabled);
+        groups.add(group);
+        return group;
+    }
+
+    public List<SingleFlightMetrics> metrics() {
+        return groups.stream().map(SingleFlight::metrics).toList();
+    }
+}
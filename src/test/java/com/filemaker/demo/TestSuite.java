@@ -4,7 +4,21 @@ import com.filemaker.demo.controller.ContactControllerTest;
 import com.filemaker.demo.controller.PhotoControllerTest;
 import com.filemaker.demo.integration.ContactIntegrationTest;
 import com.filemaker.demo.repository.ContactRepositoryTest;
+import com.filemaker.demo.service.ContactBatchLoaderTest;
+import com.filemaker.demo.service.ContactCacheTest;
+import com.filemaker.demo.service.ContactCompanyFacetsTest;
+import com.filemaker.demo.service.ContactCountCacheTest;
+import com.filemaker.demo.service.ContactSearchIndexTest;
+import com.filemaker.demo.service.ContactSearchServiceTest;
+import com.filemaker.demo.service.ContactSuggestIndexTest;
 import com.filemaker.demo.service.ContainerFieldServiceTest;
+import com.filemaker.demo.service.ContainerFormatResolverTest;
+import com.filemaker.demo.service.ContainerStreamTest;
+import com.filemaker.demo.service.ContainerWriteBudgetTest;
+import com.filemaker.demo.service.PhotoContentTypeBackfillTest;
+import com.filemaker.demo.service.PhotoDiskCacheTest;
+import com.filemaker.demo.service.PhotoThumbnailServiceTest;
+import com.filemaker.demo.service.SingleFlightTest;
 import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.Suite;
 
@@ -33,7 +47,21 @@ import org.junit.platform.suite.api.Suite;
     ContactRepositoryTest.class,
     
     // Service Layer Tests
+    ContactBatchLoaderTest.class,
+    ContactCacheTest.class,
+    ContactCompanyFacetsTest.class,
+    ContactCountCacheTest.class,
+    ContactSearchIndexTest.class,
+    ContactSearchServiceTest.class,
+    ContactSuggestIndexTest.class,
     ContainerFieldServiceTest.class,
+    ContainerFormatResolverTest.class,
+    ContainerStreamTest.class,
+    ContainerWriteBudgetTest.class,
+    PhotoContentTypeBackfillTest.class,
+    PhotoDiskCacheTest.class,
+    PhotoThumbnailServiceTest.class,
+    SingleFlightTest.class,
     
     // Controller Layer Tests
     ContactControllerTest.class,
@@ -1,6 +1,7 @@
 package com.filemaker.demo.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import com.filemaker.demo.dto.ContactDTO;
 import com.filemaker.demo.entity.Contact;
 import com.filemaker.demo.repository.ContactRepository;
@@ -12,14 +13,17 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.Date;
+import java.util.List;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -99,6 +103,54 @@ public class ContactControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testGetContactById_ConditionalRequest() throws Exception {
+        String etag = mockMvc.perform(get("/api/contacts/{id}", testContact.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/contacts/{id}", testContact.getId())
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/api/contacts/{id}", testContact.getId())
+                .header("If-None-Match", "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", equalTo(testContact.getId().intValue())));
+    }
+
+    @Test
+    void testGetAllContacts_ConditionalRequest() throws Exception {
+        String etag = mockMvc.perform(get("/api/contacts")
+                .param("size", "5"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/contacts")
+                .param("size", "5")
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // A change on the page yields a new ETag
+        ContactDTO patch = new ContactDTO();
+        patch.setJobTitle("Changed");
+        mockMvc.perform(patch("/api/contacts/{id}", testContact.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(patch)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/contacts")
+                .param("size", "5")
+                .param("sortBy", "id")
+                .param("direction", "desc")
+                .header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void testSearchContacts() throws Exception {
         mockMvc.perform(get("/api/contacts/search")
@@ -112,13 +164,149 @@ public class ContactControllerTest {
                 .andExpect(jsonPath("$.totalElements", greaterThan(0)));
     }
 
+    @Test
+    void testSearchContactsStrategies() throws Exception {
+        // Fan-out cannot see the test's uncommitted rows and falls back to the JPQL query
+        for (String strategy : List.of("jpql", "fanout", "index")) {
+            mockMvc.perform(get("/api/contacts/search")
+                    .param("q", "Test")
+                    .param("strategy", strategy))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content", hasSize(greaterThan(0))))
+                    .andExpect(jsonPath("$.totalElements", greaterThan(0)));
+        }
+    }
+
+    @Test
+    void testSearchContacts_UnknownStrategy() throws Exception {
+        mockMvc.perform(get("/api/contacts/search")
+                .param("q", "Test")
+                .param("strategy", "fulltext"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSearchContactsSummaryView() throws Exception {
+        mockMvc.perform(get("/api/contacts/search")
+                .param("q", "Test")
+                .param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.content[0].id").exists())
+                .andExpect(jsonPath("$.content[0].lastName").exists())
+                .andExpect(jsonPath("$.content[0].notes").doesNotExist())
+                .andExpect(jsonPath("$.content[0].password").doesNotExist())
+                .andExpect(jsonPath("$.totalElements", greaterThan(0)));
+    }
+
+    @Test
+    void testGetContactsByIds() throws Exception {
+        mockMvc.perform(get("/api/contacts")
+                .param("ids", testContact.getId() + ",999999999," + testContact.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", equalTo(testContact.getId().intValue())));
+    }
+
+    @Test
+    void testPostContactsByIds() throws Exception {
+        mockMvc.perform(post("/api/contacts/by-ids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[" + testContact.getId() + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].email", equalTo(testContact.getEmail())));
+
+        mockMvc.perform(post("/api/contacts/by-ids")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSuggestContacts_BlankPrefix() throws Exception {
+        mockMvc.perform(get("/api/contacts/suggest")
+                .param("prefix", " "))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetAllContactsWithFields() throws Exception {
+        mockMvc.perform(get("/api/contacts")
+                .param("fields", "email,company")
+                .param("sortBy", "email")
+                .param("size", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.content[0].id").exists())
+                .andExpect(jsonPath("$.content[0].email").exists())
+                .andExpect(jsonPath("$.content[0].firstName").doesNotExist())
+                .andExpect(jsonPath("$.totalElements", greaterThan(0)));
+
+        mockMvc.perform(get("/api/contacts")
+                .param("fields", "email")
+                .param("mode", "slice")
+                .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    void testGetAllContactsWithFields_Unknown() throws Exception {
+        mockMvc.perform(get("/api/contacts").param("fields", "email,photoContent"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/contacts").param("fields", "email,password"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/contacts/search").param("q", "a").param("fields", "notes"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/contacts").param("view", "tiny"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testGetContactsByCompany() throws Exception {
         mockMvc.perform(get("/api/contacts/by-company/{company}", testContact.getCompany()))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(greaterThan(0))))
-                .andExpect(jsonPath("$[0].company", equalTo(testContact.getCompany())));
+                .andExpect(jsonPath("$.content", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.content[0].company", equalTo(testContact.getCompany())))
+                .andExpect(jsonPath("$.totalElements", greaterThan(0)));
+    }
+
+    @Test
+    void testGetContactsByCompanyPaged() throws Exception {
+        mockMvc.perform(get("/api/contacts/by-company/{company}", testContact.getCompany())
+                .param("page", "0")
+                .param("size", "1")
+                .param("sortBy", "lastName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.size", equalTo(1)));
+    }
+
+    @Test
+    void testGetContactsByCompany_InvalidSort() throws Exception {
+        mockMvc.perform(get("/api/contacts/by-company/{company}", testContact.getCompany())
+                .param("sortBy", "password"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testExportContactsByCompany() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/contacts/by-company/{company}/export", testContact.getCompany()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"));
+    }
+
+    @Test
+    void testGetCompanyFacets() throws Exception {
+        mockMvc.perform(get("/api/contacts/facets/company"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.value == '" + testContact.getCompany() + "')].count", hasItem(greaterThan(0))));
     }
 
     @Test
@@ -228,6 +416,56 @@ public class ContactControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testPatchContact_IfMatch() throws Exception {
+        String etag = mockMvc.perform(get("/api/contacts/{id}", testContact.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        ContactDTO patch = new ContactDTO();
+        patch.setCompany("First Writer Inc");
+        String newEtag = mockMvc.perform(patch("/api/contacts/{id}", testContact.getId())
+                .header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(patch)))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.company", equalTo("First Writer Inc")))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(etag, newEtag);
+
+        // A second writer still holding the old version is rejected, and the first write is kept
+        patch.setCompany("Second Writer Inc");
+        mockMvc.perform(patch("/api/contacts/{id}", testContact.getId())
+                .header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(patch)))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(get("/api/contacts/{id}", testContact.getId()))
+                .andExpect(jsonPath("$.company", equalTo("First Writer Inc")));
+    }
+
+    @Test
+    void testUpdateContact_IfMatchMismatch() throws Exception {
+        ContactDTO updateContact = new ContactDTO();
+        updateContact.setEmail("updated@example.com");
+        updateContact.setLogin("updateduser");
+        updateContact.setPassword("updatedpass");
+
+        mockMvc.perform(put("/api/contacts/{id}", testContact.getId())
+                .header("If-Match", "\"" + testContact.getId() + "-999999\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateContact)))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put("/api/contacts/{id}", 99999L)
+                .header("If-Match", "\"99999-1\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateContact)))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void testDeleteContact() throws Exception {
         // Create a separate contact for deletion test to avoid affecting other tests
@@ -255,6 +493,24 @@ public class ContactControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testDeleteContactsByIds() throws Exception {
+        Contact other = new Contact();
+        other.setEmail("bulkdelete@example.com");
+        other.setLogin("bulkdelete");
+        other.setPassword("bulkpass");
+        other = contactRepository.save(other);
+
+        mockMvc.perform(delete("/api/contacts")
+                .param("ids", testContact.getId() + "," + other.getId() + ",99999"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested", equalTo(3)))
+                .andExpect(jsonPath("$.deleted", equalTo(2)));
+
+        mockMvc.perform(get("/api/contacts/{id}", other.getId()))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void testGetAllContactsWithPagination() throws Exception {
         // Create additional contacts for pagination testing
@@ -289,6 +545,35 @@ public class ContactControllerTest {
                 .andExpect(jsonPath("$.number", equalTo(1)));
     }
 
+    @Test
+    void testGetAllContactsAsSlice() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            Contact contact = new Contact();
+            contact.setEmail("slice" + i + "@example.com");
+            contact.setLogin("slice" + i);
+            contact.setPassword("pass" + i);
+            contactRepository.save(contact);
+        }
+
+        mockMvc.perform(get("/api/contacts")
+                .param("mode", "slice")
+                .param("size", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(5)))
+                .andExpect(jsonPath("$.last", equalTo(false)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    void testGetAllContactsWithCachedTotal() throws Exception {
+        mockMvc.perform(get("/api/contacts")
+                .param("total", "cached")
+                .param("size", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.totalElements", greaterThan(0)));
+    }
+
     @Test
     void testGetAllContactsWithSorting() throws Exception {
         mockMvc.perform(get("/api/contacts")
@@ -302,4 +587,83 @@ public class ContactControllerTest {
         // Note: This test verifies that sorting parameters are accepted and processed
         // The exact JSON structure may vary between Spring Data versions
     }
+
+    @Test
+    void testGetAllContactsWithCursor() throws Exception {
+        Contact second = new Contact();
+        second.setEmail("cursor@example.com");
+        second.setLogin("cursoruser");
+        second.setPassword("cursorpass");
+        contactRepository.save(second);
+
+        String firstPage = mockMvc.perform(get("/api/contacts")
+                .param("mode", "cursor")
+                .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.next", notNullValue()))
+                .andExpect(jsonPath("$.hasNext", equalTo(true)))
+                .andReturn().getResponse().getContentAsString();
+
+        Integer firstId = JsonPath.read(firstPage, "$.content[0].id");
+        String next = JsonPath.read(firstPage, "$.next");
+
+        mockMvc.perform(get("/api/contacts")
+                .param("cursor", next)
+                .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].id", greaterThan(firstId)));
+    }
+
+    @Test
+    void testGetAllContactsWithCursor_InvalidCursor() throws Exception {
+        mockMvc.perform(get("/api/contacts")
+                .param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/contacts")
+                .param("mode", "cursor")
+                .param("sortBy", "notes"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testExportContacts() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/contacts/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // The export reads through its own connection, so only committed rows are visible
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"));
+    }
+
+    @Test
+    void testCreateContactsBatch_InvalidItems() throws Exception {
+        // Batch inserts run on their own connection and are not rolled back,
+        // so only submit items that are rejected before reaching FileMaker
+        ContactDTO missingLogin = new ContactDTO();
+        missingLogin.setEmail("batch@example.com");
+        missingLogin.setPassword("batchpass");
+
+        mockMvc.perform(post("/api/contacts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(missingLogin, new ContactDTO()))))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$.requested", equalTo(2)))
+                .andExpect(jsonPath("$.created", equalTo(0)))
+                .andExpect(jsonPath("$.items[0].index", equalTo(0)))
+                .andExpect(jsonPath("$.items[0].status", equalTo("FAILED")))
+                .andExpect(jsonPath("$.items[1].status", equalTo("FAILED")));
+    }
+
+    @Test
+    void testCreateContactsBatch_Empty() throws Exception {
+        mockMvc.perform(post("/api/contacts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
 }
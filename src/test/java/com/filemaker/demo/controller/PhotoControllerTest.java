@@ -3,6 +3,8 @@ package com.filemaker.demo.controller;
 import com.filemaker.demo.entity.Contact;
 import com.filemaker.demo.repository.ContactRepository;
 import com.filemaker.demo.service.ContainerFieldService;
+import com.filemaker.demo.service.ContainerStream;
+import com.filemaker.demo.service.ContainerWriteBudget;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,13 +15,19 @@ import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Date;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -74,15 +82,16 @@ public class PhotoControllerTest {
                 testImageData
         );
 
-        when(containerFieldService.uploadToContainer(anyString(), anyString(), anyLong(), any()))
-                .thenReturn(true);
+        when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                .thenReturn(ContainerFieldService.WriteResult.UPDATED);
 
         mockMvc.perform(multipart("/api/contacts/{id}/photo", testContact.getId())
                 .file(file))
                 .andExpect(status().isOk())
                 .andExpect(content().string("Photo uploaded successfully"));
 
-        verify(containerFieldService).uploadToContainer("contact", "photo_content", testContact.getId(), file);
+        verify(containerFieldService).uploadWithContentType("contact", "photo_content", "photo_content_type", testContact.getId(),
+                file, "image/jpeg");
     }
 
     @Test
@@ -94,11 +103,16 @@ public class PhotoControllerTest {
                 testImageData
         );
 
+        // The single UPDATE finds no row
+        when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                .thenReturn(ContainerFieldService.WriteResult.NOT_FOUND);
+
         mockMvc.perform(multipart("/api/contacts/{id}/photo", 99999L)
                 .file(file))
                 .andExpect(status().isNotFound());
 
-        verify(containerFieldService, never()).uploadToContainer(anyString(), anyString(), anyLong(), any());
+        verify(containerFieldService).uploadWithContentType("contact", "photo_content", "photo_content_type", 99999L,
+                file, "image/jpeg");
     }
 
     @Test
@@ -115,7 +129,7 @@ public class PhotoControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(content().string("File is empty"));
 
-        verify(containerFieldService, never()).uploadToContainer(anyString(), anyString(), anyLong(), any());
+        verify(containerFieldService, never()).uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any());
     }
 
     @Test
@@ -127,8 +141,8 @@ public class PhotoControllerTest {
                 testImageData
         );
 
-        when(containerFieldService.uploadToContainer(anyString(), anyString(), anyLong(), any()))
-                .thenReturn(false);
+        when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                .thenReturn(ContainerFieldService.WriteResult.FAILED);
 
         mockMvc.perform(multipart("/api/contacts/{id}/photo", testContact.getId())
                 .file(file))
@@ -136,20 +150,90 @@ public class PhotoControllerTest {
                 .andExpect(content().string("Failed to upload photo"));
     }
 
+    @Test
+    void testUploadPhoto_BudgetInUse() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "test.jpg", "image/jpeg", testImageData);
+
+        when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                .thenThrow(new ContainerWriteBudget.BudgetExceededException("Too many uploads in progress", true));
+
+        mockMvc.perform(multipart("/api/contacts/{id}/photo", testContact.getId())
+                .file(file))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void testUploadPhoto_LargerThanBudget() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "test.jpg", "image/jpeg", testImageData);
+
+        when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                .thenThrow(new ContainerWriteBudget.BudgetExceededException("Upload exceeds the memory budget", false));
+
+        mockMvc.perform(multipart("/api/contacts/{id}/photo", testContact.getId())
+                .file(file))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
     @Test
     void testDownloadPhoto() throws Exception {
-        when(containerFieldService.downloadFromContainer(anyString(), anyString(), anyLong(), anyString()))
-                .thenReturn(testImageData);
+        holdsPhoto("image/jpeg", testImageData);
 
-        mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId())
+        MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId())
                 .param("format", "JPEG"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("image/jpeg"))
                 .andExpect(content().bytes(testImageData))
                 .andExpect(header().string("Content-Length", String.valueOf(testImageData.length)))
                 .andExpect(header().string("Content-Disposition", containsString("attachment")));
 
-        verify(containerFieldService).downloadFromContainer("contact", "photo_content", testContact.getId(), "JPEG");
+        verify(containerFieldService).openWithMetadata("contact", "photo_content", "photo_content_type", testContact.getId(), "JPEG");
+    }
+
+    @Test
+    void testDownloadPhoto_SecondDownloadServedFromDiskCache() throws Exception {
+        holdsPhoto("image/jpeg", testImageData);
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId())
+                    .param("format", "PNGf"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().bytes(testImageData))
+                    .andExpect(header().string("Content-Length", String.valueOf(testImageData.length)));
+        }
+
+        verify(containerFieldService, times(1)).openWithMetadata("contact", "photo_content", "photo_content_type", testContact.getId(), "PNGf");
+    }
+
+    @Test
+    void testUploadPhoto_InvalidatesDiskCache() throws Exception {
+        holdsPhoto("image/jpeg", testImageData);
+        when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                .thenReturn(ContainerFieldService.WriteResult.UPDATED);
+
+        MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        mockMvc.perform(multipart("/api/contacts/{id}/photo", testContact.getId())
+                .file(new MockMultipartFile("file", "new.jpg", "image/jpeg", testImageData)))
+                .andExpect(status().isOk());
+
+        result = mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        verify(containerFieldService, times(2)).openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any());
     }
 
     @Test
@@ -157,13 +241,12 @@ public class PhotoControllerTest {
         mockMvc.perform(get("/api/contacts/{id}/photo", 99999L))
                 .andExpect(status().isNotFound());
 
-        verify(containerFieldService, never()).downloadFromContainer(anyString(), anyString(), anyLong(), anyString());
+        verify(containerFieldService, never()).openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any());
     }
 
     @Test
     void testDownloadPhoto_NoPhotoData() throws Exception {
-        when(containerFieldService.downloadFromContainer(anyString(), anyString(), anyLong(), anyString()))
-                .thenReturn(null);
+        holdsPhoto("image/jpeg", null);
 
         mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId()))
                 .andExpect(status().isNotFound());
@@ -171,8 +254,9 @@ public class PhotoControllerTest {
 
     @Test
     void testDownloadPhoto_EmptyPhotoData() throws Exception {
-        when(containerFieldService.downloadFromContainer(anyString(), anyString(), anyLong(), anyString()))
-                .thenReturn(new byte[0]);
+        // The record exists but the statement found no data in the container
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any()))
+                .thenReturn(new ContainerFieldService.ContainerRow("image/jpeg", null, version(), null));
 
         mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId()))
                 .andExpect(status().isNotFound());
@@ -181,28 +265,103 @@ public class PhotoControllerTest {
     @Test
     void testDownloadPhoto_WithAutoDetection() throws Exception {
         // Test when format is not specified - should auto-detect from content type
-        when(containerFieldService.downloadFromContainer(anyString(), anyString(), anyLong(), anyString()))
-                .thenReturn(testImageData);
+        holdsPhoto("image/jpeg", testImageData);
 
-        mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId()))
+        MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("image/jpeg"))
                 .andExpect(content().bytes(testImageData));
     }
 
+    @Test
+    void testDownloadPhoto_UnknownContentTypeIsDetectedAndRecorded() throws Exception {
+        testContact.setPhotoContentType(null);
+        testContact = contactRepository.save(testContact);
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 1, 2, 3};
+        // The statement read it as JPEG and got NULL; only the PNG conversion exists
+        holdsPhoto(null, null);
+        when(containerFieldService.openFromContainer(anyString(), anyString(), anyLong(), eq("PNGf")))
+                .thenAnswer(invocation -> ContainerStream.of(png));
+
+        MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"))
+                .andExpect(header().string("Content-Disposition", containsString("photo.png")))
+                .andExpect(content().bytes(png));
+
+        verify(containerFieldService).openWithMetadata("contact", "photo_content", "photo_content_type", testContact.getId(), null);
+        verify(containerFieldService, never()).openFromContainer(anyString(), anyString(), anyLong(), eq("JPEG"));
+        verify(containerFieldService).openFromContainer("contact", "photo_content", testContact.getId(), "PNGf");
+    }
+
     @Test
     void testViewPhotoInline() throws Exception {
-        when(containerFieldService.downloadFromContainer(anyString(), anyString(), anyLong(), anyString()))
-                .thenReturn(testImageData);
+        holdsPhoto("image/jpeg", testImageData);
 
-        mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId())
+        MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId())
                 .param("format", "JPEG"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("image/jpeg"))
                 .andExpect(content().bytes(testImageData))
                 .andExpect(header().string("Content-Disposition", "inline"));
 
-        verify(containerFieldService).downloadFromContainer("contact", "photo_content", testContact.getId(), "JPEG");
+        verify(containerFieldService).openWithMetadata("contact", "photo_content", "photo_content_type", testContact.getId(), "JPEG");
+    }
+
+    @Test
+    void testViewPhotoThumbnail_RenderedOnceThenServedFromDiskCache() throws Exception {
+        BufferedImage original = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(original, "png", png);
+        holdsPhoto("image/png", png.toByteArray());
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId())
+                    .param("w", "64")
+                    .param("h", "64"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            MvcResult response = mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType("image/jpeg"))
+                    .andReturn();
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(response.getResponse().getContentAsByteArray()));
+            assertEquals(64, thumbnail.getWidth());
+            assertEquals(32, thumbnail.getHeight());
+        }
+
+        verify(containerFieldService, times(1)).openWithMetadata("contact", "photo_content", "photo_content_type", testContact.getId(), null);
+    }
+
+    @Test
+    void testViewPhotoThumbnail_SizeOutOfRange() throws Exception {
+        mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId()).param("w", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId()).param("w", "100000"))
+                .andExpect(status().isBadRequest());
+
+        verify(containerFieldService, never()).openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void testViewPhotoThumbnail_NotAnImage() throws Exception {
+        holdsPhoto("application/pdf", "%PDF-1.4".getBytes());
+
+        mockMvc.perform(get("/api/contacts/{id}/photo/inline", testContact.getId()).param("w", "64"))
+                .andExpect(status().isNotFound());
     }
 
     @Test
@@ -213,27 +372,28 @@ public class PhotoControllerTest {
 
     @Test
     void testDeletePhoto() throws Exception {
-        when(containerFieldService.clearContainer(anyString(), anyString(), anyLong()))
-                .thenReturn(true);
+        when(containerFieldService.clearWithContentType(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(ContainerFieldService.WriteResult.UPDATED);
 
         mockMvc.perform(delete("/api/contacts/{id}/photo", testContact.getId()))
                 .andExpect(status().isNoContent());
 
-        verify(containerFieldService).clearContainer("contact", "photo_content", testContact.getId());
+        verify(containerFieldService).clearWithContentType("contact", "photo_content", "photo_content_type", testContact.getId());
     }
 
     @Test
     void testDeletePhoto_ContactNotFound() throws Exception {
+        when(containerFieldService.clearWithContentType(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(ContainerFieldService.WriteResult.NOT_FOUND);
+
         mockMvc.perform(delete("/api/contacts/{id}/photo", 99999L))
                 .andExpect(status().isNotFound());
-
-        verify(containerFieldService, never()).clearContainer(anyString(), anyString(), anyLong());
     }
 
     @Test
     void testDeletePhoto_DeleteFailed() throws Exception {
-        when(containerFieldService.clearContainer(anyString(), anyString(), anyLong()))
-                .thenReturn(false);
+        when(containerFieldService.clearWithContentType(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(ContainerFieldService.WriteResult.FAILED);
 
         mockMvc.perform(delete("/api/contacts/{id}/photo", testContact.getId()))
                 .andExpect(status().isInternalServerError());
@@ -241,8 +401,8 @@ public class PhotoControllerTest {
 
     @Test
     void testGetPhotoInfo() throws Exception {
-        when(containerFieldService.getContainerReference(anyString(), anyString(), anyLong()))
-                .thenReturn("test.jpg");
+        when(containerFieldService.getContainerMetadata(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(new ContainerFieldService.ContainerRow("image/jpeg", "test.jpg", 1L, null));
 
         mockMvc.perform(get("/api/contacts/{id}/photo/info", testContact.getId()))
                 .andExpect(status().isOk())
@@ -252,7 +412,7 @@ public class PhotoControllerTest {
                 .andExpect(jsonPath("$.reference", equalTo("test.jpg")))
                 .andExpect(jsonPath("$.hasPhoto", equalTo(true)));
 
-        verify(containerFieldService).getContainerReference("contact", "photo_content", testContact.getId());
+        verify(containerFieldService).getContainerMetadata("contact", "photo_content", "photo_content_type", testContact.getId());
     }
 
     @Test
@@ -260,13 +420,12 @@ public class PhotoControllerTest {
         mockMvc.perform(get("/api/contacts/{id}/photo/info", 99999L))
                 .andExpect(status().isNotFound());
 
-        verify(containerFieldService, never()).getContainerReference(anyString(), anyString(), anyLong());
     }
 
     @Test
     void testGetPhotoInfo_NoPhoto() throws Exception {
-        when(containerFieldService.getContainerReference(anyString(), anyString(), anyLong()))
-                .thenReturn(null);
+        when(containerFieldService.getContainerMetadata(anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(new ContainerFieldService.ContainerRow("image/jpeg", null, 1L, null));
 
         mockMvc.perform(get("/api/contacts/{id}/photo/info", testContact.getId()))
                 .andExpect(status().isOk())
@@ -280,17 +439,29 @@ public class PhotoControllerTest {
         String[] contentTypes = {"image/jpeg", "image/png", "image/gif", "image/tiff", "application/pdf"};
 
         for (int i = 0; i < formats.length; i++) {
-            when(containerFieldService.downloadFromContainer(anyString(), anyString(), anyLong(), eq(formats[i])))
-                    .thenReturn(testImageData);
+            holdsPhoto("image/jpeg", testImageData);
 
-            mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId())
+            MvcResult result = mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId())
                     .param("format", formats[i]))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
                     .andExpect(status().isOk())
                     .andExpect(content().contentType(contentTypes[i]))
                     .andExpect(content().bytes(testImageData));
         }
     }
 
+    @Test
+    void testDownloadPhoto_UnknownFormatIsRejected() throws Exception {
+        mockMvc.perform(get("/api/contacts/{id}/photo", testContact.getId())
+                .param("format", "JPEG') FROM contact --"))
+                .andExpect(status().isBadRequest());
+
+        verify(containerFieldService, never()).openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any());
+    }
+
     @Test
     void testUploadPhoto_DifferentFileTypes() throws Exception {
         String[] fileNames = {"test.jpg", "test.png", "test.gif", "test.pdf"};
@@ -304,8 +475,8 @@ public class PhotoControllerTest {
                     testImageData
             );
 
-            when(containerFieldService.uploadToContainer(anyString(), anyString(), anyLong(), any()))
-                    .thenReturn(true);
+            when(containerFieldService.uploadWithContentType(anyString(), anyString(), anyString(), anyLong(), any(), any()))
+                    .thenReturn(ContainerFieldService.WriteResult.UPDATED);
 
             mockMvc.perform(multipart("/api/contacts/{id}/photo", testContact.getId())
                     .file(file))
@@ -313,4 +484,15 @@ public class PhotoControllerTest {
                     .andExpect(content().string("Photo uploaded successfully"));
         }
     }
+
+    // The combined statement's row for the test contact at its current version; no stream if data is null
+    private void holdsPhoto(String contentType, byte[] data) {
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any()))
+                .thenAnswer(invocation -> new ContainerFieldService.ContainerRow(contentType, data == null ? null : "image:/photo.jpg",
+                        version(), data == null ? null : ContainerStream.of(data)));
+    }
+
+    private long version() {
+        return contactRepository.findVersionById(testContact.getId()).orElseThrow().getModificationCount();
+    }
 }
@@ -124,8 +124,8 @@ public class ContactIntegrationTest {
         // 6. Get contacts by company
         mockMvc.perform(get("/api/contacts/by-company/{company}", updateContact.getCompany()))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(greaterThan(0))))
-                .andExpect(jsonPath("$[?(@.id == " + contactId + ")]").exists());
+                .andExpect(jsonPath("$.content", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.content[?(@.id == " + contactId + ")]").exists());
 
         // 7. Test photo upload (if container field is available)
         MockMultipartFile photoFile = new MockMultipartFile(
@@ -337,8 +337,9 @@ public class ContactIntegrationTest {
         // Get contacts by specific company
         mockMvc.perform(get("/api/contacts/by-company/{company}", "DataInc"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(3)))
-                .andExpect(jsonPath("$[*].company", everyItem(equalTo("DataInc"))));
+                .andExpect(jsonPath("$.content", hasSize(3)))
+                .andExpect(jsonPath("$.totalElements", equalTo(3)))
+                .andExpect(jsonPath("$.content[*].company", everyItem(equalTo("DataInc"))));
 
         // Search with no results
         mockMvc.perform(get("/api/contacts/search")
@@ -352,6 +353,6 @@ public class ContactIntegrationTest {
         // Get contacts from non-existent company
         mockMvc.perform(get("/api/contacts/by-company/{company}", "NonExistentCompany"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(0)));
+                .andExpect(jsonPath("$.content", hasSize(0)));
     }
 }
@@ -12,8 +12,11 @@ import org.springframework.data.domain.Sort;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -190,6 +193,66 @@ public class ContactRepositoryTest {
         assertFalse(found.isPresent());
     }
 
+    @Test
+    void testUpdateFields() {
+        int updated = contactRepository.updateFields(testContact1.getId(),
+                Map.of("jobTitle", "Principal Engineer", "company", "NewCo"));
+        assertEquals(1, updated);
+
+        Contact reloaded = contactRepository.findById(testContact1.getId()).orElseThrow();
+        assertEquals("Principal Engineer", reloaded.getJobTitle());
+        assertEquals("NewCo", reloaded.getCompany());
+        // Columns not in the change set are untouched
+        assertEquals("Test notes for John", reloaded.getNotes());
+        assertEquals("john.doe@example.com", reloaded.getEmail());
+    }
+
+    @Test
+    void testUpdateFields_NotFoundAndReadOnly() {
+        assertEquals(0, contactRepository.updateFields(99999L, Map.of("company", "Nobody")));
+        assertThrows(IllegalArgumentException.class,
+                () -> contactRepository.updateFields(testContact1.getId(), Map.of("uuid", "x")));
+    }
+
+    @Test
+    void testUpdateFieldsIfVersion() {
+        ContactVersion version = contactRepository.findVersionById(testContact1.getId()).orElseThrow();
+
+        // A stale version does not match, and nothing is written
+        assertEquals(0, contactRepository.updateFieldsIfVersion(testContact1.getId(),
+                version.getModificationCount() + 1, Map.of("company", "Stale")));
+
+        assertEquals(1, contactRepository.updateFieldsIfVersion(testContact1.getId(),
+                version.getModificationCount(), Map.of("company", "Current")));
+        assertEquals("Current", contactRepository.findById(testContact1.getId()).orElseThrow().getCompany());
+
+        // The version moved on with the write
+        assertEquals(0, contactRepository.updateFieldsIfVersion(testContact1.getId(),
+                version.getModificationCount(), Map.of("company", "Again")));
+    }
+
+    @Test
+    void testDeleteContactById() {
+        Long deleteId = testContact3.getId();
+
+        assertEquals(1, contactRepository.deleteContactById(deleteId));
+        assertFalse(contactRepository.existsById(deleteId));
+
+        // Nothing left to delete
+        assertEquals(0, contactRepository.deleteContactById(deleteId));
+    }
+
+    @Test
+    void testDeleteAllByIds() {
+        List<Long> ids = List.of(testContact1.getId(), testContact2.getId(), testContact1.getId(), 99999L);
+
+        // Duplicates and unknown IDs are not counted
+        assertEquals(2, contactRepository.deleteAllByIds(ids));
+        assertFalse(contactRepository.existsById(testContact1.getId()));
+        assertFalse(contactRepository.existsById(testContact2.getId()));
+        assertTrue(contactRepository.existsById(testContact3.getId()));
+    }
+
     @Test
     void testSearch() {
         // Search by first name
@@ -216,6 +279,25 @@ public class ContactRepositoryTest {
         assertEquals(0, results.getTotalElements());
     }
 
+    @Test
+    void testFindProjected() {
+        List<Map<String, Object>> rows = contactRepository.findProjected(
+                ContactColumns.projection("lastName,company"), "Acme", Sort.by("lastName"), 0, 10);
+
+        assertTrue(rows.size() >= 2);
+        Map<String, Object> first = rows.get(0);
+        assertEquals(List.of("id", "lastName", "company"), List.copyOf(first.keySet()));
+        assertTrue(rows.stream().anyMatch(row -> testContact1.getId().equals(row.get("id"))));
+
+        // Id only - scalar rows
+        List<Map<String, Object>> ids = contactRepository.findProjected(List.of("id"), null, Sort.unsorted(), 0, 2);
+        assertEquals(2, ids.size());
+        assertNotNull(ids.get(0).get("id"));
+
+        assertThrows(IllegalArgumentException.class, () -> ContactColumns.projection("nope"));
+        assertThrows(IllegalArgumentException.class, () -> ContactColumns.projection("email,password"));
+    }
+
     @Test
     void testFindByCompany() {
         // Find contacts at Acme Corp
@@ -233,6 +315,28 @@ public class ContactRepositoryTest {
         assertEquals(0, noContacts.size());
     }
 
+    @Test
+    void testFindAllByIdsKeepsRequestOrder() {
+        List<Long> ids = contactRepository.findAll().stream().map(Contact::getId).limit(3).toList();
+        List<Long> reversed = new ArrayList<>(ids);
+        Collections.reverse(reversed);
+        reversed.add(1, -1L);
+
+        List<Contact> found = contactRepository.findAllByIds(reversed);
+        List<Long> expected = new ArrayList<>(ids);
+        Collections.reverse(expected);
+        assertEquals(expected, found.stream().map(Contact::getId).toList());
+    }
+
+    @Test
+    void testCountPerCompany() {
+        long acme = contactRepository.countPerCompany().stream()
+                .filter(row -> "Acme Corp".equals(row[0]))
+                .mapToLong(row -> ((Number) row[1]).longValue())
+                .sum();
+        assertEquals(contactRepository.findByCompany("Acme Corp").size(), acme);
+    }
+
     @Test
     void testSearchWithPagination() {
         Pageable pageable = PageRequest.of(0, 1);
@@ -0,0 +1,137 @@
+package com.filemaker.demo.repository;
+
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: OFFSET pagination vs keyset (seek) pagination at increasing page depth.
+ * <p>
+ * Runs the SQL built by {@link ContactRepositoryCustomImpl} against an H2 stand-in
+ * database, so no FileMaker server is needed. Not part of the default test run:
+ * <pre>mvn test -Dtest=KeysetPaginationBenchmark</pre>
+ */
+public class KeysetPaginationBenchmark {
+
+    private static final int ROWS = 120_000;
+    private static final int PAGE_SIZE = 20;
+    private static final int[] PAGE_DEPTHS = {1, 100, 1_000, 5_000};
+    private static final int REPETITIONS = 20;
+
+    private static DataSource dataSource;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        dataSource = StandInDatabase.create("keyset");
+        StandInDatabase.populate(dataSource, ROWS);
+    }
+
+    @Test
+    void testKeysetLatencyStaysFlatAsPageDepthGrows() throws SQLException {
+        System.out.printf("%n%-10s %14s %14s%n", "page", "offset (ms)", "keyset (ms)");
+
+        double firstKeyset = 0;
+        double deepKeyset = 0;
+        double deepOffset = 0;
+        for (int depth : PAGE_DEPTHS) {
+            int offset = (depth - 1) * PAGE_SIZE;
+            String offsetSql = ContactRepositoryCustomImpl.buildOffsetSql(offset, PAGE_SIZE);
+
+            // Position the cursor on the last row of the previous page (not timed)
+            List<Object> params = new ArrayList<>();
+            KeysetCursor after = depth == 1 ? null : cursorAt(offset - 1);
+            String keysetSql = ContactRepositoryCustomImpl.buildKeysetSql("id", false, after, PAGE_SIZE, params);
+
+            List<Long> offsetIds = ids(offsetSql, List.of());
+            List<Long> keysetIds = ids(keysetSql, params);
+            assertEquals(offsetIds, keysetIds, "keyset page must match OFFSET page at depth " + depth);
+
+            double offsetMs = time(offsetSql, List.of());
+            double keysetMs = time(keysetSql, params);
+            System.out.printf("%-10d %14.3f %14.3f%n", depth, offsetMs, keysetMs);
+
+            if (depth == 1) {
+                firstKeyset = keysetMs;
+            }
+            deepKeyset = keysetMs;
+            deepOffset = offsetMs;
+        }
+
+        assertTrue(deepKeyset < deepOffset, "deep keyset page should be cheaper than deep OFFSET page");
+        // Generous bound: keyset cost must not scale with depth the way OFFSET does
+        assertTrue(deepKeyset < Math.max(firstKeyset * 10, 1.0), "keyset latency should stay flat");
+    }
+
+    @Test
+    void testKeysetWalkOnSortKeyMatchesOffsetOrder() throws SQLException {
+        // Walk a few pages on a non-unique sort key; ties are broken by id
+        List<Object> params = new ArrayList<>();
+        String sql = ContactRepositoryCustomImpl.buildKeysetSql("lastName", false, null, PAGE_SIZE, params);
+        List<Long> walked = new ArrayList<>();
+        for (int page = 0; page < 5; page++) {
+            List<Contact> rows = rows(sql, params);
+            rows.forEach(c -> walked.add(c.getId()));
+            params = new ArrayList<>();
+            KeysetCursor next = KeysetCursor.decode(
+                    KeysetCursor.after(rows.get(rows.size() - 1), "lastName", false).encode());
+            sql = ContactRepositoryCustomImpl.buildKeysetSql("lastName", false, next, PAGE_SIZE, params);
+        }
+
+        List<Long> expected = ids("SELECT * FROM contact ORDER BY last_name, id FETCH FIRST "
+                + (5 * PAGE_SIZE) + " ROWS ONLY", List.of());
+        assertEquals(expected, walked);
+    }
+
+    private KeysetCursor cursorAt(int offset) throws SQLException {
+        List<Contact> rows = rows(ContactRepositoryCustomImpl.buildOffsetSql(offset, 1), List.of());
+        return KeysetCursor.after(rows.get(0), "id", false);
+    }
+
+    private double time(String sql, List<Object> params) throws SQLException {
+        // Warm up, then average
+        ids(sql, params);
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            ids(sql, params);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / REPETITIONS;
+    }
+
+    private List<Long> ids(String sql, List<Object> params) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        for (Contact c : rows(sql, params)) {
+            ids.add(c.getId());
+        }
+        return ids;
+    }
+
+    private List<Contact> rows(String sql, List<Object> params) throws SQLException {
+        List<Contact> rows = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Contact c = new Contact();
+                    c.setId(rs.getLong("id"));
+                    c.setLastName(rs.getString("last_name"));
+                    rows.add(c);
+                }
+            }
+        }
+        return rows;
+    }
+}
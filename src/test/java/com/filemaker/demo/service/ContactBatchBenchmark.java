@@ -0,0 +1,135 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.BatchCreateResult;
+import com.filemaker.demo.dto.ContactDTO;
+import com.filemaker.demo.support.StandInDatabase;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: batch create throughput vs one insert per request.
+ * <p>
+ * Uses an H2 stand-in database behind a DBCP2 pool, as in production. The single-insert
+ * side models one {@code POST /api/contacts}: a pool checkout and one INSERT per contact.
+ * H2 runs in-process, so this understates the gap: every FileMaker round trip saved also
+ * saves network latency. Not part of the default test run:
+ * <pre>mvn test -Dtest=ContactBatchBenchmark</pre>
+ */
+public class ContactBatchBenchmark {
+
+    private static final int CONTACTS = 10_000;
+
+    private BasicDataSource pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        StandInDatabase.create("batch");
+        pool = new BasicDataSource();
+        pool.setUrl(StandInDatabase.url("batch"));
+        pool.setMaxTotal(10);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+    }
+
+    @Test
+    void testBatchCreateReportsEachItem() throws SQLException {
+        ContactDTO missingLogin = contact(1);
+        missingLogin.setLogin(null);
+        ContactDTO tooLong = contact(2);
+        tooLong.setEmail("x".repeat(300) + "@example.com");
+
+        List<ContactDTO> contacts = List.of(contact(0), missingLogin, tooLong, contact(3));
+        BatchCreateResult result = new ContactBatchService(pool, 2).createAll(contacts);
+
+        assertEquals(4, result.getRequested());
+        assertEquals(2, result.getCreated());
+        assertEquals(2, result.getFailed());
+        assertEquals("CREATED", result.getItems().get(0).getStatus());
+        assertEquals("FAILED", result.getItems().get(1).getStatus());
+        assertEquals("FAILED", result.getItems().get(2).getStatus());
+        assertEquals("CREATED", result.getItems().get(3).getStatus());
+        assertEquals(2, countRows());
+    }
+
+    @Test
+    void testBatchThroughputVsSingleInserts() throws SQLException {
+        List<ContactDTO> contacts = new ArrayList<>();
+        for (int i = 0; i < CONTACTS; i++) {
+            contacts.add(contact(i));
+        }
+
+        // Warm up both paths
+        insertOneByOne(contacts.subList(0, 500));
+        new ContactBatchService(pool, 200).createAll(contacts.subList(0, 500));
+
+        long start = System.nanoTime();
+        insertOneByOne(contacts);
+        double singleMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        start = System.nanoTime();
+        BatchCreateResult result = new ContactBatchService(pool, 200).createAll(contacts);
+        double batchMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        System.out.printf("%n%-22s %10s %14s%n", "", "ms", "contacts/s");
+        System.out.printf("%-22s %10.1f %14.0f%n", "single inserts", singleMs, CONTACTS / singleMs * 1000);
+        System.out.printf("%-22s %10.1f %14.0f%n", "batch (chunks of 200)", batchMs, CONTACTS / batchMs * 1000);
+
+        assertEquals(CONTACTS, result.getCreated());
+        assertEquals(2 * CONTACTS + 1000, countRows());
+        assertTrue(batchMs < singleMs, "batch create should beat one insert per request");
+    }
+
+    private void insertOneByOne(List<ContactDTO> contacts) throws SQLException {
+        for (ContactDTO dto : contacts) {
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(ContactBatchService.INSERT_SQL)) {
+                ps.setString(1, dto.getEmail());
+                ps.setString(2, dto.getLogin());
+                ps.setString(3, dto.getPassword());
+                ps.setString(4, dto.getFirstName());
+                ps.setString(5, dto.getLastName());
+                ps.setString(6, dto.getTitle());
+                ps.setString(7, dto.getJobTitle());
+                ps.setString(8, dto.getCompany());
+                ps.setString(9, dto.getWebsite());
+                ps.setString(10, dto.getNotes());
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private long countRows() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM contact")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static ContactDTO contact(int i) {
+        ContactDTO dto = new ContactDTO();
+        dto.setEmail("batch" + i + "@example.com");
+        dto.setLogin("batch" + i);
+        dto.setPassword("pass" + i);
+        dto.setFirstName("Batch" + i);
+        dto.setLastName("User");
+        dto.setCompany("Batch Company");
+        return dto;
+    }
+}
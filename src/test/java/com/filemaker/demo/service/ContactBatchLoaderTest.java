@@ -0,0 +1,122 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.repository.ContactRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the micro-batching contact loader; the repository is mocked.
+ */
+public class ContactBatchLoaderTest {
+
+    private ContactRepository contactRepository;
+    private ContactBatchLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        contactRepository = mock(ContactRepository.class);
+        when(contactRepository.findAllByIds(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(id -> id <= 1000).map(this::contact).toList();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        loader.stop();
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneQuery() throws Exception {
+        loader = new ContactBatchLoader(contactRepository, true, Duration.ofMillis(200), 100, 4);
+        int threads = 20;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<Contact>>> results = new ArrayList<>();
+        for (long id = 1; id <= threads; id++) {
+            long contactId = id;
+            results.add(callers.submit(() -> {
+                start.await();
+                return loader.find(contactId);
+            }));
+        }
+        start.countDown();
+
+        for (int i = 0; i < threads; i++) {
+            assertEquals(i + 1L, results.get(i).get().orElseThrow().getId());
+        }
+        callers.shutdown();
+        verify(contactRepository, atMost(2)).findAllByIds(anyList());
+        verify(contactRepository, never()).findById(any());
+        assertEquals(threads, loader.metrics().getLookups());
+    }
+
+    @Test
+    void testFullBatchIsSentImmediately() {
+        loader = new ContactBatchLoader(contactRepository, true, Duration.ofMinutes(1), 3, 1);
+        CompletableFuture<Optional<Contact>> first = loader.load(1L);
+        CompletableFuture<Optional<Contact>> second = loader.load(2L);
+        assertFalse(first.isDone());
+
+        // The third lookup fills the batch and runs it on this thread, long before the window ends
+        CompletableFuture<Optional<Contact>> third = loader.load(2000L);
+        assertTrue(first.isDone() && second.isDone() && third.isDone());
+        assertEquals(2L, second.join().orElseThrow().getId());
+        assertTrue(third.join().isEmpty());
+        verify(contactRepository).findAllByIds(List.of(1L, 2L, 2000L));
+    }
+
+    @Test
+    void testSameIdSharesLookup() {
+        loader = new ContactBatchLoader(contactRepository, true, Duration.ofMinutes(1), 2, 1);
+        CompletableFuture<Optional<Contact>> first = loader.load(7L);
+        assertSame(first, loader.load(7L));
+
+        loader.load(8L);
+        assertEquals(7L, first.join().orElseThrow().getId());
+        verify(contactRepository).findAllByIds(List.of(7L, 8L));
+    }
+
+    @Test
+    void testFailureReachesEveryCaller() {
+        DataAccessResourceFailureException failure = new DataAccessResourceFailureException("FileMaker is down");
+        when(contactRepository.findAllByIds(anyList())).thenThrow(failure);
+        loader = new ContactBatchLoader(contactRepository, true, Duration.ofMillis(1), 100, 1);
+
+        assertSame(failure, assertThrows(DataAccessResourceFailureException.class, () -> loader.find(1L)));
+    }
+
+    @Test
+    void testDisabledLoadsOneByOne() {
+        when(contactRepository.findById(5L)).thenReturn(Optional.of(contact(5L)));
+        loader = new ContactBatchLoader(contactRepository, false, Duration.ofMillis(1), 100, 1);
+
+        assertEquals(5L, loader.find(5L).orElseThrow().getId());
+        verify(contactRepository).findById(5L);
+        verify(contactRepository, never()).findAllByIds(anyList());
+    }
+
+    private Contact contact(Long id) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setEmail("user" + id + "@example.com");
+        return contact;
+    }
+}
@@ -0,0 +1,169 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.CacheMetrics;
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.repository.ContactRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the contact lookup cache; the repository is mocked, so no FileMaker server is needed.
+ */
+public class ContactCacheTest {
+
+    private ContactRepository contactRepository;
+    private ContactCache contactCache;
+
+    @BeforeEach
+    void setUp() {
+        contactRepository = mock(ContactRepository.class);
+        when(contactRepository.findById(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            return id > 1000 ? Optional.empty() : Optional.of(contact(id));
+        });
+        // Batching off: each miss is a findById, as counted below
+        ContactBatchLoader loader = new ContactBatchLoader(contactRepository, false, Duration.ZERO, 1, 1);
+        contactCache = new ContactCache(contactRepository, loader, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void testRepeatedLookupsHitTheCache() {
+        for (int i = 0; i < 6; i++) {
+            assertTrue(contactCache.findById(1L).isPresent());
+        }
+
+        verify(contactRepository, times(1)).findById(1L);
+        CacheMetrics metrics = contactCache.metrics();
+        assertEquals(1, metrics.getMisses());
+        assertEquals(5, metrics.getHits());
+        assertEquals(1, metrics.getSize());
+    }
+
+    @Test
+    void testMissingContactsAreNotCached() {
+        assertFalse(contactCache.findById(9999L).isPresent());
+        assertFalse(contactCache.findById(9999L).isPresent());
+
+        verify(contactRepository, times(2)).findById(9999L);
+        assertEquals(0, contactCache.metrics().getSize());
+    }
+
+    @Test
+    void testEvictReloads() {
+        contactCache.findById(1L);
+        contactCache.findById(2L);
+        contactCache.evict(1L);
+        contactCache.findById(1L);
+        contactCache.findById(2L);
+
+        verify(contactRepository, times(2)).findById(1L);
+        verify(contactRepository, times(1)).findById(2L);
+
+        contactCache.evictAll(List.of(1L, 2L));
+        assertEquals(0, contactCache.metrics().getSize());
+    }
+
+    @Test
+    void testCopyIsServedForTheVersionItWasLoadedFor() {
+        contactCache.findById(1L, 5);
+        contactCache.findById(1L, 5);
+        verify(contactRepository, times(1)).findById(1L);
+
+        // Next modification count, e.g. a second write within the same second - reload
+        contactCache.findById(1L, 6);
+        verify(contactRepository, times(2)).findById(1L);
+
+        // A copy loaded without a version is not trusted for one
+        contactCache.findById(2L);
+        contactCache.findById(2L, 1);
+        verify(contactRepository, times(2)).findById(2L);
+        contactCache.findById(2L);
+        verify(contactRepository, times(2)).findById(2L);
+    }
+
+    @Test
+    void testMultiGetLoadsMissesTogether() {
+        when(contactRepository.findAllByIds(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(id -> id <= 1000).map(this::contact).toList();
+        });
+        contactCache.findById(2L);
+
+        List<Contact> contacts = contactCache.findAllById(List.of(3L, 2L, 9999L, 1L, 3L));
+
+        assertEquals(List.of(3L, 2L, 1L), contacts.stream().map(Contact::getId).toList());
+        // One bulk load for the misses; the cached contact is not read again
+        verify(contactRepository, times(1)).findAllByIds(argThat(ids -> !ids.contains(2L) && ids.size() == 3));
+
+        contactCache.findAllById(List.of(1L, 3L));
+        verify(contactRepository, times(1)).findAllByIds(anyList());
+    }
+
+    @Test
+    void testConcurrentMissesWaitOnOneBatch() throws Exception {
+        when(contactRepository.findAllByIds(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(this::contact).toList();
+        });
+        ContactBatchLoader loader = new ContactBatchLoader(contactRepository, true, Duration.ofMillis(50), 100, 1);
+        contactCache = new ContactCache(contactRepository, loader, 100, Duration.ofMinutes(5));
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Optional<Contact>>> reads = new ArrayList<>();
+            for (long i = 0; i < 8; i++) {
+                long id = i % 4 + 1;
+                reads.add(clients.submit(() -> contactCache.findById(id)));
+            }
+            // A load in progress is not waited for
+            assertTrue(contactCache.peek(1L).isEmpty());
+            for (int i = 0; i < reads.size(); i++) {
+                assertEquals(i % 4 + 1, reads.get(i).get(5, TimeUnit.SECONDS).orElseThrow().getId());
+            }
+        } finally {
+            clients.shutdownNow();
+            loader.stop();
+        }
+
+        verify(contactRepository, times(1)).findAllByIds(anyList());
+        assertTrue(contactCache.peek(1L).isPresent());
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        for (long id = 1; id <= 500; id++) {
+            contactCache.findById(id);
+        }
+        contactCache.findById(1L);
+
+        CacheMetrics metrics = contactCache.metrics();
+        assertTrue(metrics.getSize() <= 100, "size " + metrics.getSize());
+        assertTrue(metrics.getEvictions() >= 400, "evictions " + metrics.getEvictions());
+    }
+
+    private Contact contact(Long id) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setEmail("user" + id + "@example.com");
+        // Auto-enter field - no setter
+        ReflectionTestUtils.setField(contact, "updateTimestamp", LocalDateTime.of(2024, 1, 1, 12, 0));
+        return contact;
+    }
+}
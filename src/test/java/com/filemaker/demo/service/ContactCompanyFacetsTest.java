@@ -0,0 +1,97 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.FacetCount;
+import com.filemaker.demo.repository.ContactRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the in-memory company facet; the repository is mocked.
+ */
+public class ContactCompanyFacetsTest {
+
+    private ContactRepository contactRepository;
+    private ContactCompanyFacets facets;
+
+    @BeforeEach
+    void setUp() {
+        contactRepository = mock(ContactRepository.class);
+        when(contactRepository.countPerCompany()).thenReturn(List.of(
+                new Object[] {"Acme Corp", 3L},
+                new Object[] {"TechCo", 5L},
+                new Object[] {"DataInc", 3L}));
+        facets = new ContactCompanyFacets(contactRepository, true, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void testLoadedOnceAndSorted() {
+        assertEquals(List.of("TechCo=5", "Acme Corp=3", "DataInc=3"), describe(facets.top(10)));
+        assertEquals(List.of("TechCo=5"), describe(facets.top(1)));
+        verify(contactRepository, times(1)).countPerCompany();
+    }
+
+    @Test
+    void testWritesAreApplied() {
+        facets.refresh();
+
+        facets.increment("Acme Corp");
+        facets.increment("Globex");
+        facets.move("TechCo", "Acme Corp");
+        facets.decrement("DataInc");
+        facets.increment(null);
+
+        assertEquals(List.of("Acme Corp=5", "TechCo=4", "DataInc=2", "Globex=1"), describe(facets.top(10)));
+        verify(contactRepository, times(1)).countPerCompany();
+    }
+
+    @Test
+    void testEmptiedCompaniesAreHidden() {
+        facets.refresh();
+        for (int i = 0; i < 3; i++) {
+            facets.decrement("DataInc");
+        }
+        assertEquals(List.of("TechCo=5", "Acme Corp=3"), describe(facets.top(10)));
+    }
+
+    @Test
+    void testWriteSeenByTheReloadIsNotCountedTwice() {
+        facets.refresh();
+        // Committed while the GROUP BY ran, and counted by it
+        when(contactRepository.countPerCompany())
+                .thenAnswer(invocation -> {
+                    facets.increment("Globex");
+                    return List.of(new Object[] {"Acme Corp", 3L}, new Object[] {"TechCo", 5L}, new Object[] {"Globex", 1L});
+                })
+                .thenReturn(List.of(new Object[] {"Acme Corp", 3L}, new Object[] {"TechCo", 5L}, new Object[] {"Globex", 1L}));
+
+        facets.refresh();
+
+        assertEquals(List.of("TechCo=5", "Acme Corp=3", "Globex=1"), describe(facets.top(10)));
+        verify(contactRepository, times(3)).countPerCompany();
+    }
+
+    @Test
+    void testWritesDuringEveryReloadKeepTheCurrentCounts() {
+        facets.refresh();
+        when(contactRepository.countPerCompany()).thenAnswer(invocation -> {
+            facets.move("TechCo", "Acme Corp");
+            return List.<Object[]>of(new Object[] {"Acme Corp", 1L});
+        });
+
+        facets.refresh();
+
+        // Three loads overlapped a write; the counts kept had all three moves applied
+        assertEquals(List.of("Acme Corp=6", "DataInc=3", "TechCo=2"), describe(facets.top(10)));
+        verify(contactRepository, times(4)).countPerCompany();
+    }
+
+    private List<String> describe(List<FacetCount> counts) {
+        return counts.stream().map(c -> c.getValue() + "=" + c.getCount()).toList();
+    }
+}
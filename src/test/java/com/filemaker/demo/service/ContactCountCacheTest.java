@@ -0,0 +1,49 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.repository.ContactRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the cached contact total; the repository is mocked.
+ */
+public class ContactCountCacheTest {
+
+    private ContactRepository contactRepository;
+    private ContactCountCache contactCountCache;
+
+    @BeforeEach
+    void setUp() {
+        contactRepository = mock(ContactRepository.class);
+        when(contactRepository.countAll()).thenReturn(42L, 43L);
+        contactCountCache = new ContactCountCache(contactRepository, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testTotalIsReused() {
+        assertEquals(42L, contactCountCache.total());
+        assertEquals(42L, contactCountCache.total());
+        verify(contactRepository, times(1)).countAll();
+    }
+
+    @Test
+    void testInvalidateRecounts() {
+        assertEquals(42L, contactCountCache.total());
+        contactCountCache.invalidate();
+        assertEquals(43L, contactCountCache.total());
+        verify(contactRepository, times(2)).countAll();
+    }
+
+    @Test
+    void testTotalExpires() {
+        ContactCountCache shortLived = new ContactCountCache(contactRepository, Duration.ZERO);
+        shortLived.total();
+        shortLived.total();
+        verify(contactRepository, times(2)).countAll();
+    }
+}
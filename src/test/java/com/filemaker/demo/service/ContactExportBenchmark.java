@@ -0,0 +1,113 @@
+package com.filemaker.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: heap use of the NDJSON export must not grow with the size of the table.
+ * <p>
+ * Exports a small and a large H2 stand-in table into a discarding stream while sampling
+ * the used heap, then compares the peak growth of both runs. Not part of the default test run:
+ * <pre>mvn test -Dtest=ContactExportBenchmark</pre>
+ */
+public class ContactExportBenchmark {
+
+    private static final int SMALL_TABLE = 20_000;
+    private static final int LARGE_TABLE = 400_000;
+    private static final int SAMPLE_EVERY_ROWS = 20_000;
+    private static final long HEAP_SLACK_BYTES = 16L * 1024 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void testExportWritesOneJsonObjectPerLine() throws Exception {
+        DataSource dataSource = StandInDatabase.create("export-lines");
+        StandInDatabase.populate(dataSource, 100);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = new ContactExportService(dataSource, objectMapper, 50).exportAll(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(100, rows);
+        assertEquals(100, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("John", first.get("firstName").asText());
+        assertTrue(first.has("createTimestamp"));
+        assertFalse(first.has("photoContent"));
+    }
+
+    @Test
+    void testExportHeapStaysFlatAsTableGrows() throws Exception {
+        long smallGrowth = peakHeapGrowth("export-small", SMALL_TABLE);
+        long largeGrowth = peakHeapGrowth("export-large", LARGE_TABLE);
+
+        System.out.printf("%nrows %,d: peak heap growth %,d KB%n", SMALL_TABLE, smallGrowth / 1024);
+        System.out.printf("rows %,d: peak heap growth %,d KB%n", LARGE_TABLE, largeGrowth / 1024);
+
+        assertTrue(largeGrowth < smallGrowth + HEAP_SLACK_BYTES,
+                "export heap use should not grow with table size");
+    }
+
+    private long peakHeapGrowth(String name, int rows) throws Exception {
+        DataSource dataSource = StandInDatabase.create(name);
+        StandInDatabase.populate(dataSource, rows);
+        ContactExportService service = new ContactExportService(dataSource, objectMapper, 500);
+
+        long baseline = usedHeapAfterGc();
+        HeapSamplingStream out = new HeapSamplingStream(baseline);
+        long exported = service.exportAll(out);
+
+        assertEquals(rows, exported);
+        assertEquals(rows, out.lines);
+        System.out.printf("rows %,d: wrote %,d KB%n", rows, out.bytes / 1024);
+        return out.peakGrowth;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Discards the export, counting lines and sampling the heap every few thousand rows.
+     */
+    private static class HeapSamplingStream extends OutputStream {
+        private final long baseline;
+        private long bytes;
+        private long lines;
+        private long peakGrowth;
+
+        HeapSamplingStream(long baseline) {
+            this.baseline = baseline;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n' && ++lines % SAMPLE_EVERY_ROWS == 0) {
+                peakGrowth = Math.max(peakGrowth, usedHeapAfterGc() - baseline);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.support.StandInDatabase;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark harness: {@code /api/contacts/search} with the JPQL strategy (one OR-of-LIKEs page query
+ * plus its {@code COUNT(*)}) vs the fan-out strategy (one {@code LIKE} per column in parallel, merged
+ * in memory, then the page loaded by ID).
+ * <p>
+ * Uses an H2 stand-in database behind a DBCP2 pool, as in production. H2 evaluates the OR query
+ * with a single table scan and shares one CPU between the fan-out queries, so it cannot show the
+ * gain FileMaker gets from single-field finds; run the same comparison against a FileMaker test
+ * server (point {@code contacts.search.strategy} at each strategy) before switching the default.
+ * Not part of the default test run:
+ * <pre>mvn test -Dtest=ContactSearchFanoutBenchmark</pre>
+ */
+public class ContactSearchFanoutBenchmark {
+
+    private static final int CONTACTS = 100_000;
+    private static final int PAGE_SIZE = 20;
+    private static final int REPETITIONS = 10;
+
+    // Selective, medium and broad (1 in 8 contacts) queries
+    private static final String[] QUERIES = {"Walker42", "fiona.young", "Acme"};
+
+    private static final String WHERE = " WHERE first_name LIKE ? OR last_name LIKE ? OR email LIKE ? OR company LIKE ?";
+
+    private BasicDataSource pool;
+    private ContactSearchService searchService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        StandInDatabase.populate(StandInDatabase.create("fanout"), CONTACTS);
+        pool = new BasicDataSource();
+        pool.setUrl(StandInDatabase.url("fanout"));
+        pool.setMaxTotal(10);
+        ContactSearchIndex index = new ContactSearchIndex(pool, true, Duration.ofMinutes(10));
+        searchService = new ContactSearchService(index, pool, "fanout", 4);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        searchService.stop();
+        pool.close();
+    }
+
+    @Test
+    void testCompareStrategies() throws SQLException {
+        System.out.printf("%n%-12s %10s %12s %12s%n", "query", "matches", "JPQL (ms)", "fanout (ms)");
+        for (String query : QUERIES) {
+            ContactSearchIndex.Hits hits = searchService
+                    .search(query, 0, PAGE_SIZE, ContactSearchService.Strategy.FANOUT).orElseThrow();
+            assertEquals(orCount(query), hits.getTotal(), "match count for '" + query + "'");
+
+            double jpqlMs = time(() -> jpqlSearch(query));
+            double fanoutMs = time(() -> fanoutSearch(query));
+            System.out.printf("%-12s %10d %12.3f %12.3f%n", query, hits.getTotal(), jpqlMs, fanoutMs);
+        }
+    }
+
+    private List<Long> jpqlSearch(String query) throws SQLException {
+        List<Long> ids = select("SELECT * FROM contact" + WHERE + " FETCH FIRST " + PAGE_SIZE + " ROWS ONLY",
+                "%" + query + "%", List.of());
+        orCount(query);
+        return ids;
+    }
+
+    private List<Long> fanoutSearch(String query) throws SQLException {
+        List<Long> page = searchService
+                .search(query, 0, PAGE_SIZE, ContactSearchService.Strategy.FANOUT).orElseThrow().getIds();
+        if (page.isEmpty()) {
+            return page;
+        }
+        String in = String.join(", ", page.stream().map(id -> "?").toList());
+        return select("SELECT * FROM contact WHERE id IN (" + in + ")", null, page);
+    }
+
+    private int orCount(String query) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM contact" + WHERE)) {
+            for (int i = 1; i <= 4; i++) {
+                ps.setString(i, "%" + query + "%");
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private List<Long> select(String sql, String pattern, List<Long> ids) throws SQLException {
+        List<Long> result = new ArrayList<>();
+        try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (pattern != null) {
+                for (int i = 1; i <= 4; i++) {
+                    ps.setString(i, pattern);
+                }
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setLong(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getLong("id"));
+                }
+            }
+        }
+        return result;
+    }
+
+    private double time(SearchCall call) throws SQLException {
+        // Warm up, then average
+        call.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / REPETITIONS;
+    }
+
+    @FunctionalInterface
+    private interface SearchCall {
+        List<Long> run() throws SQLException;
+    }
+}
@@ -0,0 +1,146 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: {@code /api/contacts/search} answered by a four-column {@code LIKE '%q%'} scan
+ * vs the trigram index, at 100k and 1M synthetic contacts.
+ * <p>
+ * The LIKE side runs what Spring Data issues for {@code ContactRepository.search}: the page query
+ * and its {@code COUNT(*)}. The index side searches in memory and then loads the page of
+ * records by ID. Both run against an H2 stand-in database, which scans far faster than FileMaker,
+ * so the gap is understated. Not part of the default test run; the 1M table and its index need
+ * a larger heap:
+ * <pre>mvn test -Dtest=ContactSearchIndexBenchmark -DargLine=-Xmx3g</pre>
+ */
+public class ContactSearchIndexBenchmark {
+
+    private static final int[] TABLE_SIZES = {100_000, 1_000_000};
+    private static final int PAGE_SIZE = 20;
+    private static final int REPETITIONS = 10;
+
+    // Selective, medium and broad (1 in 8 contacts) queries
+    private static final String[] QUERIES = {"walker42", "fiona.young", "acme"};
+
+    // FileMaker's LIKE is case-insensitive, H2's is not
+    private static final String WHERE = " WHERE LOWER(first_name) LIKE ? OR LOWER(last_name) LIKE ?"
+            + " OR LOWER(email) LIKE ? OR LOWER(company) LIKE ?";
+
+    private DataSource dataSource;
+
+    @Test
+    void testIndexBeatsLikeScan() throws SQLException {
+        System.out.printf("%n%-10s %-12s %10s %12s %12s%n", "contacts", "query", "matches", "LIKE (ms)", "index (ms)");
+
+        for (int size : TABLE_SIZES) {
+            dataSource = StandInDatabase.create("searchbench");
+            StandInDatabase.populate(dataSource, size);
+
+            ContactSearchIndex index = new ContactSearchIndex(dataSource, true, Duration.ofMinutes(10));
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            index.refresh();
+            double loadMs = (System.nanoTime() - start) / 1_000_000.0;
+            long heapAfter = usedHeap();
+
+            for (String query : QUERIES) {
+                ContactSearchIndex.Hits hits = index.search(query, 0, PAGE_SIZE).orElseThrow();
+                assertEquals(likeCount(query), hits.getTotal(), "match count for '" + query + "'");
+
+                double likeMs = time(() -> likeSearch(query));
+                double indexMs = time(() -> indexSearch(index, query));
+                System.out.printf("%-10d %-12s %10d %12.3f %12.3f%n", size, query, hits.getTotal(), likeMs, indexMs);
+                assertTrue(indexMs < likeMs, "index should be faster than LIKE for '" + query + "' at " + size);
+            }
+            System.out.printf("%-10d index load %,.0f ms, ~%,d MB heap%n",
+                    size, loadMs, (heapAfter - heapBefore) / (1024 * 1024));
+
+            // Release the table before the next size
+            try (Connection conn = dataSource.getConnection()) {
+                conn.createStatement().execute("DROP TABLE contact");
+            }
+        }
+    }
+
+    private List<Long> likeSearch(String query) throws SQLException {
+        List<Long> ids = query("SELECT * FROM contact" + WHERE + " FETCH FIRST " + PAGE_SIZE + " ROWS ONLY",
+                "%" + query + "%", List.of());
+        likeCount(query);
+        return ids;
+    }
+
+    private List<Long> indexSearch(ContactSearchIndex index, String query) throws SQLException {
+        List<Long> page = index.search(query, 0, PAGE_SIZE).orElseThrow().getIds();
+        if (page.isEmpty()) {
+            return page;
+        }
+        String in = String.join(", ", page.stream().map(id -> "?").toList());
+        return query("SELECT * FROM contact WHERE id IN (" + in + ")", null, page);
+    }
+
+    private int likeCount(String query) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM contact" + WHERE)) {
+            for (int i = 1; i <= 4; i++) {
+                ps.setString(i, "%" + query + "%");
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private List<Long> query(String sql, String pattern, List<Long> ids) throws SQLException {
+        List<Long> result = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (pattern != null) {
+                for (int i = 1; i <= 4; i++) {
+                    ps.setString(i, pattern);
+                }
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setLong(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getLong("id"));
+                }
+            }
+        }
+        return result;
+    }
+
+    private double time(SearchCall call) throws SQLException {
+        // Warm up, then average
+        call.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / REPETITIONS;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @FunctionalInterface
+    private interface SearchCall {
+        List<Long> run() throws SQLException;
+    }
+}
@@ -0,0 +1,117 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the trigram search index, loaded from an H2 stand-in database.
+ */
+public class ContactSearchIndexTest {
+
+    private DataSource dataSource;
+    private ContactSearchIndex index;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = StandInDatabase.create("searchindex");
+        StandInDatabase.populate(dataSource, 2_000);
+        index = new ContactSearchIndex(dataSource, true, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void testNotReadyUntilLoaded() throws SQLException {
+        assertFalse(index.isReady());
+        assertTrue(index.search("acme", 0, 10).isEmpty());
+
+        index.refresh();
+        assertTrue(index.isReady());
+    }
+
+    @Test
+    void testMatchesLikeScan() throws SQLException {
+        index.refresh();
+        // Selective, broad, cross-field-looking, short and absent queries
+        for (String query : List.of("walker4", "Acme", "john.doe1", "gar", "ce", "j", "doe\nacme", "zzz")) {
+            ContactSearchIndex.Hits hits = index.search(query, 0, Integer.MAX_VALUE).orElseThrow();
+            assertEquals(likeScan(query), hits.getIds(), "query '" + query + "'");
+            assertEquals(hits.getIds().size(), hits.getTotal());
+        }
+    }
+
+    @Test
+    void testPaging() throws SQLException {
+        index.refresh();
+        List<Long> all = index.search("acme", 0, Integer.MAX_VALUE).orElseThrow().getIds();
+
+        ContactSearchIndex.Hits page = index.search("acme", 10, 5).orElseThrow();
+        assertEquals(all.size(), page.getTotal());
+        assertEquals(all.subList(10, 15), page.getIds());
+    }
+
+    @Test
+    void testWritesAreApplied() throws SQLException {
+        index.refresh();
+        Contact contact = new Contact("quokka@example.com", "quokka", "secret");
+        contact.setId(1_000_000L);
+        contact.setCompany("Rottnest Island");
+
+        index.put(contact);
+        assertEquals(List.of(1_000_000L), index.search("rottnest", 0, 10).orElseThrow().getIds());
+
+        contact.setCompany("Perth Zoo");
+        index.put(contact);
+        assertEquals(0, index.search("rottnest", 0, 10).orElseThrow().getTotal());
+        assertEquals(List.of(1_000_000L), index.search("perth zoo", 0, 10).orElseThrow().getIds());
+
+        index.remove(1_000_000L);
+        assertEquals(0, index.search("quokka", 0, 10).orElseThrow().getTotal());
+    }
+
+    @Test
+    void testCompactionKeepsResults() throws SQLException {
+        index.refresh();
+        List<Long> before = index.search("walker", 0, Integer.MAX_VALUE).orElseThrow().getIds();
+
+        // Enough churn to trigger compaction of tombstones
+        Contact contact = new Contact("churn@example.com", "churn", "secret");
+        for (long id = 2_000_000L; id < 2_030_000L; id++) {
+            contact.setId(id);
+            index.put(contact);
+            index.remove(id);
+        }
+
+        assertEquals(before, index.search("walker", 0, Integer.MAX_VALUE).orElseThrow().getIds());
+        assertEquals(0, index.search("churn", 0, 10).orElseThrow().getTotal());
+    }
+
+    private List<Long> likeScan(String query) throws SQLException {
+        String sql = "SELECT id FROM contact WHERE LOWER(first_name) LIKE ? OR LOWER(last_name) LIKE ? "
+                + "OR LOWER(email) LIKE ? OR LOWER(company) LIKE ? ORDER BY id";
+        String pattern = "%" + query.toLowerCase() + "%";
+        List<Long> ids = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= 4; i++) {
+                ps.setString(i, pattern);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+}
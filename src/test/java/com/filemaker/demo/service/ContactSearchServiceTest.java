@@ -0,0 +1,93 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the search strategies, against an H2 stand-in database.
+ * H2's {@code LIKE} is case-sensitive, so expected results come from the same OR query on H2.
+ */
+public class ContactSearchServiceTest {
+
+    private DataSource dataSource;
+    private ContactSearchService searchService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = StandInDatabase.create("searchservice");
+        StandInDatabase.populate(dataSource, 2_000);
+        ContactSearchIndex index = new ContactSearchIndex(dataSource, true, Duration.ofMinutes(10));
+        searchService = new ContactSearchService(index, dataSource, "fanout", 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchService.stop();
+    }
+
+    @Test
+    void testFanoutMatchesOrQuery() throws SQLException {
+        // Single-column, cross-column (first name and email) and absent queries
+        for (String query : List.of("Walker4", "Acme", "john", "e", "zzz")) {
+            ContactSearchIndex.Hits hits = searchService
+                    .search(query, 0, Integer.MAX_VALUE, ContactSearchService.Strategy.FANOUT).orElseThrow();
+            assertEquals(orQuery(query), hits.getIds(), "query '" + query + "'");
+            assertEquals(hits.getIds().size(), hits.getTotal());
+        }
+    }
+
+    @Test
+    void testFanoutPaging() throws SQLException {
+        List<Long> all = orQuery("Acme");
+        ContactSearchIndex.Hits page = searchService
+                .search("Acme", 20, 10, ContactSearchService.Strategy.FANOUT).orElseThrow();
+
+        assertEquals(all.size(), page.getTotal());
+        assertEquals(all.subList(20, 30), page.getIds());
+    }
+
+    @Test
+    void testOtherStrategies() {
+        // JPQL is run by the caller; the index answers only once loaded
+        assertEquals(Optional.empty(), searchService.search("Acme", 0, 10, ContactSearchService.Strategy.JPQL));
+        assertEquals(Optional.empty(), searchService.search("Acme", 0, 10, ContactSearchService.Strategy.INDEX));
+    }
+
+    @Test
+    void testParse() {
+        assertEquals(ContactSearchService.Strategy.FANOUT, searchService.getDefaultStrategy());
+        assertEquals(ContactSearchService.Strategy.JPQL, ContactSearchService.Strategy.parse(" Jpql "));
+        assertThrows(IllegalArgumentException.class, () -> ContactSearchService.Strategy.parse("fulltext"));
+    }
+
+    private List<Long> orQuery(String query) throws SQLException {
+        String sql = "SELECT id FROM contact WHERE first_name LIKE ? OR last_name LIKE ? "
+                + "OR email LIKE ? OR company LIKE ? ORDER BY id";
+        List<Long> ids = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= 4; i++) {
+                ps.setString(i, "%" + query + "%");
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,83 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.SuggestMetrics;
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: {@code /api/contacts/suggest} latency and memory of the suggestion index,
+ * at 100k and 1M synthetic contacts.
+ * <p>
+ * Every contact contributes a first name, last name, full name, company and email local part;
+ * the local parts are unique, so the index holds slightly more terms than there are contacts.
+ * Memory is reported twice: the index's own estimate (also served by {@code /api/stats/suggest})
+ * and the measured heap growth, both scaled to one million terms. Not part of the default test run:
+ * <pre>mvn test -Dtest=ContactSuggestIndexBenchmark -DargLine=-Xmx3g</pre>
+ */
+public class ContactSuggestIndexBenchmark {
+
+    private static final int[] TABLE_SIZES = {100_000, 1_000_000};
+    private static final int REPETITIONS = 2_000;
+
+    // One letter (precomputed), short and long prefixes (scanned), and a miss
+    private static final String[] PREFIXES = {"j", "wa", "walk", "walker42", "fiona.young", "acme", "zzz"};
+
+    @Test
+    void testSuggestUnderOneMillisecond() throws SQLException {
+        for (int size : TABLE_SIZES) {
+            DataSource dataSource = StandInDatabase.create("suggestbench");
+            StandInDatabase.populate(dataSource, size);
+
+            ContactSuggestIndex index = new ContactSuggestIndex(dataSource, true, Duration.ofMinutes(10));
+            long start = System.nanoTime();
+            index.refresh();
+            double buildMs = (System.nanoTime() - start) / 1_000_000.0;
+            SuggestMetrics metrics = index.metrics();
+            System.out.printf("%n%,d contacts: %,d terms, %,d precomputed prefixes, built in %,.0f ms%n",
+                    size, metrics.getTerms(), metrics.getPrecomputedPrefixes(), buildMs);
+            System.out.printf("%-12s %8s %10s %10s%n", "prefix", "results", "p50 (us)", "p99 (us)");
+            for (String prefix : PREFIXES) {
+                int results = index.suggest(prefix, 10).size();
+                long[] nanos = new long[REPETITIONS];
+                for (int i = 0; i < REPETITIONS; i++) {
+                    long t = System.nanoTime();
+                    index.suggest(prefix, 10);
+                    nanos[i] = System.nanoTime() - t;
+                }
+                Arrays.sort(nanos);
+                long p50 = nanos[REPETITIONS / 2];
+                long p99 = nanos[REPETITIONS * 99 / 100];
+                System.out.printf("%-12s %8d %10.1f %10.1f%n", prefix, results, p50 / 1000.0, p99 / 1000.0);
+                assertTrue(p50 < 1_000_000, "median suggest latency for '" + prefix + "' at " + size);
+            }
+
+            // Retained size: heap freed when the index is dropped (the build's garbage is already collected)
+            long heapWith = usedHeap();
+            index = null;
+            long retained = heapWith - usedHeap();
+            System.out.printf("memory: ~%,d KB estimated, ~%,d KB measured; per 1M terms ~%,d MB estimated, ~%,d MB measured%n",
+                    metrics.getEstimatedBytes() / 1024, retained / 1024,
+                    metrics.getBytesPerMillionTerms() / (1024 * 1024),
+                    retained * 1_000_000 / metrics.getTerms() / (1024 * 1024));
+
+            // Release the table before the next size
+            try (Connection conn = dataSource.getConnection()) {
+                conn.createStatement().execute("DROP TABLE contact");
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
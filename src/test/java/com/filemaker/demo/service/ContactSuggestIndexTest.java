@@ -0,0 +1,178 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.Suggestion;
+import com.filemaker.demo.entity.Contact;
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the autocomplete index, loaded from an H2 stand-in database.
+ */
+public class ContactSuggestIndexTest {
+
+    private DataSource dataSource;
+    private ContactSuggestIndex index;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = StandInDatabase.create("suggestindex");
+        StandInDatabase.populate(dataSource, 5_000);
+        index = new ContactSuggestIndex(dataSource, true, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void testNotReadyUntilLoaded() throws SQLException {
+        assertFalse(index.isReady());
+        assertTrue(index.suggest("jo", 10).isEmpty());
+
+        index.refresh();
+        assertTrue(index.isReady());
+    }
+
+    @Test
+    void testMatchesBruteForce() throws SQLException {
+        index.refresh();
+        List<Suggestion> all = bruteForce();
+        // Precomputed (large ranges), scanned (small ranges), exact-term and absent prefixes
+        for (String prefix : List.of("j", "jo", "john", "john.", "WALKER4", "walker42", "acme corp", "gar", "zzz")) {
+            List<Suggestion> expected = all.stream()
+                    .filter(s -> s.getText().toLowerCase().startsWith(prefix.toLowerCase()))
+                    .limit(ContactSuggestIndex.MAX_SUGGESTIONS)
+                    .toList();
+            assertEquals(describe(expected), describe(index.suggest(prefix, 10)), "prefix '" + prefix + "'");
+        }
+    }
+
+    @Test
+    void testRankingAndLimit() throws SQLException {
+        index.refresh();
+        List<Suggestion> suggestions = index.suggest("a", 3);
+
+        assertEquals(3, suggestions.size());
+        // 5000 contacts over 8 companies and 10 first names: the company and first name lead
+        assertEquals("Acme Corp", suggestions.get(0).getText());
+        assertEquals("company", suggestions.get(0).getType());
+        assertEquals(625, suggestions.get(0).getCount());
+        assertEquals("Alice", suggestions.get(1).getText());
+        assertEquals(500, suggestions.get(1).getCount());
+
+        assertEquals(ContactSuggestIndex.MAX_SUGGESTIONS, index.suggest("a", 1000).size());
+        assertEquals(1, index.suggest("a", 0).size());
+    }
+
+    @Test
+    void testWritesAreAddedUntilRebuild() throws SQLException {
+        index.refresh();
+        Contact contact = new Contact("quokka@example.com", "quokka", "secret");
+        contact.setId(9_001L);
+        contact.setFirstName("Quentin");
+        contact.setLastName("Quokka");
+        contact.setCompany("Acme Corp");
+
+        index.add(contact);
+        assertEquals(List.of("Quentin", "Quentin Quokka", "quokka", "Quokka"),
+                index.suggest("qu", 10).stream().map(Suggestion::getText).toList());
+        // Counts of existing terms are merged with the overlay
+        assertEquals(626, index.suggest("acme", 1).get(0).getCount());
+        assertEquals(5, index.metrics().getOverlayTerms());
+
+        // An update replaces the contact's terms instead of counting them again
+        contact.setLastName("Quill");
+        index.add(contact);
+        index.add(contact);
+        assertEquals(List.of("Quentin", "Quentin Quill", "Quill", "quokka"),
+                index.suggest("qu", 10).stream().map(Suggestion::getText).toList());
+        assertEquals(626, index.suggest("acme", 1).get(0).getCount());
+        assertEquals(5, index.metrics().getOverlayTerms());
+
+        // The rebuild reflects FileMaker, where the contact was never stored
+        index.refresh();
+        assertTrue(index.suggest("qu", 10).isEmpty());
+        assertEquals(0, index.metrics().getOverlayTerms());
+    }
+
+    @Test
+    void testWritesDuringRebuildAreKept() throws SQLException {
+        Contact before = contact(9_001L, "Quentin");
+        Contact during = contact(9_002L, "Quincy");
+        DataSource loading = spy(dataSource);
+        index = new ContactSuggestIndex(loading, true, Duration.ofMinutes(10));
+        index.add(before);
+        // Committed after the load started, so it may be missing from the new snapshot
+        doAnswer(invocation -> {
+            index.add(during);
+            return invocation.callRealMethod();
+        }).when(loading).getConnection();
+
+        index.refresh();
+
+        assertEquals(List.of("Quincy"), index.suggest("qu", 10).stream().map(Suggestion::getText).toList());
+    }
+
+    @Test
+    void testMetrics() throws SQLException {
+        index.refresh();
+        var metrics = index.metrics();
+
+        assertEquals(bruteForce().size(), metrics.getTerms());
+        assertTrue(metrics.getPrecomputedPrefixes() > 0);
+        assertTrue(metrics.getEstimatedBytes() > 0);
+        assertEquals(metrics.getEstimatedBytes() * 1_000_000 / metrics.getTerms(), metrics.getBytesPerMillionTerms());
+    }
+
+    /**
+     * All terms with their counts, in suggestion order, computed straight from the table.
+     */
+    private List<Suggestion> bruteForce() throws SQLException {
+        Map<String, Suggestion> terms = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT first_name, last_name, email, company FROM contact");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String email = rs.getString(3);
+                add(terms, rs.getString(1), "name");
+                add(terms, rs.getString(2), "name");
+                add(terms, rs.getString(1) + " " + rs.getString(2), "name");
+                add(terms, email.substring(0, email.indexOf('@')), "email");
+                add(terms, rs.getString(4), "company");
+            }
+        }
+        List<Suggestion> all = new ArrayList<>(terms.values());
+        all.sort(Comparator.comparingInt(Suggestion::getCount).reversed()
+                .thenComparing(s -> s.getText().toLowerCase())
+                .thenComparing(Suggestion::getType));
+        return all;
+    }
+
+    private void add(Map<String, Suggestion> terms, String text, String type) {
+        Suggestion term = terms.computeIfAbsent(type + ":" + text.toLowerCase(), key -> new Suggestion(text, type, 0));
+        term.setCount(term.getCount() + 1);
+    }
+
+    private List<String> describe(List<Suggestion> suggestions) {
+        return suggestions.stream().map(s -> s.getType() + ":" + s.getText() + "=" + s.getCount()).toList();
+    }
+
+    private static Contact contact(Long id, String firstName) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setFirstName(firstName);
+        return contact;
+    }
+}
@@ -0,0 +1,114 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.support.StandInDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: heap allocated per photo download, whole {@code byte[]} vs streamed.
+ * <p>
+ * Stores a 30 MB container in the H2 stand-in, then downloads it repeatedly into a discarding
+ * stream with {@link ContainerFieldService#downloadFromContainer(String, String, Long, String)}
+ * and with {@link ContainerFieldService#openFromContainer}, counting the bytes the downloading
+ * thread allocates. H2's {@code GetAs} stand-in builds the whole value inside the database when the
+ * query runs, so the allocation of the bare query is measured too and subtracted: the figures are
+ * what the download path adds on top of the driver. Not part of the default test run:
+ * <pre>mvn test -Dtest=ContainerDownloadBenchmark</pre>
+ */
+public class ContainerDownloadBenchmark {
+
+    private static final int PHOTO_BYTES = 30 * 1024 * 1024;
+    private static final DataSize BUFFER_SIZE = DataSize.ofKilobytes(64);
+    private static final int ROUNDS = 5;
+
+    @Test
+    void testStreamedDownloadAllocatesFarLessThanTheContainer() throws Exception {
+        DataSource dataSource = StandInDatabase.create("container-download");
+        StandInDatabase.populate(dataSource, 1);
+        byte[] photo = new byte[PHOTO_BYTES];
+        new Random(42).nextBytes(photo);
+        StandInDatabase.storePhoto(dataSource, 1, photo);
+        photo = null;
+
+        ContainerFieldService service = new ContainerFieldService(dataSource,
+                new ContainerWriteBudget(DataSize.ofMegabytes(1), Duration.ZERO), BUFFER_SIZE, 2, Duration.ZERO);
+
+        long queryAllocated = Long.MAX_VALUE;
+        long wholeAllocated = Long.MAX_VALUE;
+        long streamedAllocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            runQuery(dataSource);
+            queryAllocated = Math.min(queryAllocated, allocatedBytes() - before);
+
+            CountingStream out = new CountingStream();
+            before = allocatedBytes();
+            byte[] data = service.downloadFromContainer("contact", "photo_content", 1L, "JPEG");
+            out.write(data);
+            wholeAllocated = Math.min(wholeAllocated, allocatedBytes() - before);
+            assertEquals(PHOTO_BYTES, out.bytes);
+
+            out = new CountingStream();
+            before = allocatedBytes();
+            try (ContainerStream stream = service.openFromContainer("contact", "photo_content", 1L, "JPEG")) {
+                stream.transferTo(out);
+            }
+            streamedAllocated = Math.min(streamedAllocated, allocatedBytes() - before);
+            assertEquals(PHOTO_BYTES, out.bytes);
+        }
+
+        wholeAllocated -= queryAllocated;
+        streamedAllocated -= queryAllocated;
+        System.out.printf("%ncontainer %,d KB, buffer %,d KB, query alone %,d KB%n",
+                PHOTO_BYTES / 1024, BUFFER_SIZE.toKilobytes(), queryAllocated / 1024);
+        System.out.printf("byte[]:   %,d KB allocated per download%n", wholeAllocated / 1024);
+        System.out.printf("streamed: %,d KB allocated per download%n", streamedAllocated / 1024);
+
+        assertTrue(wholeAllocated >= PHOTO_BYTES, "byte[] download should hold the whole container");
+        assertTrue(streamedAllocated < PHOTO_BYTES / 4, "streamed download should not allocate the container");
+    }
+
+    private static void runQuery(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT GetAs(photo_content, 'JPEG') FROM contact WHERE id = ?")) {
+            ps.setLong(1, 1L);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Discards the download, counting its bytes.
+     */
+    private static class CountingStream extends OutputStream {
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
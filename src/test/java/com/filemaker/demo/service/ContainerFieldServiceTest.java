@@ -115,6 +115,44 @@ public class ContainerFieldServiceTest {
         assertTrue(result == null || result.length >= 0);
     }
 
+    @Test
+    void testOpenFromContainer() throws Exception {
+        ContainerStream stream = containerFieldService.openFromContainer(
+                testTableName,
+                testFieldName,
+                testRecordId,
+                "JPEG"
+        );
+
+        // Null if no data exists or format doesn't match; otherwise the stream must be readable and closed
+        if (stream != null) {
+            try (stream) {
+                assertTrue(stream.transferTo(java.io.OutputStream.nullOutputStream()) > 0);
+            }
+        }
+    }
+
+    @Test
+    void testOpenWithMetadata() throws Exception {
+        ContainerFieldService.ContainerRow row = containerFieldService.openWithMetadata(
+                testTableName,
+                testFieldName,
+                "photo_content_type",
+                testRecordId,
+                null
+        );
+
+        // Null if the record does not exist; the stream is null if the container is empty
+        if (row != null) {
+            assertTrue(row.version() >= 0);
+            if (row.stream() != null) {
+                try (ContainerStream stream = row.stream()) {
+                    assertTrue(stream.transferTo(java.io.OutputStream.nullOutputStream()) > 0);
+                }
+            }
+        }
+    }
+
     @Test
     void testDownloadFromContainerWithoutFormat() {
         byte[] result = containerFieldService.downloadFromContainer(
@@ -0,0 +1,206 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.repository.ContactRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for container format resolution; the container reads are mocked, so no FileMaker server is needed.
+ */
+public class ContainerFormatResolverTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 1, 2, 3};
+    private static final byte[] UNKNOWN = "not a known format".getBytes();
+
+    private ContainerFieldService containerFieldService;
+    private ContactRepository contactRepository;
+    private ContactCache contactCache;
+    private ContainerFormatResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        containerFieldService = mock(ContainerFieldService.class);
+        contactRepository = mock(ContactRepository.class);
+        contactCache = mock(ContactCache.class);
+        resolver = new ContainerFormatResolver(containerFieldService, contactRepository, contactCache, 100);
+        when(contactRepository.updateFieldsIfVersion(anyLong(), anyLong(), anyMap())).thenReturn(1);
+    }
+
+    @Test
+    void testProbesOnceThenOpensWithOneQuery() throws Exception {
+        holds("PNGf", PNG);
+
+        ContainerFormatResolver.Resolution first = resolver.open("contact", "photo_content", 1L, 5, null, null);
+        assertEquals(ContainerFormat.PNG, first.format());
+        assertTrue(first.recordsContentType());
+        // Not while the stream holds its connection
+        verify(contactRepository, never()).updateFieldsIfVersion(anyLong(), anyLong(), anyMap());
+        assertArrayEquals(PNG, read(first));
+        verify(contactRepository).updateFieldsIfVersion(1L, 5, Map.of("photoContentType", "image/png"));
+        verify(contactCache).evict(1L);
+        // JPEG was tried first
+        verify(containerFieldService).openFromContainer("contact", "photo_content", 1L, "JPEG");
+
+        clearInvocations(containerFieldService, contactRepository);
+        ContainerFormatResolver.Resolution second = resolver.open("contact", "photo_content", 1L, 5, null, null);
+        assertEquals(ContainerFormat.PNG, second.format());
+        assertFalse(second.recordsContentType());
+        assertArrayEquals(PNG, read(second));
+        verify(containerFieldService, times(1)).openFromContainer(anyString(), anyString(), anyLong(), anyString());
+        verify(contactRepository, never()).updateFieldsIfVersion(anyLong(), anyLong(), anyMap());
+    }
+
+    @Test
+    void testReferenceExtensionIsTriedFirst() {
+        holds("PNGf", PNG);
+
+        assertEquals(ContainerFormat.PNG, resolver.open("contact", "photo_content", 1L, 5, "image:/scan.PNG", null).format());
+
+        verify(containerFieldService, times(1)).openFromContainer(anyString(), anyString(), anyLong(), anyString());
+    }
+
+    @Test
+    void testTypeCodeAlreadyTriedIsSkipped() {
+        holds("PNGf", PNG);
+
+        assertEquals(ContainerFormat.PNG, resolver.open("contact", "photo_content", 1L, 5, null, "JPEG").format());
+
+        verify(containerFieldService, never()).openFromContainer(anyString(), anyString(), anyLong(), eq("JPEG"));
+    }
+
+    @Test
+    void testAcceptIdentifiesAnOpenContainer() throws Exception {
+        ContainerFormatResolver.Resolution resolution =
+                resolver.accept("contact", "photo_content", 1L, 5, "PNGf", ContainerStream.of(PNG));
+
+        assertEquals(ContainerFormat.PNG, resolution.format());
+        assertTrue(resolution.recordsContentType());
+        assertArrayEquals(PNG, read(resolution));
+        verify(contactRepository).updateFieldsIfVersion(1L, 5, Map.of("photoContentType", "image/png"));
+        verifyNoInteractions(containerFieldService);
+
+        // The type code is remembered like one found by probing
+        holds("PNGf", PNG);
+        resolver.open("contact", "photo_content", 1L, 5, null, null);
+        verify(containerFieldService, times(1)).openFromContainer(anyString(), anyString(), anyLong(), anyString());
+    }
+
+    @Test
+    void testNewVersionIsResolvedAgain() {
+        holds("PNGf", PNG);
+        resolver.open("contact", "photo_content", 1L, 5, null, null);
+        clearInvocations(containerFieldService);
+
+        resolver.open("contact", "photo_content", 1L, 6, null, null);
+
+        verify(containerFieldService, times(2)).openFromContainer(anyString(), anyString(), anyLong(), anyString());
+    }
+
+    @Test
+    void testStaleTypeCodeFallsBackToProbing() {
+        // Version unknown: the remembered type code is tried, but the container now holds a JPEG
+        holds("PNGf", PNG);
+        resolver.open("contact", "photo_content", 1L, -1, null, null);
+        reset(containerFieldService);
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0x10};
+        holds("JPEG", jpeg);
+
+        ContainerFormatResolver.Resolution resolution = resolver.open("contact", "photo_content", 1L, -1, null, null);
+
+        assertEquals(ContainerFormat.JPEG, resolution.format());
+        verify(containerFieldService, times(2)).openFromContainer(anyString(), anyString(), anyLong(), anyString());
+    }
+
+    @Test
+    void testUnrecognizedContentIsNotRecorded() {
+        holds("JPEG", UNKNOWN);
+
+        ContainerFormatResolver.Resolution resolution = resolver.open("contact", "photo_content", 1L, 5, null, null);
+
+        // Served as what it was read as, but nothing is written to the contact
+        assertEquals(ContainerFormat.JPEG, resolution.format());
+        assertFalse(resolution.recordsContentType());
+        verify(contactRepository, never()).updateFieldsIfVersion(anyLong(), anyLong(), anyMap());
+    }
+
+    @Test
+    void testContentTypeIsRecordedAfterTheConnectionIsReleased() {
+        boolean[] released = {false};
+        ContainerStream held = ContainerStream.of(PNG).whenClosed(() -> released[0] = true);
+        when(contactRepository.updateFieldsIfVersion(anyLong(), anyLong(), anyMap())).thenAnswer(invocation -> {
+            assertTrue(released[0], "content type recorded while the container connection is held");
+            return 1;
+        });
+
+        ContainerFormatResolver.Resolution resolution = resolver.accept("contact", "photo_content", 1L, 5, "PNGf", held);
+        resolution.stream().close();
+        resolution.stream().close();
+
+        verify(contactRepository, times(1)).updateFieldsIfVersion(1L, 5, Map.of("photoContentType", "image/png"));
+    }
+
+    @Test
+    void testFailedWriteBackStillServes() throws Exception {
+        holds("PNGf", PNG);
+        when(contactRepository.updateFieldsIfVersion(anyLong(), anyLong(), anyMap())).thenThrow(new IllegalStateException("read-only"));
+
+        ContainerFormatResolver.Resolution resolution = resolver.open("contact", "photo_content", 1L, 5, null, null);
+
+        assertArrayEquals(PNG, read(resolution));
+        verify(contactRepository).updateFieldsIfVersion(1L, 5, Map.of("photoContentType", "image/png"));
+    }
+
+    @Test
+    void testPhotoChangedMeanwhileIsNotOverwritten() throws Exception {
+        holds("PNGf", PNG);
+        when(contactRepository.updateFieldsIfVersion(anyLong(), anyLong(), anyMap())).thenReturn(0);
+
+        read(resolver.open("contact", "photo_content", 1L, 5, null, null));
+
+        // Only written against the version that was read
+        verify(contactRepository).updateFieldsIfVersion(1L, 5, Map.of("photoContentType", "image/png"));
+        verify(contactRepository, never()).updateFields(anyLong(), anyMap());
+    }
+
+    @Test
+    void testDetectReadsContentOnly() {
+        holds("PNGf", PNG);
+        assertEquals(Optional.of(ContainerFormat.PNG), resolver.detect("contact", "photo_content", 1L));
+
+        reset(containerFieldService);
+        holds("JPEG", UNKNOWN);
+        assertTrue(resolver.detect("contact", "photo_content", 2L).isEmpty());
+
+        verify(containerFieldService, never()).getContainerReference(anyString(), anyString(), anyLong());
+        verifyNoInteractions(contactRepository);
+    }
+
+    @Test
+    void testEmptyContainer() {
+        assertNull(resolver.open("contact", "photo_content", 1L, 5, null, null));
+
+        verify(containerFieldService, times(5)).openFromContainer(anyString(), anyString(), anyLong(), anyString());
+    }
+
+    // The container only converts to typeCode; other GetAs reads return NULL
+    private void holds(String typeCode, byte[] data) {
+        when(containerFieldService.openFromContainer(anyString(), anyString(), anyLong(), eq(typeCode)))
+                .thenAnswer(invocation -> ContainerStream.of(data));
+    }
+
+    private static byte[] read(ContainerFormatResolver.Resolution resolution) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerStream stream = resolution.stream()) {
+            stream.transferTo(out);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,243 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.support.StandInDatabase;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for streamed container downloads: {@link ContainerStream} and
+ * {@link ContainerFieldService#openFromContainer} against the H2 stand-in, and
+ * {@link ContainerFieldService#openWithMetadata} against a mocked driver (H2 cannot cast a BLOB to VARCHAR).
+ */
+public class ContainerStreamTest {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    @Test
+    void testSmallContainerHasKnownLength() throws Exception {
+        byte[] data = randomBytes(100);
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(data), new byte[BUFFER_SIZE], () -> { });
+
+        assertFalse(stream.isEmpty());
+        assertEquals(100, stream.knownLength());
+        assertArrayEquals(data, copy(stream));
+    }
+
+    @Test
+    void testLargeContainerIsCopiedThroughTheBuffer() throws Exception {
+        byte[] data = randomBytes(10 * BUFFER_SIZE + 7);
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(data), new byte[BUFFER_SIZE], () -> { });
+
+        assertEquals(-1, stream.knownLength());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, stream.transferTo(out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void testReadAsInputStream() throws Exception {
+        byte[] data = randomBytes(3 * BUFFER_SIZE + 7);
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(data), new byte[BUFFER_SIZE], () -> { });
+
+        assertArrayEquals(data, stream.asInputStream().readAllBytes());
+        assertArrayEquals(data, ContainerStream.of(data).asInputStream().readAllBytes());
+    }
+
+    @Test
+    void testEmptyContainer() throws Exception {
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(new byte[0]), new byte[BUFFER_SIZE], () -> { });
+
+        assertTrue(stream.isEmpty());
+        assertEquals(0, stream.knownLength());
+    }
+
+    @Test
+    void testStartsWithChecksTheFirstChunk() throws Exception {
+        byte[] data = randomBytes(10 * BUFFER_SIZE);
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(data), new byte[BUFFER_SIZE], () -> { });
+
+        assertTrue(stream.startsWith(new byte[] {data[0], data[1], data[2]}));
+        assertFalse(stream.startsWith(new byte[] {(byte) (data[0] + 1)}));
+        assertFalse(ContainerStream.of(new byte[] {1}).startsWith(new byte[] {1, 2}));
+    }
+
+    @Test
+    void testCloseReleasesOnce() throws Exception {
+        AtomicInteger releases = new AtomicInteger();
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(randomBytes(10)), new byte[BUFFER_SIZE],
+                releases::incrementAndGet);
+
+        stream.close();
+        stream.close();
+
+        assertEquals(1, releases.get());
+    }
+
+    @Test
+    void testOpenFromContainerStreamsStoredData() throws Exception {
+        DataSource dataSource = StandInDatabase.create("container-stream");
+        StandInDatabase.populate(dataSource, 3);
+        byte[] photo = randomBytes(200 * 1024);
+        StandInDatabase.storePhoto(dataSource, 2, photo);
+        ContainerFieldService service = service(dataSource);
+
+        try (ContainerStream stream = service.openFromContainer("contact", "photo_content", 2L, "JPEG")) {
+            assertNotNull(stream);
+            assertEquals(-1, stream.knownLength());
+            assertArrayEquals(photo, copy(stream));
+        }
+        // No photo, and no such contact
+        assertNull(service.openFromContainer("contact", "photo_content", 1L, "JPEG"));
+        assertNull(service.openFromContainer("contact", "photo_content", 99L, "JPEG"));
+    }
+
+    @Test
+    void testOpenFromContainerFallsBackToGetBytes() throws Exception {
+        byte[] photo = randomBytes(100);
+        DataSource dataSource = mock(DataSource.class);
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getBinaryStream(1)).thenThrow(new SQLFeatureNotSupportedException("getBinaryStream"));
+        when(rs.getBytes(1)).thenReturn(photo);
+        ContainerFieldService service = service(dataSource);
+
+        for (int i = 0; i < 2; i++) {
+            try (ContainerStream stream = service.openFromContainer("contact", "photo_content", 1L, "JPEG")) {
+                assertEquals(photo.length, stream.knownLength());
+                assertArrayEquals(photo, copy(stream));
+            }
+        }
+        // The driver is asked for a stream only once
+        verify(rs, times(1)).getBinaryStream(1);
+        verify(conn, times(2)).close();
+    }
+
+    @Test
+    void testOpenWithMetadataReadsTheRowInOneStatement() throws Exception {
+        byte[] photo = randomBytes(100);
+        DataSource dataSource = mock(DataSource.class);
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getString(1)).thenReturn("image/png");
+        when(rs.getString(2)).thenReturn("image:/photo.png");
+        when(rs.getLong(3)).thenReturn(7L);
+        when(rs.getBinaryStream(4)).thenReturn(new ByteArrayInputStream(photo));
+        ContainerFieldService service = service(dataSource);
+
+        ContainerFieldService.ContainerRow row =
+                service.openWithMetadata("contact", "photo_content", "photo_content_type", 1L, null);
+        assertEquals("image/png", row.contentType());
+        assertEquals("image:/photo.png", row.reference());
+        assertEquals(7L, row.version());
+        try (ContainerStream stream = row.stream()) {
+            assertArrayEquals(photo, copy(stream));
+        }
+        verify(conn, times(1)).close();
+
+        // No format: the type code is picked from the content type column within the statement
+        verify(conn).prepareStatement(argThat(sql -> sql.contains("CAST(photo_content AS VARCHAR)")
+                && sql.contains("ROWMODID")
+                && sql.contains("WHEN 'image/png' THEN 'PNGf'")
+                && sql.contains("ELSE 'JPEG'")));
+        // A missing record
+        assertNull(service.openWithMetadata("contact", "photo_content", "photo_content_type", 2L, "PNGf"));
+        verify(conn, times(2)).close();
+    }
+
+    @Test
+    void testOpenWithMetadataOfEmptyContainer() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getString(1)).thenReturn("image/jpeg");
+        when(rs.getLong(3)).thenReturn(3L);
+
+        ContainerFieldService.ContainerRow row = service(dataSource)
+                .openWithMetadata("contact", "photo_content", "photo_content_type", 1L, "JPEG");
+
+        // The record exists, so its metadata is still returned and the connection released
+        assertNull(row.stream());
+        assertNull(row.reference());
+        assertEquals(3L, row.version());
+        verify(conn).close();
+    }
+
+    @Test
+    void testOpenStreamsAreCappedBelowThePoolSize() throws Exception {
+        // Pool of 3 with 2 connections reserved: one stream at a time
+        BasicDataSource dataSource = mock(BasicDataSource.class);
+        when(dataSource.getMaxTotal()).thenReturn(3);
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getBinaryStream(1)).thenAnswer(invocation -> new ByteArrayInputStream(randomBytes(100)));
+        ContainerFieldService service = service(dataSource);
+
+        ContainerStream open = service.openFromContainer("contact", "photo_content", 1L, "JPEG");
+        assertThrows(ContainerFieldService.StreamsBusyException.class,
+                () -> service.openFromContainer("contact", "photo_content", 2L, "JPEG"));
+        verify(dataSource, times(1)).getConnection();
+
+        // Closing the stream frees its slot; so does a container that turns out to be empty
+        open.close();
+        when(rs.getBinaryStream(1)).thenReturn(null);
+        assertNull(service.openFromContainer("contact", "photo_content", 2L, "JPEG"));
+        when(rs.getBinaryStream(1)).thenAnswer(invocation -> new ByteArrayInputStream(randomBytes(100)));
+        try (ContainerStream stream = service.openFromContainer("contact", "photo_content", 3L, "JPEG")) {
+            assertNotNull(stream);
+        }
+    }
+
+    private static ContainerFieldService service(DataSource dataSource) {
+        return new ContainerFieldService(dataSource,
+                new ContainerWriteBudget(DataSize.ofMegabytes(1), Duration.ZERO), DataSize.ofBytes(BUFFER_SIZE), 2, Duration.ZERO);
+    }
+
+    private static byte[] copy(ContainerStream stream) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stream.transferTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
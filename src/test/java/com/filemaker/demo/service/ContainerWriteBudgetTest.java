@@ -0,0 +1,121 @@
+package com.filemaker.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the in-flight container write budget.
+ */
+public class ContainerWriteBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void testReservationsShareTheBudget() {
+        ContainerWriteBudget budget = new ContainerWriteBudget(DataSize.ofMegabytes(10), Duration.ZERO);
+
+        try (ContainerWriteBudget.Reservation first = budget.reserve(6 * MB);
+             ContainerWriteBudget.Reservation second = budget.reserve(4 * MB)) {
+            assertEquals(10 * MB, budget.metrics().getReservedBytes());
+
+            var e = assertThrows(ContainerWriteBudget.BudgetExceededException.class, () -> budget.reserve(1));
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(0, budget.metrics().getReservedBytes());
+        assertEquals(1, budget.metrics().getRejected());
+    }
+
+    @Test
+    void testWriteLargerThanBudgetIsRejectedAtOnce() {
+        ContainerWriteBudget budget = new ContainerWriteBudget(DataSize.ofMegabytes(10), Duration.ofSeconds(30));
+
+        var e = assertThrows(ContainerWriteBudget.BudgetExceededException.class, () -> budget.reserve(11 * MB));
+        assertFalse(e.isRetryable());
+    }
+
+    @Test
+    void testWaitingWriteProceedsWhenRoomIsFreed() throws Exception {
+        ContainerWriteBudget budget = new ContainerWriteBudget(DataSize.ofMegabytes(10), Duration.ofSeconds(30));
+        ContainerWriteBudget.Reservation running = budget.reserve(8 * MB);
+
+        CompletableFuture<ContainerWriteBudget.Reservation> queued = CompletableFuture.supplyAsync(() -> budget.reserve(5 * MB));
+        while (budget.metrics().getWaiting() == 0) {
+            Thread.sleep(5);
+        }
+        assertFalse(queued.isDone());
+
+        running.close();
+        running.close();
+        queued.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, budget.metrics().getReservedBytes());
+    }
+
+    @Test
+    void testUploadReadsTheFileAndReleasesItsShare() throws Exception {
+        byte[] photo = "fake image data".getBytes();
+        DataSource dataSource = mock(DataSource.class);
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeUpdate()).thenReturn(1);
+        ContainerWriteBudget budget = new ContainerWriteBudget(DataSize.ofMegabytes(1), Duration.ZERO);
+        ContainerFieldService service = new ContainerFieldService(dataSource, budget,
+                DataSize.ofKilobytes(64), 2, Duration.ZERO);
+
+        assertTrue(service.uploadToContainer("contact", "photo_content", 1L,
+                new MockMultipartFile("file", "photo.jpg", "image/jpeg", photo)));
+
+        verify(ps).setBytes(1, photo);
+        assertEquals(0, budget.metrics().getReservedBytes());
+        // Too large: rejected before a connection is taken
+        assertThrows(ContainerWriteBudget.BudgetExceededException.class, () -> service.uploadToContainer(
+                "contact", "photo_content", 1L, new MockMultipartFile("file", "big.pdf", "application/pdf", new byte[2 * (int) MB])));
+        verify(dataSource, times(1)).getConnection();
+    }
+
+    @Test
+    void testUploadWithContentTypeIsOneStatement() throws Exception {
+        byte[] photo = "fake image data".getBytes();
+        DataSource dataSource = mock(DataSource.class);
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeUpdate()).thenReturn(1, 0, 0);
+        ContainerFieldService service = new ContainerFieldService(dataSource,
+                new ContainerWriteBudget(DataSize.ofMegabytes(1), Duration.ZERO), DataSize.ofKilobytes(64), 2, Duration.ZERO);
+
+        assertEquals(ContainerFieldService.WriteResult.UPDATED, service.uploadWithContentType("contact", "photo_content",
+                "photo_content_type", 1L, new MockMultipartFile("file", "o'brien.jpg", "image/jpeg", photo), "image/jpeg"));
+        verify(conn).prepareStatement(
+                "UPDATE contact SET photo_content = ? AS 'o''brien.jpg', photo_content_type = ? WHERE id = ?");
+        verify(ps).setBytes(1, photo);
+        verify(ps).setString(2, "image/jpeg");
+        verify(ps).setLong(3, 1L);
+
+        // No row: the contact does not exist
+        assertEquals(ContainerFieldService.WriteResult.NOT_FOUND, service.uploadWithContentType("contact", "photo_content",
+                "photo_content_type", 2L, new MockMultipartFile("file", "photo.jpg", "image/jpeg", photo), "image/jpeg"));
+        assertEquals(ContainerFieldService.WriteResult.NOT_FOUND,
+                service.clearWithContentType("contact", "photo_content", "photo_content_type", 2L));
+        verify(conn).prepareStatement("UPDATE contact SET photo_content = NULL, photo_content_type = NULL WHERE id = ?");
+
+        when(ps.executeUpdate()).thenThrow(new SQLException("connection reset"));
+        assertEquals(ContainerFieldService.WriteResult.FAILED,
+                service.clearWithContentType("contact", "photo_content", "photo_content_type", 1L));
+    }
+}
@@ -0,0 +1,212 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.BackfillProgress;
+import com.filemaker.demo.support.StandInDatabase;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the photo content-type backfill, against the H2 stand-in with mocked container reads.
+ * <p>
+ * Contacts 1-10 have a photo: 1 already has a content type, 2-5 have a {@code .jpg} reference, 6 and 8
+ * are PNGs without a usable reference, 7, 9 and 10 are not recognized. Contacts 11-30 have no photo.
+ */
+public class PhotoContentTypeBackfillTest {
+
+    private DataSource dataSource;
+    private ContainerFieldService containerFieldService;
+    private ContainerFormatResolver formatResolver;
+    private ContactCache contactCache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = StandInDatabase.create("photo-backfill");
+        StandInDatabase.populate(dataSource, 30);
+        for (long id = 1; id <= 10; id++) {
+            StandInDatabase.storePhoto(dataSource, id, new byte[] {1, 2, 3});
+        }
+        setContentType(1L, "image/gif");
+
+        containerFieldService = mock(ContainerFieldService.class);
+        formatResolver = mock(ContainerFormatResolver.class);
+        contactCache = mock(ContactCache.class);
+        when(containerFieldService.getContainerReference(anyString(), anyString(), anyLong())).thenAnswer(invocation -> {
+            long id = invocation.getArgument(2);
+            return id <= 5 ? "image:/photo" + id + ".JPG" : id <= 7 ? "remote:scan" : null;
+        });
+        when(formatResolver.detect(anyString(), anyString(), anyLong())).thenAnswer(invocation -> {
+            long id = invocation.getArgument(2);
+            return id == 6 || id == 8 ? Optional.of(ContainerFormat.PNG) : Optional.empty();
+        });
+    }
+
+    @Test
+    void testFillsMissingContentTypes() throws Exception {
+        PhotoContentTypeBackfill backfill = backfill(dataSource, 2, 4);
+
+        assertTrue(backfill.start(null));
+        BackfillProgress progress = awaitEnd(backfill);
+
+        assertEquals("COMPLETED", progress.getState());
+        assertEquals(9, progress.getScanned());
+        assertEquals(6, progress.getUpdated());
+        assertEquals(5, progress.getSniffed());
+        assertEquals(3, progress.getUnresolved());
+        assertEquals(30, progress.getMaxId());
+        assertTrue(progress.getNextId() > 30);
+        assertEquals("image/gif", contentType(1L));
+        for (long id = 2; id <= 5; id++) {
+            assertEquals("image/jpeg", contentType(id));
+        }
+        assertEquals("image/png", contentType(6L));
+        assertEquals("image/png", contentType(8L));
+        assertNull(contentType(7L));
+        // Only contacts with a photo and no content type are looked at
+        verify(containerFieldService, never()).getContainerReference(anyString(), anyString(), eq(1L));
+        verify(containerFieldService, never()).getContainerReference(anyString(), anyString(), eq(11L));
+        verify(formatResolver, never()).detect(anyString(), anyString(), eq(2L));
+        verify(contactCache, atLeastOnce()).evictAll(argThat(ids -> ids.contains(6L)));
+    }
+
+    @Test
+    void testContentTypeSetMeanwhileIsKept() throws Exception {
+        when(containerFieldService.getContainerReference(anyString(), anyString(), eq(2L))).thenAnswer(invocation -> {
+            // A photo uploaded while the job examines this contact
+            setContentType(2L, "image/webp");
+            return "image:/photo2.jpg";
+        });
+        PhotoContentTypeBackfill backfill = backfill(dataSource, 1, 100);
+
+        backfill.start(null);
+        BackfillProgress progress = awaitEnd(backfill);
+
+        assertEquals("image/webp", contentType(2L));
+        assertEquals(5, progress.getUpdated());
+    }
+
+    @Test
+    void testStartFromId() throws Exception {
+        PhotoContentTypeBackfill backfill = backfill(dataSource, 1, 4);
+
+        backfill.start(6L);
+        awaitEnd(backfill);
+
+        assertNull(contentType(5L));
+        assertEquals("image/png", contentType(6L));
+    }
+
+    @Test
+    void testPausedRunResumesWhereItStopped() throws Exception {
+        PhotoContentTypeBackfill backfill = backfill(dataSource, 1, 2);
+
+        backfill.start(null);
+        backfill.pause();
+        assertEquals("PAUSED", backfill.progress().getState());
+        // The range in progress is finished first
+        assertEquals("PAUSED", awaitEnd(backfill).getState());
+        assertTrue(backfill.start(null));
+        BackfillProgress progress = awaitEnd(backfill);
+
+        assertEquals("COMPLETED", progress.getState());
+        assertEquals(9, progress.getScanned());
+        assertEquals(6, progress.getUpdated());
+    }
+
+    @Test
+    void testFailedRangeIsRetriedOnResume() throws Exception {
+        AtomicBoolean failed = new AtomicBoolean();
+        when(containerFieldService.getContainerReference(anyString(), anyString(), eq(6L))).thenAnswer(invocation -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("connection reset");
+            }
+            return "remote:scan";
+        });
+        PhotoContentTypeBackfill backfill = backfill(dataSource, 1, 4);
+
+        backfill.start(null);
+        BackfillProgress progress = awaitEnd(backfill);
+        assertEquals("FAILED", progress.getState());
+        assertEquals("connection reset", progress.getLastError());
+        assertEquals(4, progress.getNextId());
+
+        backfill.start(null);
+        progress = awaitEnd(backfill);
+        assertEquals("COMPLETED", progress.getState());
+        assertEquals("image/png", contentType(6L));
+        assertEquals("image/png", contentType(8L));
+    }
+
+    @Test
+    void testWaitsWhileThePoolIsBusy() throws Exception {
+        try (BasicDataSource pool = new BasicDataSource()) {
+            pool.setUrl(StandInDatabase.url("photo-backfill"));
+            pool.setMaxTotal(3);
+            PhotoContentTypeBackfill backfill = new PhotoContentTypeBackfill(pool, containerFieldService, formatResolver,
+                    contactCache, 1, 100, Duration.ZERO, 2, false);
+
+            // Requests hold two of three connections: fewer than the two reserved ones are free
+            Connection first = pool.getConnection();
+            Connection second = pool.getConnection();
+            backfill.start(null);
+            Thread.sleep(500);
+            BackfillProgress waiting = backfill.progress();
+            assertEquals("RUNNING", waiting.getState());
+            assertEquals(0, waiting.getScanned());
+            assertTrue(waiting.getThrottledMillis() > 0);
+
+            first.close();
+            second.close();
+            assertEquals("COMPLETED", awaitEnd(backfill).getState());
+            backfill.stop();
+        }
+    }
+
+    private PhotoContentTypeBackfill backfill(DataSource dataSource, int workers, int chunkSize) {
+        return new PhotoContentTypeBackfill(dataSource, containerFieldService, formatResolver, contactCache,
+                workers, chunkSize, Duration.ZERO, 0, false);
+    }
+
+    private static BackfillProgress awaitEnd(PhotoContentTypeBackfill backfill) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        BackfillProgress progress;
+        while ((progress = backfill.progress()).getActiveWorkers() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "backfill did not finish");
+            Thread.sleep(10);
+        }
+        return progress;
+    }
+
+    private void setContentType(Long id, String contentType) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE contact SET photo_content_type = ? WHERE id = ?")) {
+            ps.setString(1, contentType);
+            ps.setLong(2, id);
+            ps.executeUpdate();
+        }
+    }
+
+    private String contentType(Long id) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT photo_content_type FROM contact WHERE id = ?")) {
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+}
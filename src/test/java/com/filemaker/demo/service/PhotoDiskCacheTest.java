@@ -0,0 +1,236 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.PhotoCacheMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the on-disk photo cache.
+ */
+public class PhotoDiskCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFillThenHit() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        byte[] photo = randomBytes(5000, 1);
+
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        assertTrue(cache.get(1L, "JPEG", 3).isEmpty());
+        fill(cache, client, 1L, "JPEG", 3, photo);
+
+        // The client got the photo while it was cached
+        assertArrayEquals(photo, client.toByteArray());
+        PhotoDiskCache.CachedPhoto cached = cache.get(1L, "jpeg", 3).orElseThrow();
+        assertEquals(photo.length, cached.size());
+        assertEquals("image/jpeg", cached.contentType());
+        assertArrayEquals(photo, Files.readAllBytes(cached.path()));
+
+        PhotoCacheMetrics metrics = cache.metrics();
+        assertEquals(1, metrics.getHits());
+        assertEquals(1, metrics.getMisses());
+        assertEquals(0.5, metrics.getHitRate());
+        // Counted by the caller once sent, not by the lookup
+        assertEquals(0, metrics.getBytesServed());
+        cache.served(cached.size());
+        assertEquals(photo.length, cache.metrics().getBytesServed());
+    }
+
+    @Test
+    void testNewVersionMisses() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, randomBytes(100, 1));
+
+        assertTrue(cache.get(1L, "JPEG", 4).isEmpty());
+        assertTrue(cache.get(1L, "PNGf", 3).isEmpty());
+    }
+
+    @Test
+    void testIdenticalContentIsStoredOnce() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        byte[] photo = randomBytes(1000, 1);
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, photo);
+        fill(cache, new ByteArrayOutputStream(), 1L, null, 3, photo);
+
+        assertEquals(2, cache.metrics().getEntries());
+        assertEquals(1, cache.metrics().getFiles());
+        assertEquals(photo.length, cache.metrics().getSizeBytes());
+        assertEquals(cache.get(1L, "JPEG", 3).orElseThrow().path(), cache.get(1L, null, 3).orElseThrow().path());
+    }
+
+    @Test
+    void testFileDeletedBehindTheCacheIsDropped() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        byte[] photo = randomBytes(1000, 1);
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, photo);
+        Files.delete(cache.get(1L, "JPEG", 3).orElseThrow().path());
+
+        assertTrue(cache.get(1L, "JPEG", 3).isEmpty());
+        assertEquals(0, cache.metrics().getFiles());
+        assertEquals(0, cache.metrics().getSizeBytes());
+
+        // Filled again on the next download
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, photo);
+        assertArrayEquals(photo, Files.readAllBytes(cache.get(1L, "JPEG", 3).orElseThrow().path()));
+    }
+
+    @Test
+    void testInvalidateDeletesTheContactsFiles() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, randomBytes(100, 1));
+        fill(cache, new ByteArrayOutputStream(), 2L, "JPEG", 7, randomBytes(100, 2));
+        Path first = cache.get(1L, "JPEG", 3).orElseThrow().path();
+
+        cache.invalidate(1L);
+
+        assertTrue(cache.get(1L, "JPEG", 3).isEmpty());
+        assertFalse(Files.exists(first));
+        assertTrue(cache.get(2L, "JPEG", 7).isPresent());
+        assertEquals(100, cache.metrics().getSizeBytes());
+    }
+
+    @Test
+    void testPinnedFileOutlivesInvalidationAndRelease() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        byte[] photo = randomBytes(1000, 1);
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, photo);
+        PhotoDiskCache.CachedPhoto cached = cache.get(1L, "JPEG", 3).orElseThrow();
+
+        assertTrue(cache.pin(cached));
+        cache.invalidate(1L);
+        assertTrue(cache.get(1L, "JPEG", 3).isEmpty());
+        assertEquals(0, cache.metrics().getSizeBytes());
+        // No longer in the cache, so it cannot be pinned again, but the reader still gets it
+        assertFalse(cache.pin(cached));
+        assertArrayEquals(photo, Files.readAllBytes(cached.path()));
+
+        // Kept after the release too, for a reader that opens it only then
+        cache.release(cached);
+        assertArrayEquals(photo, Files.readAllBytes(cached.path()));
+    }
+
+    @Test
+    void testReleasedFileIsKeptWhenEvictedRightAfter() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofKilobytes(80));
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 1, randomBytes(10 * 1024, 1));
+        PhotoDiskCache.CachedPhoto cached = cache.get(1L, "JPEG", 1).orElseThrow();
+        assertTrue(cache.pin(cached));
+        cache.release(cached);
+
+        for (long id = 2; id <= 9; id++) {
+            fill(cache, new ByteArrayOutputStream(), id, "JPEG", 1, randomBytes(10 * 1024, id));
+        }
+
+        assertTrue(cache.get(1L, "JPEG", 1).isEmpty());
+        assertTrue(Files.exists(cached.path()));
+        assertEquals(80 * 1024, cache.metrics().getSizeBytes());
+    }
+
+    @Test
+    void testLeastRecentlyUsedFilesAreEvicted() throws Exception {
+        // 80 KB budget, 10 KB photos (the per-photo limit is 10 KB)
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofKilobytes(80));
+        for (long id = 1; id <= 8; id++) {
+            fill(cache, new ByteArrayOutputStream(), id, "JPEG", 1, randomBytes(10 * 1024, id));
+        }
+        // Touch contact 1, then add a ninth photo: contact 2 is the least recently used
+        assertTrue(cache.get(1L, "JPEG", 1).isPresent());
+        fill(cache, new ByteArrayOutputStream(), 9L, "JPEG", 1, randomBytes(10 * 1024, 9));
+
+        assertTrue(cache.get(1L, "JPEG", 1).isPresent());
+        assertTrue(cache.get(2L, "JPEG", 1).isEmpty());
+        assertEquals(1, cache.metrics().getEvictions());
+        assertEquals(80 * 1024, cache.metrics().getSizeBytes());
+    }
+
+    @Test
+    void testUncommittedOrOversizedFillIsDiscarded() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofKilobytes(80));
+        byte[] large = randomBytes(20 * 1024, 1);
+
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        fill(cache, client, 1L, "JPEG", 1, large);
+        try (PhotoDiskCache.Fill fill = cache.fill(new ByteArrayOutputStream(), 2L, "JPEG", 1, "image/jpeg")) {
+            fill.write(randomBytes(100, 2));
+        }
+
+        // Still served in full, but nothing was kept
+        assertArrayEquals(large, client.toByteArray());
+        assertTrue(cache.get(1L, "JPEG", 1).isEmpty());
+        assertTrue(cache.get(2L, "JPEG", 1).isEmpty());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testLoadCachesWithoutAClient() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        byte[] photo = randomBytes(20 * 1024, 1);
+        ContainerStream stream = ContainerStream.open(new ByteArrayInputStream(photo), new byte[4096], () -> { });
+
+        PhotoDiskCache.CachedPhoto loaded = cache.load(stream, 1L, "JPEG", 3, "image/jpeg").orElseThrow();
+
+        assertEquals(photo.length, loaded.size());
+        assertEquals("image/jpeg", loaded.contentType());
+        assertArrayEquals(photo, Files.readAllBytes(loaded.path()));
+        assertEquals(loaded, cache.get(1L, "JPEG", 3).orElseThrow());
+    }
+
+    @Test
+    void testLoadStopsReadingOnceTooLarge() throws Exception {
+        // The per-photo limit is 10 KB
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofKilobytes(80));
+        ByteArrayInputStream container = new ByteArrayInputStream(randomBytes(1024 * 1024, 1));
+        ContainerStream stream = ContainerStream.open(container, new byte[4096], () -> { });
+
+        assertTrue(cache.load(stream, 1L, "JPEG", 3, "image/jpeg").isEmpty());
+
+        // Not read to the end, and nothing kept
+        assertTrue(container.available() > 512 * 1024);
+        assertTrue(cache.get(1L, "JPEG", 3).isEmpty());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testLeftoversAreDeletedAtStartup() throws Exception {
+        PhotoDiskCache cache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+        fill(cache, new ByteArrayOutputStream(), 1L, "JPEG", 3, randomBytes(100, 1));
+
+        new PhotoDiskCache(true, directory, DataSize.ofMegabytes(1));
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static void fill(PhotoDiskCache cache, ByteArrayOutputStream client,
+                             Long id, String format, long version, byte[] photo) throws Exception {
+        try (PhotoDiskCache.Fill fill = cache.fill(client, id, format, version, "image/jpeg")) {
+            // In chunks, as ContainerStream writes
+            for (int offset = 0; offset < photo.length; offset += 4096) {
+                fill.write(photo, offset, Math.min(4096, photo.length - offset));
+            }
+            fill.commit();
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
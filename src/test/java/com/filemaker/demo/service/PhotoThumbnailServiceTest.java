@@ -0,0 +1,275 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.ThumbnailMetrics;
+import com.filemaker.demo.repository.ContactVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for photo thumbnails: real ImageIO rendering and disk cache, mocked container reads.
+ */
+public class PhotoThumbnailServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ContainerFieldService containerFieldService;
+    private ContainerFormatResolver formatResolver;
+    private ContactCache contactCache;
+    private PhotoDiskCache photoDiskCache;
+    private PhotoThumbnailService thumbnails;
+
+    @BeforeEach
+    void setUp() {
+        containerFieldService = mock(ContainerFieldService.class);
+        formatResolver = mock(ContainerFormatResolver.class);
+        contactCache = mock(ContactCache.class);
+        photoDiskCache = new PhotoDiskCache(true, directory, DataSize.ofMegabytes(10));
+        thumbnails = thumbnails(2, 10, 64);
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnails.stop();
+    }
+
+    @Test
+    void testRendersWithinTheBoxAndCaches() throws Exception {
+        holds(1L, 3, "image/jpeg", image(400, 200, false, "jpeg"));
+
+        PhotoThumbnailService.Thumbnail thumbnail = thumbnails.render(1L, 64, 64, 3).orElseThrow();
+
+        assertEquals("image/jpeg", thumbnail.contentType());
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(thumbnail.data()));
+        assertEquals(64, scaled.getWidth());
+        assertEquals(32, scaled.getHeight());
+        PhotoDiskCache.CachedPhoto cached = photoDiskCache.get(1L, PhotoThumbnailService.variant(64, 64), 3).orElseThrow();
+        assertEquals("image/jpeg", cached.contentType());
+        assertEquals(thumbnail.data().length, cached.size());
+    }
+
+    @Test
+    void testTransparencyIsKeptAndSmallPhotosAreNotEnlarged() throws Exception {
+        holds(1L, 3, "image/png", image(40, 20, true, "png"));
+
+        // Only the height is bounded
+        PhotoThumbnailService.Thumbnail thumbnail = thumbnails.render(1L, 0, 128, 3).orElseThrow();
+
+        assertEquals("image/png", thumbnail.contentType());
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(thumbnail.data()));
+        assertEquals(40, scaled.getWidth());
+        assertEquals(20, scaled.getHeight());
+        assertTrue(scaled.getColorModel().hasAlpha());
+    }
+
+    @Test
+    void testLargePhotoIsDecodedSubsampled() throws Exception {
+        holds(1L, 3, "image/png", image(3000, 1500, false, "png"));
+
+        PhotoThumbnailService.Thumbnail thumbnail = thumbnails.render(1L, 100, 100, 3).orElseThrow();
+
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(thumbnail.data()));
+        assertEquals(100, scaled.getWidth());
+        assertEquals(50, scaled.getHeight());
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneRender() throws Exception {
+        byte[] photo = image(400, 400, false, "jpeg");
+        CountDownLatch release = new CountDownLatch(1);
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), eq(1L), isNull()))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return row("image/jpeg", 3, photo);
+                });
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Optional<PhotoThumbnailService.Thumbnail>>> requests = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                requests.add(clients.submit(() -> thumbnails.render(1L, 64, 64, 3)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            byte[] first = requests.get(0).get(5, TimeUnit.SECONDS).orElseThrow().data();
+            for (Future<Optional<PhotoThumbnailService.Thumbnail>> request : requests) {
+                assertArrayEquals(first, request.get(5, TimeUnit.SECONDS).orElseThrow().data());
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+
+        verify(containerFieldService, times(1)).openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any());
+        assertEquals(1, thumbnails.metrics().getRendered());
+    }
+
+    @Test
+    void testUndecodablePhotoIsNotReadAgain() {
+        holds(1L, 3, "application/pdf", "%PDF-1.4 not an image".getBytes());
+
+        assertTrue(thumbnails.render(1L, 64, 64, 3).isEmpty());
+        assertTrue(thumbnails.render(1L, 32, 32, 3).isEmpty());
+
+        verify(containerFieldService, times(1)).openWithMetadata(anyString(), anyString(), anyString(), anyLong(), any());
+        assertEquals(1, thumbnails.metrics().getUnrenderable());
+    }
+
+    @Test
+    void testUnknownContentTypeIsResolvedFirst() throws Exception {
+        byte[] png = image(100, 100, false, "png");
+        // Read as JPEG by the statement: empty
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), eq(1L), isNull()))
+                .thenReturn(new ContainerFieldService.ContainerRow(null, "image:/scan", 3, null));
+        when(formatResolver.open("contact", "photo_content", 1L, 3, "image:/scan", "JPEG"))
+                .thenReturn(new ContainerFormatResolver.Resolution(ContainerStream.of(png), ContainerFormat.PNG, false));
+
+        assertTrue(thumbnails.render(1L, 64, 64, 3).isPresent());
+    }
+
+    @Test
+    void testMissingContactOrPhoto() {
+        assertTrue(thumbnails.render(99L, 64, 64, -1).isEmpty());
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), eq(1L), isNull()))
+                .thenReturn(new ContainerFieldService.ContainerRow("image/jpeg", null, 3, null));
+        assertTrue(thumbnails.render(1L, 64, 64, 3).isEmpty());
+    }
+
+    @Test
+    void testFullQueueIsRejected() throws Exception {
+        thumbnails.stop();
+        thumbnails = thumbnails(1, 1, 64);
+        CountDownLatch release = new CountDownLatch(1);
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), anyLong(), isNull()))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return null;
+                });
+
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            // One rendering, one waiting in the queue
+            Future<?> rendering = clients.submit(() -> thumbnails.render(1L, 64, 64, 3));
+            Future<?> queued = clients.submit(() -> thumbnails.render(2L, 64, 64, 3));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (thumbnails.metrics().getQueued() < 1) {
+                assertTrue(System.currentTimeMillis() < deadline, "render was not queued");
+                Thread.sleep(10);
+            }
+
+            assertThrows(PhotoThumbnailService.RenderRejectedException.class, () -> thumbnails.render(3L, 64, 64, 3));
+            release.countDown();
+            rendering.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, thumbnails.metrics().getRejected());
+    }
+
+    @Test
+    void testBusyContainerStreamsAreRejected() {
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), eq(1L), isNull()))
+                .thenThrow(new ContainerFieldService.StreamsBusyException("All container streams are in use"));
+
+        assertThrows(PhotoThumbnailService.RenderRejectedException.class, () -> thumbnails.render(1L, 64, 64, 3));
+        assertEquals(1, thumbnails.metrics().getRejected());
+    }
+
+    @Test
+    void testPregenerateRendersInTheBackground() throws Exception {
+        holds(1L, 5, "image/jpeg", image(400, 300, false, "jpeg"));
+        when(contactCache.findVersionById(1L)).thenReturn(Optional.of(new ContactVersion(1L, 5, null)));
+
+        thumbnails.pregenerate(1L);
+
+        String variant = PhotoThumbnailService.variant(64, 64);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!photoDiskCache.contains(1L, variant, 5)) {
+            assertTrue(System.currentTimeMillis() < deadline, "thumbnail was not pregenerated");
+            Thread.sleep(10);
+        }
+        ThumbnailMetrics metrics = thumbnails.metrics();
+        assertEquals(1, metrics.getPregenerated());
+        assertEquals(1, metrics.getRendered());
+    }
+
+    @Test
+    void testPregenerateDoesNotWaitForARenderQueuedBehindIt() throws Exception {
+        thumbnails.stop();
+        thumbnails = thumbnails(1, 10, 64);
+        holds(1L, 5, "image/jpeg", image(400, 300, false, "jpeg"));
+        CountDownLatch release = new CountDownLatch(1);
+        when(contactCache.findVersionById(1L)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(new ContactVersion(1L, 5, null));
+        });
+
+        // The only worker runs the pregeneration; the request's render of the same variant queues behind it
+        thumbnails.pregenerate(1L);
+        ExecutorService clients = Executors.newSingleThreadExecutor();
+        try {
+            Future<Optional<PhotoThumbnailService.Thumbnail>> request = clients.submit(() -> thumbnails.render(1L, 64, 64, 5));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (thumbnails.metrics().getQueued() < 1) {
+                assertTrue(System.currentTimeMillis() < deadline, "render was not queued");
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            // Well within the render timeout: the pregeneration skipped the variant instead of joining it
+            assertTrue(request.get(2, TimeUnit.SECONDS).isPresent());
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, thumbnails.metrics().getRendered());
+        assertEquals(0, thumbnails.metrics().getRejected());
+    }
+
+    private PhotoThumbnailService thumbnails(int workers, int queueCapacity, int... pregenerate) {
+        return new PhotoThumbnailService(containerFieldService, formatResolver, contactCache, photoDiskCache,
+                new SingleFlightRegistry(true), workers, queueCapacity, Duration.ofSeconds(5), 1024, pregenerate);
+    }
+
+    private void holds(Long id, long version, String contentType, byte[] data) {
+        when(containerFieldService.openWithMetadata(anyString(), anyString(), anyString(), eq(id), isNull()))
+                .thenAnswer(invocation -> row(contentType, version, data));
+    }
+
+    private static ContainerFieldService.ContainerRow row(String contentType, long version, byte[] data) {
+        return new ContainerFieldService.ContainerRow(contentType, "image:/photo", version, ContainerStream.of(data));
+    }
+
+    private static byte[] image(int width, int height, boolean alpha, String formatName) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, alpha && x < width / 2 ? 0x00FFFFFF : 0xFF000000 | (x * 255 / width) << 16 | (y * 255 / height));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, formatName, out);
+        return out.toByteArray();
+    }
+}
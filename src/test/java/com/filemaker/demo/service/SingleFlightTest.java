@@ -0,0 +1,149 @@
+package com.filemaker.demo.service;
+
+import com.filemaker.demo.dto.SingleFlightMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for single-flight read coalescing.
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void testIdenticalReadsShareOneExecution() throws Exception {
+        SingleFlight<String, byte[]> group = new SingleFlightRegistry(true).create("test");
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        byte[] photo = {1, 2, 3};
+
+        List<Future<byte[]>> results = runConcurrently(() -> group.execute("42#JPEG", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return photo;
+        }), group, release);
+
+        for (Future<byte[]> result : results) {
+            assertSame(photo, result.get());
+        }
+        assertEquals(1, executions.get());
+        SingleFlightMetrics metrics = group.metrics();
+        assertEquals(CALLERS, metrics.getCalls());
+        assertEquals(1, metrics.getExecutions());
+        assertEquals(CALLERS - 1, metrics.getCollapsed());
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    void testFailureIsSharedAndNotKept() throws Exception {
+        SingleFlight<Long, String> group = new SingleFlightRegistry(true).create("test");
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("FileMaker is down");
+
+        List<Future<String>> results = runConcurrently(() -> group.execute(1L, () -> {
+            await(release);
+            throw failure;
+        }), group, release);
+
+        for (Future<String> result : results) {
+            Exception e = assertThrows(Exception.class, result::get);
+            assertSame(failure, e.getCause());
+        }
+        // Nothing is cached: the next call runs again
+        assertEquals("ok", group.execute(1L, () -> "ok"));
+        assertEquals(2, group.metrics().getExecutions());
+    }
+
+    @Test
+    void testDifferentKeysAndSequentialCallsRunSeparately() {
+        SingleFlight<Long, Long> group = new SingleFlightRegistry(true).create("test");
+        assertEquals(1L, group.execute(1L, () -> 1L));
+        assertEquals(2L, group.execute(2L, () -> 2L));
+        assertEquals(1L, group.execute(1L, () -> 1L));
+        assertEquals(3, group.metrics().getExecutions());
+        assertEquals(0, group.metrics().getCollapsed());
+    }
+
+    @Test
+    void testTryExecuteSkipsAReadInFlight() throws Exception {
+        SingleFlight<Long, Long> group = new SingleFlightRegistry(true).create("test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService leader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> running = leader.submit(() -> group.execute(1L, () -> {
+                started.countDown();
+                await(release);
+                return 1L;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // Returns at once instead of waiting for the read in flight
+            assertFalse(group.tryExecute(1L, () -> fail("ran a read already in flight")));
+            assertTrue(group.tryExecute(2L, () -> 2L));
+
+            release.countDown();
+            assertEquals(1L, running.get(5, TimeUnit.SECONDS));
+        } finally {
+            leader.shutdownNow();
+        }
+        assertTrue(group.tryExecute(1L, () -> 1L));
+        assertEquals(3, group.metrics().getExecutions());
+        assertEquals(1, group.metrics().getCollapsed());
+    }
+
+    @Test
+    void testRegistryReportsEveryGroup() {
+        SingleFlightRegistry registry = new SingleFlightRegistry(false);
+        SingleFlight<Long, Long> versions = registry.create("contact-version");
+        registry.create("container-download");
+        versions.execute(1L, () -> 1L);
+
+        List<SingleFlightMetrics> metrics = registry.metrics();
+        assertEquals(List.of("contact-version", "container-download"),
+                metrics.stream().map(SingleFlightMetrics::getName).toList());
+        assertEquals(1, metrics.get(0).getExecutions());
+    }
+
+    /**
+     * Start all callers, wait until every one has joined the read in flight, then let the read finish.
+     */
+    private <V> List<Future<V>> runConcurrently(Callable<V> call, SingleFlight<?, ?> group,
+                                                CountDownLatch release) throws InterruptedException {
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        List<Future<V>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(callers.submit(call));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (group.metrics().getCalls() < CALLERS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // Calls are counted just before joining - give the last one time to join
+        Thread.sleep(50);
+        release.countDown();
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
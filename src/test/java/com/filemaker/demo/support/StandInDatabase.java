@@ -0,0 +1,133 @@
+package com.filemaker.demo.support;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Local stand-in for the FileMaker Contacts database, backed by H2.
+ * <p>
+ * Used by the benchmarks, which need a realistic amount of data but must not depend on
+ * (or write to) a FileMaker server. The {@code contact} table mirrors the FileMaker
+ * table's columns; the container field is a plain BLOB.
+ */
+public final class StandInDatabase {
+
+    private static final String[] COMPANIES = {
+        "Acme Corp", "TechCo", "DataInc", "CloudSys", "Globex", "Initech", "Umbrella", "Hooli"
+    };
+    private static final String[] FIRST_NAMES = {
+        "John", "Jane", "Bob", "Alice", "Charlie", "Diana", "Edward", "Fiona", "George", "Hannah"
+    };
+    private static final String[] LAST_NAMES = {
+        "Doe", "Smith", "Wilson", "Brown", "Taylor", "Martin", "Garcia", "Lee", "Walker", "Young"
+    };
+
+    private StandInDatabase() {}
+
+    /**
+     * Create an empty in-memory database with the contact table.
+     *
+     * @param name Database name, unique per benchmark so runs don't share state
+     */
+    public static DataSource create(String name) throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url(name));
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS contact");
+            st.execute("CREATE TABLE contact ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "email VARCHAR(255) NOT NULL, "
+                    + "login VARCHAR(255) NOT NULL, "
+                    + "password VARCHAR(255) NOT NULL, "
+                    + "first_name VARCHAR(255), "
+                    + "last_name VARCHAR(255), "
+                    + "title VARCHAR(255), "
+                    + "job_title VARCHAR(255), "
+                    + "company VARCHAR(255), "
+                    + "website VARCHAR(255), "
+                    + "notes VARCHAR(100000), "
+                    + "photo_url VARCHAR(255), "
+                    + "photo_content_type VARCHAR(255), "
+                    + "photo_content BLOB, "
+                    + "last_contact_date TIMESTAMP, "
+                    + "uuid VARCHAR(255), "
+                    + "sku VARCHAR(255), "
+                    + "create_timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                    + "update_timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            // FileMaker indexes fields on demand; give H2 the equivalent indexes
+            st.execute("CREATE INDEX idx_contact_last_name ON contact (last_name, id)");
+            st.execute("CREATE INDEX idx_contact_company ON contact (company, id)");
+            // FileMaker's container read function, see getAs
+            st.execute("CREATE ALIAS IF NOT EXISTS GetAs FOR '" + StandInDatabase.class.getName() + ".getAs'");
+        }
+        return dataSource;
+    }
+
+    /**
+     * JDBC URL of the stand-in database, e.g. to put a connection pool in front of it.
+     */
+    public static String url(String name) {
+        // Keep the database alive between connections; stream large results instead of buffering them
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1";
+    }
+
+    /**
+     * Insert {@code count} synthetic contacts.
+     */
+    public static void populate(DataSource dataSource, int count) throws SQLException {
+        String sql = "INSERT INTO contact (email, login, password, first_name, last_name, "
+                + "job_title, company, website, notes, last_contact_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < count; i++) {
+                String first = FIRST_NAMES[i % FIRST_NAMES.length];
+                String last = LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length] + (i % 997);
+                ps.setString(1, first.toLowerCase() + "." + last.toLowerCase() + i + "@example.com");
+                ps.setString(2, "user" + i);
+                ps.setString(3, "pass" + i);
+                ps.setString(4, first);
+                ps.setString(5, last);
+                ps.setString(6, "Engineer");
+                ps.setString(7, COMPANIES[i % COMPANIES.length]);
+                ps.setString(8, "https://example.com/" + i);
+                ps.setString(9, "Synthetic contact " + i);
+                ps.setTimestamp(10, now);
+                ps.addBatch();
+                if (i % 1000 == 999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            conn.commit();
+        }
+    }
+
+    /**
+     * Stand-in for FileMaker's {@code GetAs(container, type)}. The BLOB holds a single
+     * representation, so it is returned as-is whatever the type.
+     */
+    public static Blob getAs(Blob container, String type) {
+        return container;
+    }
+
+    /**
+     * Store {@code data} in a contact's container field.
+     */
+    public static void storePhoto(DataSource dataSource, long id, byte[] data) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE contact SET photo_content = ? WHERE id = ?")) {
+            ps.setBytes(1, data);
+            ps.setLong(2, id);
+            ps.executeUpdate();
+        }
+    }
+}